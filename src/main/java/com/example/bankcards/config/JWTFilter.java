@@ -1,10 +1,15 @@
 package com.example.bankcards.config;
 
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.bankcards.security.JWTCore;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.TokenEpochRegistry;
+import com.example.bankcards.security.UsersDetailsImpl;
 import io.jsonwebtoken.ExpiredJwtException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -22,17 +27,25 @@ public class JWTFilter extends OncePerRequestFilter {
     private final JWTCore jwtCore;
     private final UserDetailsService userDetailsService;
     // Используем стандартный интерфейс
+    private final PrincipalCache principalCache;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    // Stateless-режим: principal строится из claims токена, БД не используется
+    @Value("${app.security.jwt.stateless:false}")
+    private boolean stateless;
 
-    public JWTFilter(JWTCore jwtCore, UserDetailsService userDetailsService) {
+    public JWTFilter(JWTCore jwtCore, UserDetailsService userDetailsService, PrincipalCache principalCache, TokenEpochRegistry tokenEpochRegistry) {
         this.jwtCore = jwtCore;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
+        this.tokenEpochRegistry = tokenEpochRegistry;
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse, FilterChain filterChain) throws ServletException, IOException {
         String jwt = null;
         String username = null;
-        UserDetails userDetails = null;
+        DecodedJWT decodedJWT = null;
+        UsersDetailsImpl userDetails = null;
         UsernamePasswordAuthenticationToken auth = null;
         try {
             String headerAuth = httpServletRequest.getHeader("Authorization");
@@ -41,14 +54,26 @@ public class JWTFilter extends OncePerRequestFilter {
             }
             if (jwt != null) {
                 try {
-                    username = jwtCore.validateTokenAndRetrieveClaim(jwt);
+                    decodedJWT = jwtCore.validateToken(jwt);
+                    username = decodedJWT.getClaim(JWTCore.CLAIM_USERNAME).asString();
                 } catch (ExpiredJwtException e) {
                     throw new RuntimeException("token was expired");
                 }
-                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null){
-                    userDetails = userDetailsService.loadUserByUsername(username);
-                    auth = new UsernamePasswordAuthenticationToken(userDetails,userDetails.getPassword(),userDetails.getAuthorities());
-                    SecurityContextHolder.getContext().setAuthentication(auth);
+                // Отзываются только refresh-токены (они сюда не допускаются); access-токены
+                // инвалидируются эпохами пользователя, поэтому список отозванных jti не проверяем
+                if (username != null && SecurityContextHolder.getContext().getAuthentication() == null
+                        && !jwtCore.isRefreshToken(decodedJWT)){
+                    userDetails = stateless ? jwtCore.toPrincipal(decodedJWT) : null;
+                    if (userDetails == null) {
+                        // Сначала смотрим в кэш, в БД идем только при промахе
+                        userDetails = principalCache.get(username,
+                                name -> (UsersDetailsImpl) userDetailsService.loadUserByUsername(name));
+                    }
+                    // Токен выпущен до изменения пользователя - не аутентифицируем
+                    if (!isStale(decodedJWT, userDetails)) {
+                        auth = new UsernamePasswordAuthenticationToken(userDetails,userDetails.getPassword(),userDetails.getAuthorities());
+                        SecurityContextHolder.getContext().setAuthentication(auth);
+                    }
                 }
 
             }
@@ -59,4 +84,16 @@ public class JWTFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(httpServletRequest,httpServletResponse);
     }
+
+    private boolean isStale(DecodedJWT decodedJWT, UsersDetailsImpl userDetails) {
+        Claim id = decodedJWT.getClaim(JWTCore.CLAIM_USER_ID);
+        Claim version = decodedJWT.getClaim(JWTCore.CLAIM_USER_VERSION);
+        // Токены старого формата без id/ver пропускаем до истечения их срока
+        if (id.isMissing() || version.isMissing()) {
+            return false;
+        }
+        return !id.asLong().equals(userDetails.getId())
+                || version.asInt() != userDetails.getTokenVersion()
+                || tokenEpochRegistry.isRevoked(id.asLong(), version.asInt());
+    }
 }
\ No newline at end of file
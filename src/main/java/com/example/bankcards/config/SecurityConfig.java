@@ -1,5 +1,6 @@
 package com.example.bankcards.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpStatus;
@@ -31,8 +32,9 @@ public class SecurityConfig {
                 .exceptionHandling(exceptions -> exceptions.authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
                 .authorizeHttpRequests(authz -> authz
                         .requestMatchers("/swagger-ui/**","/swagger-ui.html","/swagger-ui/index.html", "/v3/api-docs/**").permitAll()
-                        .requestMatchers("/api/auth/login","/api/auth/registration").permitAll() // Разрешить доступ к эндпоинтам аутентификации
+                        .requestMatchers("/api/auth/login","/api/auth/registration","/api/auth/refresh","/api/auth/logout").permitAll() // Разрешить доступ к эндпоинтам аутентификации
                         .requestMatchers("/api/admin/**").hasRole("ADMIN") // Только для администраторов
+                        .requestMatchers("/actuator/**").hasRole("ADMIN") // Метрики только для администраторов
                         .requestMatchers("/api/users/**").hasAnyRole("ADMIN", "USER") // Для администраторов и пользователей
                         .anyRequest().authenticated() // Все остальные запросы требуют аутентификации
                 );
@@ -49,7 +51,9 @@ public class SecurityConfig {
     }
 
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); // Хэширование паролей
+    public PasswordEncoder passwordEncoder(@Value("${app.security.password.bcrypt-strength:10}") int strength) {
+        // Хэширование паролей. Хэши с меньшей стоимостью пересчитываются при успешном входе
+        // (см. UsersDetailsService.updatePassword)
+        return new BCryptPasswordEncoder(strength);
     }
 }
\ No newline at end of file
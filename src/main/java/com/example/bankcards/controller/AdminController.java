@@ -3,12 +3,21 @@ package com.example.bankcards.controller;
 import com.example.bankcards.dto.*;
 import com.example.bankcards.entity.BankCards;
 import com.example.bankcards.entity.Users;
+import com.example.bankcards.entity.CardHold;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.HoldNotFoundException;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.SpendingLimitExceededException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.ValidationException;
 import com.example.bankcards.service.AdminService;
 import com.example.bankcards.service.BankCardService;
+import com.example.bankcards.service.ExportService;
+import com.example.bankcards.service.HoldService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,9 +25,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -27,12 +39,17 @@ public class AdminController {
 
     private final AdminService adminService;
     private final BankCardService bankCardService;
+    private final HoldService holdService;
+    private final ExportService exportService;
     private static final Logger log = LoggerFactory.getLogger(AdminController.class);
 
 
-    public AdminController(AdminService adminService, BankCardService bankCardService) {
+    public AdminController(AdminService adminService, BankCardService bankCardService, HoldService holdService,
+                           ExportService exportService) {
         this.adminService = adminService;
         this.bankCardService = bankCardService;
+        this.holdService = holdService;
+        this.exportService = exportService;
     }
 
     // ==================== Управление картами ====================
@@ -110,6 +127,25 @@ public class AdminController {
         }
     }
 
+    /**
+     * Индивидуальные лимиты расходов карты; все поля null - карта возвращается к лимитам по умолчанию
+     */
+    @PutMapping("/cards/{cardId}/limits")
+    public ResponseEntity<?> setCardLimits(@PathVariable Long cardId, @Valid @RequestBody CardLimitsDTO request) {
+        log.info("Setting spending limits for card {}", cardId);
+        try {
+            CardLimitsDTO limits = adminService.setCardLimits(cardId, request);
+            log.info("Spending limits set for card {}", cardId);
+            return ResponseEntity.ok(limits);
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found for limits: {}", cardId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error setting limits for card {}", cardId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to set card limits: " + e.getMessage()));
+        }
+    }
+
     /**
      * Удаление карты
      */
@@ -130,15 +166,20 @@ public class AdminController {
     }
 
     /**
-     * Получение всех карт
+     * Получение всех карт страницами (keyset по id, total - только при includeTotal=true)
      */
     @GetMapping("/cards")
-    public ResponseEntity<?> getAllCards() {
+    public ResponseEntity<?> getAllCards(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal) {
         log.info("Getting all cards");
         try {
-            List<BankCards> cards = bankCardService.getAllCards();
-            log.info("Retrieved cards");
+            CursorPage<BankCards> cards = bankCardService.getCardsPage(cursor, limit, includeTotal);
+            log.info("Retrieved {} cards", cards.getItems().size());
             return ResponseEntity.ok(cards);
+        } catch (ValidationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error retrieving cards", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -146,6 +187,18 @@ public class AdminController {
         }
     }
 
+    /**
+     * Выгрузка всех карт потоком: format=ndjson (по умолчанию) или csv (gzip)
+     */
+    @GetMapping("/cards/export")
+    public void exportCards(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        log.info("Exporting all cards as {}", exportFormat);
+        prepareExport(response, exportFormat, "cards");
+        long rows = exportService.exportCards(exportFormat, response.getOutputStream());
+        log.info("Exported {} cards", rows);
+    }
+
     /**
      * Получение карты по ID
      */
@@ -217,6 +270,89 @@ public class AdminController {
         }
     }
 
+    // ==================== Предавторизации ====================
+
+    /**
+     * Резерв суммы на карте (предавторизация продавца); холд снимается автоматически по истечении app.holds.ttl
+     */
+    @PostMapping("/holds")
+    public ResponseEntity<?> authorizeHold(@Valid @RequestBody AuthorizeHoldDTO request) {
+        log.info("Authorizing hold of {} for merchant {}", request.getAmount(), request.getMerchant());
+        try {
+            CardHold hold = holdService.authorize(request);
+            log.info("Hold {} authorized on card {}", hold.getId(), hold.getCardId());
+            return ResponseEntity.created(URI.create("/api/admin/holds/" + hold.getId())).body(new CardHoldDTO(hold));
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found while authorizing hold: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (InsufficientFundsException e) {
+            log.warn("Insufficient funds while authorizing hold: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (SpendingLimitExceededException e) {
+            log.warn("Spending limit exceeded while authorizing hold: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Hold conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Card is being modified concurrently, please retry"));
+        } catch (RejectedExecutionException e) {
+            log.warn("Hold rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "Too many card operations in progress, please retry"));
+        } catch (Exception e) {
+            log.error("Error authorizing hold", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to authorize hold: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Списание зарезервированной суммы; amount не указан - списывается вся сумма холда
+     */
+    @PostMapping("/holds/{holdId}/capture")
+    public ResponseEntity<?> captureHold(@PathVariable String holdId, @Valid @RequestBody(required = false) CaptureHoldDTO request) {
+        log.info("Capturing hold {}", holdId);
+        try {
+            CardHoldDTO hold = holdService.capture(holdId, request == null ? null : request.getAmount());
+            log.info("Hold {} captured: {}", holdId, hold.getCapturedAmount());
+            return ResponseEntity.ok(hold);
+        } catch (HoldNotFoundException e) {
+            log.warn("Hold not found for capture: {}", holdId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ValidationException e) {
+            log.warn("Validation error while capturing hold {}: {}", holdId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Hold conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Card is being modified concurrently, please retry"));
+        } catch (Exception e) {
+            log.error("Error capturing hold {}", holdId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to capture hold: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Отмена холда: зарезервированная сумма возвращается в доступные средства
+     */
+    @PostMapping("/holds/{holdId}/void")
+    public ResponseEntity<?> voidHold(@PathVariable String holdId) {
+        log.info("Voiding hold {}", holdId);
+        try {
+            CardHoldDTO hold = holdService.voidHold(holdId);
+            log.info("Hold {} voided", holdId);
+            return ResponseEntity.ok(hold);
+        } catch (HoldNotFoundException e) {
+            log.warn("Hold not found for void: {}", holdId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ValidationException e) {
+            log.warn("Validation error while voiding hold {}: {}", holdId, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Hold conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Card is being modified concurrently, please retry"));
+        } catch (Exception e) {
+            log.error("Error voiding hold {}", holdId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to void hold: " + e.getMessage()));
+        }
+    }
+
     // ==================== Управление пользователями ====================
 
     /**
@@ -248,15 +384,21 @@ public class AdminController {
     }
 
     /**
-     * Получение всех пользователей
+     * Получение всех пользователей страницами (keyset по id, total - при includeTotal=true, карты - при includeCards=true)
      */
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers() {
+    public ResponseEntity<?> getAllUsers(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
+            @RequestParam(defaultValue = "false") boolean includeCards) {
         log.info("Getting all users");
         try {
-            List<Users> users = adminService.getAllUsers();
-            log.info("Retrieved {} users", users.size());
+            CursorPage<UserSummaryDTO> users = adminService.getUsersPage(cursor, limit, includeTotal, includeCards);
+            log.info("Retrieved {} users", users.getItems().size());
             return ResponseEntity.ok(users);
+        } catch (ValidationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error retrieving users", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -265,13 +407,26 @@ public class AdminController {
     }
 
     /**
-     * Получение пользователя по ID
+     * Выгрузка всех пользователей потоком: format=ndjson (по умолчанию) или csv (gzip)
+     */
+    @GetMapping("/users/export")
+    public void exportUsers(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+        ExportService.Format exportFormat = ExportService.Format.parse(format);
+        log.info("Exporting all users as {}", exportFormat);
+        prepareExport(response, exportFormat, "users");
+        long rows = exportService.exportUsers(exportFormat, response.getOutputStream());
+        log.info("Exported {} users", rows);
+    }
+
+    /**
+     * Получение пользователя по ID (карты - при includeCards=true)
      */
     @GetMapping("/users/{userId}")
-    public ResponseEntity<?> getUserById(@PathVariable Long userId) {
+    public ResponseEntity<?> getUserById(@PathVariable Long userId,
+                                         @RequestParam(defaultValue = "false") boolean includeCards) {
         log.info("Getting user by ID: {}", userId);
         try {
-            Optional<Users> user = adminService.getUserById(userId);
+            Optional<UserSummaryDTO> user = adminService.getUserSummary(userId, includeCards);
             if (user.isPresent()) {
                 log.info("User {} found", userId);
                 return ResponseEntity.ok(user.get());
@@ -329,4 +484,15 @@ public class AdminController {
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to delete user: " + e.getMessage()));
         }
     }
-}
\ No newline at end of file
+
+    private static void prepareExport(HttpServletResponse response, ExportService.Format format, String name) {
+        if (format == ExportService.Format.CSV) {
+            response.setContentType("application/gzip");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".csv.gz\"");
+        } else {
+            response.setContentType("application/x-ndjson");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".ndjson\"");
+        }
+    }
+}
@@ -1,43 +1,59 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.RefreshTokenDTO;
+import com.example.bankcards.dto.TokenPairDTO;
 import com.example.bankcards.dto.UsersDTO;
 import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.InvalidTokenException;
 import com.example.bankcards.repository.UsersRepository;
-import com.example.bankcards.security.JWTCore;
+import com.example.bankcards.security.LoginExecutor;
+import com.example.bankcards.security.LoginThrottle;
+import com.example.bankcards.security.UsersDetailsImpl;
+import com.example.bankcards.service.TokenService;
 import com.example.bankcards.dto.AuthenticationDTO;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.modelmapper.ModelMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
 
     private static final Logger log = LoggerFactory.getLogger(AuthController.class);
 
-    private final JWTCore jwtCore;
+    private final TokenService tokenService;
     private final AuthenticationManager authenticationManager;
     private final UsersRepository usersRepository;
     private final PasswordEncoder passwordEncoder;
+    private final LoginExecutor loginExecutor;
+    private final LoginThrottle loginThrottle;
 
 
-    public AuthController(JWTCore jwtCore, AuthenticationManager authenticationManager, UsersRepository usersRepository, PasswordEncoder passwordEncoder) {
-        this.jwtCore = jwtCore;
+    public AuthController(TokenService tokenService, AuthenticationManager authenticationManager, UsersRepository usersRepository, PasswordEncoder passwordEncoder, LoginExecutor loginExecutor, LoginThrottle loginThrottle) {
+        this.tokenService = tokenService;
         this.authenticationManager = authenticationManager;
         this.usersRepository = usersRepository;
         this.passwordEncoder = passwordEncoder;
+        this.loginExecutor = loginExecutor;
+        this.loginThrottle = loginThrottle;
     }
 
     @PostMapping("/registration")
@@ -76,32 +92,77 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> performLogin(@RequestBody AuthenticationDTO authenticationDTO) {
+    public CompletableFuture<ResponseEntity<?>> performLogin(@RequestBody AuthenticationDTO authenticationDTO, HttpServletRequest request) {
         log.info("Login attempt for username: {}", authenticationDTO.getUsername());
+        String username = Objects.toString(authenticationDTO.getUsername(), "");
+        String clientIp = request.getRemoteAddr();
+
+        // Ограничение попыток проверяется до BCrypt и запроса в БД
+        long retryAfter = loginThrottle.retryAfterMillis(username, clientIp);
+        if (retryAfter > 0) {
+            log.warn("Login throttled for user {} from {}", username, clientIp);
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfter + 999) / 1000))
+                    .body(Map.of("error", "Too many failed login attempts, try again later")));
+        }
 
+        // Проверка пароля выполняется в отдельном ограниченном пуле, поток Tomcat освобождается
+        return loginExecutor.submit(() -> authenticationManager.authenticate(
+                        new UsernamePasswordAuthenticationToken(
+                                authenticationDTO.getUsername(),
+                                authenticationDTO.getPassword()
+                        )
+                ))
+                .<ResponseEntity<?>>thenApply(authentication -> {
+                    // Генерация пары JWT токенов (access + refresh)
+                    TokenPairDTO tokens = tokenService.issueTokens((UsersDetailsImpl) authentication.getPrincipal());
+                    loginThrottle.recordSuccess(username);
+                    log.info("User {} logged in successfully", authenticationDTO.getUsername());
+                    return ResponseEntity.ok(tokens);
+                })
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof BadCredentialsException) {
+                        loginThrottle.recordFailure(username, clientIp);
+                        log.warn("Login failed for user {}: Invalid credentials", authenticationDTO.getUsername());
+                        return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+                    }
+                    if (cause instanceof RejectedExecutionException) {
+                        log.warn("Login rejected for user {}: login pool is saturated", authenticationDTO.getUsername());
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .body(Map.of("error", "Too many login requests, try again later"));
+                    }
+                    log.error("Error during login for user {}", authenticationDTO.getUsername(), cause);
+                    return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+                });
+    }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody @Valid RefreshTokenDTO refreshTokenDTO) {
         try {
-            // Попытка аутентификации
-            Authentication authentication = authenticationManager.authenticate(
-                    new UsernamePasswordAuthenticationToken(
-                            authenticationDTO.getUsername(),
-                            authenticationDTO.getPassword()
-                    )
-            );
-            // Установка аутентификации в контекст безопасности
-            SecurityContextHolder.getContext().setAuthentication(authentication);
-
-            // Генерация JWT токена
-            String jwt = jwtCore.generateToken(authentication);
-            log.info("User {} logged in successfully", authenticationDTO.getUsername());
-            return ResponseEntity.ok(jwt);
-        } catch (BadCredentialsException e) {
-            log.warn("Login failed for user {}: Invalid credentials", authenticationDTO.getUsername());
-            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+            TokenPairDTO tokens = tokenService.refresh(refreshTokenDTO.getRefreshToken());
+            log.info("Tokens refreshed successfully");
+            return ResponseEntity.ok(tokens);
+        } catch (InvalidTokenException e) {
+            log.warn("Token refresh failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            log.error("Error during login for user {}", authenticationDTO.getUsername(), e);
+            log.error("Error during token refresh", e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
 
-
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody @Valid RefreshTokenDTO refreshTokenDTO) {
+        try {
+            tokenService.logout(refreshTokenDTO.getRefreshToken());
+            return ResponseEntity.ok(Map.of("message", "Logged out successfully"));
+        } catch (InvalidTokenException e) {
+            log.warn("Logout failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error during logout", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
     }
 }
\ No newline at end of file
@@ -1,27 +1,49 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.dto.BatchTransferDTO;
+import com.example.bankcards.dto.BatchTransferResultDTO;
+import com.example.bankcards.dto.CardNumberTransferDTO;
+import com.example.bankcards.dto.CardTransactionDTO;
+import com.example.bankcards.dto.CreateScheduledTransferDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.ScheduledTransferDTO;
 import com.example.bankcards.dto.TransferDTO;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.FraudSuspectedException;
 import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.SpendingLimitExceededException;
+import com.example.bankcards.exception.TransferNotFoundException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.ValidationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.entity.TransferRequest;
 import com.example.bankcards.entity.Users;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.ScheduledTransferService;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.util.CardMaskingUtil;
+import org.springframework.dao.ConcurrencyFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 
-import java.math.BigDecimal;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @RestController
@@ -31,9 +53,18 @@ public class UserController {
     private static final Logger log = LoggerFactory.getLogger(UserController.class);
 
     private final UserService userService;
+    private final IdempotencyService idempotencyService;
+    private final AsyncTransferService asyncTransferService;
+    private final ScheduledTransferService scheduledTransferService;
+    private final CardMaskingUtil cardMaskingUtil;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, IdempotencyService idempotencyService, AsyncTransferService asyncTransferService,
+                          ScheduledTransferService scheduledTransferService, CardMaskingUtil cardMaskingUtil) {
         this.userService = userService;
+        this.idempotencyService = idempotencyService;
+        this.asyncTransferService = asyncTransferService;
+        this.scheduledTransferService = scheduledTransferService;
+        this.cardMaskingUtil = cardMaskingUtil;
     }
 
     /**
@@ -54,20 +85,30 @@ public class UserController {
     }
 
     /**
-     * Получение карт пользователя с пагинацией
+     * Получение карт пользователя с пагинацией: с параметром cursor (пустой - первая страница) - keyset по id,
+     * total - только при includeTotal=true. Без cursor - прежняя OFFSET-страница с COUNT для старых клиентов
      */
     @GetMapping("/cards/paginated")
     public ResponseEntity<?> getUserCardsPaginated(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean includeTotal,
             Authentication authentication) {
         log.info("Getting user cards with pagination - page: {}, size: {}", page, size);
         try {
             Long userId = userService.getCurrentUserId(authentication);
-            Pageable pageable = PageRequest.of(page, size);
-            Page<BankCards> cards = userService.getUserCardsPaginated(userId, pageable);
-            log.info("Retrieved {} cards for user {} (page {})", cards.getNumberOfElements(), userId, page);
+            if (cursor == null) {
+                Pageable pageable = PageRequest.of(page, size);
+                Page<BankCards> cards = userService.getUserCardsPaginated(userId, pageable);
+                log.info("Retrieved {} cards for user {} (page {})", cards.getNumberOfElements(), userId, page);
+                return ResponseEntity.ok(cards);
+            }
+            CursorPage<BankCards> cards = userService.getUserCardsPage(userId, cursor, size, includeTotal);
+            log.info("Retrieved {} cards for user {}", cards.getItems().size(), userId);
             return ResponseEntity.ok(cards);
+        } catch (ValidationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error getting paginated user cards", e);
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to get cards: " + e.getMessage()));
@@ -116,39 +157,313 @@ public class UserController {
     }
 
     /**
-     * Перевод средств между своими картами
+     * Перевод средств между своими картами.
+     * С заголовком Idempotency-Key повтор запроса возвращает сохраненный ответ без повторного перевода.
      */
     @PostMapping("/transfer")
     public ResponseEntity<?> transferBetweenCards(
             @Valid @RequestBody TransferDTO transferDTO,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             Authentication authentication) {
         log.info("Transferring {} from card {} to card {}",
                 transferDTO.getAmount(), transferDTO.getSourceCardId(), transferDTO.getTargetCardId());
         try {
             Long userId = userService.getCurrentUserId(authentication);
-            userService.transferBetweenOwnCards(userId, transferDTO.getSourceCardId(), transferDTO.getTargetCardId(), transferDTO.getAmount());
+            if (idempotencyKey == null) {
+                return performTransfer(userId, transferDTO, UUID.randomUUID().toString());
+            }
+            return idempotencyService.execute(userId, "transfer", idempotencyKey, transferDTO,
+                    reference -> userService.isTransferRecorded(reference) ? Optional.of(transferCompleted(transferDTO)) : Optional.empty(),
+                    reference -> performTransfer(userId, transferDTO, reference));
+        } catch (Exception e) {
+            log.error("Error during transfer", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Transfer failed: " + e.getMessage()));
+        }
+    }
+
+    // Ожидаемые ошибки превращаются в ответ (и запоминаются по ключу идемпотентности), остальные пробрасываются
+    private ResponseEntity<?> performTransfer(Long userId, TransferDTO transferDTO, String reference) {
+        try {
+            userService.transferBetweenOwnCards(userId, transferDTO.getSourceCardId(), transferDTO.getTargetCardId(),
+                    transferDTO.getAmount(), reference);
             log.info("Transfer completed successfully");
-            return ResponseEntity.ok(Map.of(
-                    "message", "Transfer completed successfully",
-                    "sourceCardId", transferDTO.getSourceCardId(),
-                    "targetCardId", transferDTO.getTargetCardId(),
-                    "amount", transferDTO.getAmount()
-            ));
+            return transferCompleted(transferDTO);
         } catch (CardNotFoundException e) {
             log.warn("Card not found during transfer: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (InsufficientFundsException e) {
             log.warn("Insufficient funds during transfer: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (SpendingLimitExceededException e) {
+            log.warn("Spending limit exceeded during transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (FraudSuspectedException e) {
+            log.warn("Transfer blocked by fraud rules: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (ValidationException e) {
             log.warn("Validation error during transfer: {}", e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Transfer conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Cards are being modified concurrently, please retry"));
+        } catch (RejectedExecutionException e) {
+            log.warn("Transfer rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "Too many transfers in progress, please retry"));
+        }
+    }
+
+    private static ResponseEntity<?> transferCompleted(TransferDTO transferDTO) {
+        return ResponseEntity.ok(Map.of(
+                "message", "Transfer completed successfully",
+                "sourceCardId", transferDTO.getSourceCardId(),
+                "targetCardId", transferDTO.getTargetCardId(),
+                "amount", transferDTO.getAmount()
+        ));
+    }
+
+    /**
+     * Перевод на карту другого пользователя по номеру карты (поддерживает Idempotency-Key)
+     */
+    @PostMapping("/transfers/p2p")
+    public ResponseEntity<?> transferToCardNumber(
+            @Valid @RequestBody CardNumberTransferDTO transferDTO,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Authentication authentication) {
+        log.info("Transferring {} from card {} to card {}", transferDTO.getAmount(), transferDTO.getSourceCardId(),
+                cardMaskingUtil.maskCardNumberWithX(transferDTO.getTargetCardNumber()));
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            if (idempotencyKey == null) {
+                return performCardNumberTransfer(userId, transferDTO, UUID.randomUUID().toString());
+            }
+            return idempotencyService.execute(userId, "transfer.p2p", idempotencyKey, transferDTO,
+                    reference -> userService.isTransferRecorded(reference) ? Optional.of(cardNumberTransferCompleted(transferDTO)) : Optional.empty(),
+                    reference -> performCardNumberTransfer(userId, transferDTO, reference));
         } catch (Exception e) {
-            log.error("Error during transfer", e);
+            log.error("Error during transfer by card number", e);
             return ResponseEntity.badRequest().body(Map.of("error", "Transfer failed: " + e.getMessage()));
         }
     }
 
+    private ResponseEntity<?> performCardNumberTransfer(Long userId, CardNumberTransferDTO transferDTO, String reference) {
+        try {
+            userService.transferToCardNumber(userId, transferDTO.getSourceCardId(), transferDTO.getTargetCardNumber(),
+                    transferDTO.getAmount(), reference);
+            log.info("Transfer by card number completed successfully");
+            return cardNumberTransferCompleted(transferDTO);
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found during transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (InsufficientFundsException e) {
+            log.warn("Insufficient funds during transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (SpendingLimitExceededException e) {
+            log.warn("Spending limit exceeded during transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (FraudSuspectedException e) {
+            log.warn("Transfer blocked by fraud rules: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Transfer conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Cards are being modified concurrently, please retry"));
+        } catch (RejectedExecutionException e) {
+            log.warn("Transfer rejected: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", "Too many transfers in progress, please retry"));
+        }
+    }
+
+    private ResponseEntity<?> cardNumberTransferCompleted(CardNumberTransferDTO transferDTO) {
+        return ResponseEntity.ok(Map.of(
+                "message", "Transfer completed successfully",
+                "sourceCardId", transferDTO.getSourceCardId(),
+                "targetCard", cardMaskingUtil.maskCardNumberWithX(transferDTO.getTargetCardNumber()),
+                "amount", transferDTO.getAmount()
+        ));
+    }
+
+    /**
+     * Асинхронный перевод: запрос ставится в очередь, ответ 202 с id перевода.
+     * Результат - GET /api/users/transfers/{transferId}. Idempotency-Key поддерживается так же, как в /transfer.
+     */
+    @PostMapping("/transfers")
+    public ResponseEntity<?> submitTransfer(
+            @Valid @RequestBody TransferDTO transferDTO,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            Authentication authentication) {
+        log.info("Queueing transfer of {} from card {} to card {}",
+                transferDTO.getAmount(), transferDTO.getSourceCardId(), transferDTO.getTargetCardId());
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            if (idempotencyKey == null) {
+                return performSubmit(userId, transferDTO, UUID.randomUUID().toString());
+            }
+            // reference захвата - id запроса в очереди: принятый до падения инстанса запрос находится по нему
+            return idempotencyService.execute(userId, "transfer.async", idempotencyKey, transferDTO,
+                    reference -> asyncTransferService.findSubmitted(userId, reference).map(UserController::transferAccepted),
+                    reference -> performSubmit(userId, transferDTO, reference));
+        } catch (Exception e) {
+            log.error("Error queueing transfer", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Transfer failed: " + e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<?> performSubmit(Long userId, TransferDTO transferDTO, String transferId) {
+        try {
+            TransferRequest request = asyncTransferService.submit(userId, transferDTO, transferId);
+            log.info("Transfer {} queued", request.getId());
+            return transferAccepted(request);
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found while queueing transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ValidationException e) {
+            log.warn("Validation error while queueing transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (FraudSuspectedException e) {
+            log.warn("Transfer blocked by fraud rules: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    private static ResponseEntity<?> transferAccepted(TransferRequest request) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/users/transfers/" + request.getId()))
+                .body(Map.of(
+                        "transferId", request.getId(),
+                        "status", request.getStatus()
+                ));
+    }
+
+    /**
+     * Статус асинхронного перевода
+     */
+    @GetMapping("/transfers/{transferId}")
+    public ResponseEntity<?> getTransferStatus(@PathVariable String transferId, Authentication authentication) {
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            return ResponseEntity.ok(asyncTransferService.getStatus(userId, transferId));
+        } catch (TransferNotFoundException e) {
+            log.warn("Transfer not found: {}", transferId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting transfer {} status", transferId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to get transfer status: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Регулярный перевод между своими картами (period - ISO-8601: P1D, P1W, P1M)
+     */
+    @PostMapping("/scheduled-transfers")
+    public ResponseEntity<?> createScheduledTransfer(@Valid @RequestBody CreateScheduledTransferDTO request,
+                                                     Authentication authentication) {
+        log.info("Scheduling transfer of {} from card {} to card {} every {}",
+                request.getAmount(), request.getSourceCardId(), request.getTargetCardId(), request.getPeriod());
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            ScheduledTransfer transfer = scheduledTransferService.create(userId, request);
+            log.info("Scheduled transfer {} created, first run at {}", transfer.getId(), transfer.getNextRunAt());
+            return ResponseEntity.created(URI.create("/api/users/scheduled-transfers/" + transfer.getId()))
+                    .body(new ScheduledTransferDTO(transfer));
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found while scheduling transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ValidationException e) {
+            log.warn("Validation error while scheduling transfer: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error scheduling transfer", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to schedule transfer: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Регулярные переводы пользователя
+     */
+    @GetMapping("/scheduled-transfers")
+    public ResponseEntity<?> getScheduledTransfers(Authentication authentication) {
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            List<ScheduledTransferDTO> transfers = scheduledTransferService.getUserScheduledTransfers(userId);
+            return ResponseEntity.ok(transfers);
+        } catch (Exception e) {
+            log.error("Error getting scheduled transfers", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to get scheduled transfers: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Отмена регулярного перевода
+     */
+    @DeleteMapping("/scheduled-transfers/{scheduledTransferId}")
+    public ResponseEntity<?> cancelScheduledTransfer(@PathVariable Long scheduledTransferId, Authentication authentication) {
+        log.info("Cancelling scheduled transfer {}", scheduledTransferId);
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            scheduledTransferService.cancel(userId, scheduledTransferId);
+            return ResponseEntity.ok(Map.of(
+                    "message", "Scheduled transfer cancelled",
+                    "id", scheduledTransferId
+            ));
+        } catch (TransferNotFoundException e) {
+            log.warn("Scheduled transfer not found: {}", scheduledTransferId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error cancelling scheduled transfer {}", scheduledTransferId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to cancel scheduled transfer: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Пакетный перевод между своими картами
+     */
+    @PostMapping("/transfers/batch")
+    public ResponseEntity<?> transferBatch(
+            @Valid @RequestBody BatchTransferDTO batchTransferDTO,
+            Authentication authentication) {
+        log.info("Batch transfer of {} legs, mode {}", batchTransferDTO.getTransfers().size(), batchTransferDTO.getMode());
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            BatchTransferResultDTO result = userService.transferBatch(userId, batchTransferDTO.getTransfers(), batchTransferDTO.getMode());
+            log.info("Batch transfer finished: committed={}, completed={}, failed={}",
+                    result.isCommitted(), result.getCompleted(), result.getFailed());
+            if (!result.isCommitted()) {
+                return ResponseEntity.badRequest().body(result);
+            }
+            return ResponseEntity.ok(result);
+        } catch (ConcurrencyFailureException e) {
+            log.warn("Batch transfer conflict, retries exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "Cards are being modified concurrently, please retry"));
+        } catch (Exception e) {
+            log.error("Error during batch transfer", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Batch transfer failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Журнал движений по карте (keyset-пагинация, новые записи первыми)
+     */
+    @GetMapping("/cards/{cardId}/transactions")
+    public ResponseEntity<?> getCardTransactions(
+            @PathVariable Long cardId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication authentication) {
+        log.info("Getting transactions for card ID: {}", cardId);
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            CursorPage<CardTransactionDTO> page = userService.getCardTransactions(userId, cardId, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ValidationException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting card transactions", e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to get transactions: " + e.getMessage()));
+        }
+    }
+
     /**
      * Получение баланса карты
      */
@@ -157,11 +472,12 @@ public class UserController {
         log.info("Getting balance for card ID: {}", cardId);
         try {
             Long userId = userService.getCurrentUserId(authentication);
-            BigDecimal balance = userService.getCardBalance(userId, cardId);
-            log.info("Balance retrieved for card {}: {}", cardId, balance);
+            BalanceDTO balance = userService.getCardBalance(userId, cardId);
+            log.info("Balance retrieved for card {}: {} available, {} held", cardId, balance.getAvailable(), balance.getHeld());
             return ResponseEntity.ok(Map.of(
                     "cardId", cardId,
-                    "balance", balance
+                    "balance", balance.getAvailable(),
+                    "heldAmount", balance.getHeld()
             ));
         } catch (CardNotFoundException e) {
             log.warn("Card not found for balance check: {}", cardId);
@@ -171,16 +487,35 @@ public class UserController {
             return ResponseEntity.badRequest().body(Map.of("error", "Failed to get balance: " + e.getMessage()));
         }
     }
+
+    /**
+     * Лимиты расходов своей карты и расход за последние сутки и 30 дней
+     */
+    @GetMapping("/cards/{cardId}/limits")
+    public ResponseEntity<?> getCardLimits(@PathVariable Long cardId, Authentication authentication) {
+        log.info("Getting spending limits for card ID: {}", cardId);
+        try {
+            Long userId = userService.getCurrentUserId(authentication);
+            return ResponseEntity.ok(userService.getCardLimits(userId, cardId));
+        } catch (CardNotFoundException e) {
+            log.warn("Card not found for limits: {}", cardId);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error getting limits for card {}", cardId, e);
+            return ResponseEntity.badRequest().body(Map.of("error", "Failed to get card limits: " + e.getMessage()));
+        }
+    }
     @GetMapping("/cards/total-balance")
     public ResponseEntity<?> getTotalBalance(Authentication authentication) {
         log.info("Getting total balance for user cards");
         try {
             Long userId = userService.getCurrentUserId(authentication);
-            BigDecimal totalBalance = userService.getTotalBalanceByUserId(userId);
-            log.info("Total balance retrieved for user {}: {}", userId, totalBalance);
+            BalanceDTO totalBalance = userService.getTotalBalanceByUserId(userId);
+            log.info("Total balance retrieved for user {}: {} available, {} held", userId, totalBalance.getAvailable(), totalBalance.getHeld());
             return ResponseEntity.ok(Map.of(
                     "userId", userId,
-                    "totalBalance", totalBalance
+                    "totalBalance", totalBalance.getAvailable(),
+                    "totalHeldAmount", totalBalance.getHeld()
             ));
         } catch (Exception e) {
             log.error("Error getting total balance for user", e);
@@ -0,0 +1,26 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Доступные и зарезервированные (холды) средства карты или всех карт пользователя
+ */
+public class BalanceDTO {
+
+    private final BigDecimal available;
+    private final BigDecimal held;
+
+    public BalanceDTO(BigDecimal available, BigDecimal held) {
+        // SUM по пользователю без карт - NULL
+        this.available = available != null ? available : BigDecimal.ZERO;
+        this.held = held != null ? held : BigDecimal.ZERO;
+    }
+
+    public BigDecimal getAvailable() {
+        return available;
+    }
+
+    public BigDecimal getHeld() {
+        return held;
+    }
+}
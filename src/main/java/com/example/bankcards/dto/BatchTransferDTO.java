@@ -0,0 +1,38 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+public class BatchTransferDTO {
+
+    // ALL_OR_NOTHING - при ошибке любого перевода не выполняется ни один; BEST_EFFORT - выполняются все корректные
+    public enum Mode {
+        ALL_OR_NOTHING,
+        BEST_EFFORT
+    }
+
+    @NotEmpty(message = "Transfers list is required")
+    @Size(max = 100, message = "No more than 100 transfers per batch")
+    private List<@Valid TransferDTO> transfers;
+
+    private Mode mode = Mode.ALL_OR_NOTHING;
+
+    public List<TransferDTO> getTransfers() {
+        return transfers;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setTransfers(List<TransferDTO> transfers) {
+        this.transfers = transfers;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+}
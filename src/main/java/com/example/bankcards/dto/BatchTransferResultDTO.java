@@ -0,0 +1,65 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class BatchTransferResultDTO {
+
+    private BatchTransferDTO.Mode mode;
+    // false - ни один перевод не выполнен (ALL_OR_NOTHING с ошибкой)
+    private boolean committed;
+    private int completed;
+    private int failed;
+    private List<TransferLegResultDTO> results;
+
+    public BatchTransferResultDTO() {
+
+    }
+
+    public BatchTransferResultDTO(BatchTransferDTO.Mode mode, boolean committed, List<TransferLegResultDTO> results) {
+        this.mode = mode;
+        this.committed = committed;
+        this.results = results;
+        this.completed = (int) results.stream().filter(r -> TransferLegResultDTO.COMPLETED.equals(r.getStatus())).count();
+        this.failed = (int) results.stream().filter(r -> TransferLegResultDTO.FAILED.equals(r.getStatus())).count();
+    }
+
+    public BatchTransferDTO.Mode getMode() {
+        return mode;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<TransferLegResultDTO> getResults() {
+        return results;
+    }
+
+    public void setMode(BatchTransferDTO.Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setCommitted(boolean committed) {
+        this.committed = committed;
+    }
+
+    public void setCompleted(int completed) {
+        this.completed = completed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public void setResults(List<TransferLegResultDTO> results) {
+        this.results = results;
+    }
+}
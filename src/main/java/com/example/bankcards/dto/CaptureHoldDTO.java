@@ -0,0 +1,19 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.DecimalMin;
+
+import java.math.BigDecimal;
+
+public class CaptureHoldDTO {
+    // Не больше суммы холда; по умолчанию - вся сумма, остаток возвращается на карту
+    @DecimalMin(value = "0.01", message = "Amount must be greater than 0")
+    private BigDecimal amount;
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.CardHold;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public class CardHoldDTO {
+
+    private String holdId;
+    private Long cardId;
+    private String merchant;
+    private BigDecimal amount;
+    private BigDecimal capturedAmount;
+    private String status;
+    private Instant expiresAt;
+
+    public CardHoldDTO() {
+
+    }
+
+    public CardHoldDTO(CardHold hold) {
+        this.holdId = hold.getId();
+        this.cardId = hold.getCardId();
+        this.merchant = hold.getMerchant();
+        this.amount = hold.getAmount();
+        this.capturedAmount = hold.getCapturedAmount();
+        this.status = hold.getStatus();
+        this.expiresAt = hold.getExpiresAt();
+    }
+
+    public CardHoldDTO(CardHold hold, String status, BigDecimal capturedAmount) {
+        this(hold);
+        this.status = status;
+        this.capturedAmount = capturedAmount;
+    }
+
+    public String getHoldId() {
+        return holdId;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public String getMerchant() {
+        return merchant;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getCapturedAmount() {
+        return capturedAmount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+}
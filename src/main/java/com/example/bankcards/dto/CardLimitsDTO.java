@@ -0,0 +1,69 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.DecimalMin;
+
+import java.math.BigDecimal;
+
+/**
+ * Лимиты карты; null - лимит по умолчанию. В ответе - действующие лимиты (null - без лимита) и израсходованные суммы.
+ */
+public class CardLimitsDTO {
+
+    @DecimalMin(value = "0.01", message = "Limit must be greater than 0")
+    private BigDecimal perTransaction;
+
+    @DecimalMin(value = "0.01", message = "Limit must be greater than 0")
+    private BigDecimal daily;
+
+    @DecimalMin(value = "0.01", message = "Limit must be greater than 0")
+    private BigDecimal monthly;
+
+    // Расход за последние 24 часа и 30 дней (только в ответе)
+    private BigDecimal spentDaily;
+    private BigDecimal spentMonthly;
+
+    public CardLimitsDTO() {
+
+    }
+
+    public CardLimitsDTO(BigDecimal perTransaction, BigDecimal daily, BigDecimal monthly,
+                         BigDecimal spentDaily, BigDecimal spentMonthly) {
+        this.perTransaction = perTransaction;
+        this.daily = daily;
+        this.monthly = monthly;
+        this.spentDaily = spentDaily;
+        this.spentMonthly = spentMonthly;
+    }
+
+    public BigDecimal getPerTransaction() {
+        return perTransaction;
+    }
+
+    public void setPerTransaction(BigDecimal perTransaction) {
+        this.perTransaction = perTransaction;
+    }
+
+    public BigDecimal getDaily() {
+        return daily;
+    }
+
+    public void setDaily(BigDecimal daily) {
+        this.daily = daily;
+    }
+
+    public BigDecimal getMonthly() {
+        return monthly;
+    }
+
+    public void setMonthly(BigDecimal monthly) {
+        this.monthly = monthly;
+    }
+
+    public BigDecimal getSpentDaily() {
+        return spentDaily;
+    }
+
+    public BigDecimal getSpentMonthly() {
+        return spentMonthly;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
+
+import java.math.BigDecimal;
+
+public class CardNumberTransferDTO {
+    @NotNull(message = "Source card ID is required")
+    @Positive(message = "Source card ID must be positive")
+    private Long sourceCardId;
+
+    @NotNull(message = "Target card number is required")
+    @Pattern(regexp = "\\d{16}", message = "Card number must be 16 digits")
+    private String targetCardNumber;
+
+    @NotNull(message = "Amount is required")
+    @DecimalMin(value = "0.01", message = "Amount must be greater than 0")
+    private BigDecimal amount;
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public void setSourceCardId(Long sourceCardId) {
+        this.sourceCardId = sourceCardId;
+    }
+
+    public String getTargetCardNumber() {
+        return targetCardNumber;
+    }
+
+    public void setTargetCardNumber(String targetCardNumber) {
+        this.targetCardNumber = targetCardNumber;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+}
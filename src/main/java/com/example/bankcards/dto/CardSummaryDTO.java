@@ -0,0 +1,49 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Краткие данные карты в списке пользователей администратора (номер только маскированный)
+ */
+public class CardSummaryDTO {
+
+    private final Long id;
+    private final Long userId;
+    private final String maskedNumber;
+    private final String status;
+    private final BigDecimal balance;
+    private final BigDecimal heldAmount;
+
+    public CardSummaryDTO(Long id, Long userId, String maskedNumber, String status, BigDecimal balance, BigDecimal heldAmount) {
+        this.id = id;
+        this.userId = userId;
+        this.maskedNumber = maskedNumber;
+        this.status = status;
+        this.balance = balance;
+        this.heldAmount = heldAmount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getMaskedNumber() {
+        return maskedNumber;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public BigDecimal getHeldAmount() {
+        return heldAmount;
+    }
+}
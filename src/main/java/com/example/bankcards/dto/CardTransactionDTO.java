@@ -0,0 +1,65 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.CardTransaction;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public class CardTransactionDTO {
+
+    private Long id;
+    private Long cardId;
+    private String type;
+    private BigDecimal amount;
+    private BigDecimal balanceAfter;
+    private Long counterpartyCardId;
+    private String reference;
+    private Instant createdAt;
+
+    public CardTransactionDTO() {
+
+    }
+
+    public CardTransactionDTO(CardTransaction transaction) {
+        this.id = transaction.getId();
+        this.cardId = transaction.getCardId();
+        this.type = transaction.getType();
+        this.amount = transaction.getAmount();
+        this.balanceAfter = transaction.getBalanceAfter();
+        this.counterpartyCardId = transaction.getCounterpartyCardId();
+        this.reference = transaction.getReference();
+        this.createdAt = transaction.getCreatedAt();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public Long getCounterpartyCardId() {
+        return counterpartyCardId;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
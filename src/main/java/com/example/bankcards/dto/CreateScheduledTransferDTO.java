@@ -0,0 +1,70 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public class CreateScheduledTransferDTO {
+    @NotNull(message = "Source card ID is required")
+    @Positive(message = "Source card ID must be positive")
+    private Long sourceCardId;
+
+    @NotNull(message = "Target card ID is required")
+    @Positive(message = "Target card ID must be positive")
+    private Long targetCardId;
+
+    @NotNull(message = "Amount is required")
+    @DecimalMin(value = "0.01", message = "Amount must be greater than 0")
+    private BigDecimal amount;
+
+    // ISO-8601: P1D, P1W, P1M
+    @NotBlank(message = "Period is required")
+    private String period;
+
+    // Первый запуск; по умолчанию - через один период
+    private Instant startAt;
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public void setSourceCardId(Long sourceCardId) {
+        this.sourceCardId = sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public void setTargetCardId(Long targetCardId) {
+        this.targetCardId = targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public Instant getStartAt() {
+        return startAt;
+    }
+
+    public void setStartAt(Instant startAt) {
+        this.startAt = startAt;
+    }
+}
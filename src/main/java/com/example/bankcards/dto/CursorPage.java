@@ -0,0 +1,60 @@
+package com.example.bankcards.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Страница keyset-пагинации: nextCursor передается в следующий запрос, null - данных больше нет.
+ * total - общее число записей, только если оно запрошено (отдельный COUNT)
+ */
+public class CursorPage<T> {
+
+    private List<T> items;
+    private String nextCursor;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long total;
+
+    public CursorPage() {
+
+    }
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public CursorPage(List<T> items, String nextCursor, Long total) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public Long getTotal() {
+        return total;
+    }
+
+    public boolean isHasMore() {
+        return nextCursor != null;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+public class RefreshTokenDTO {
+    @NotEmpty(message = "refresh-токен не должен быть пустым")
+    private String refreshToken;
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+}
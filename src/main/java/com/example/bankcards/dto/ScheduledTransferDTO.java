@@ -0,0 +1,71 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.ScheduledTransfer;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public class ScheduledTransferDTO {
+
+    private Long id;
+    private Long sourceCardId;
+    private Long targetCardId;
+    private BigDecimal amount;
+    private String period;
+    private String status;
+    private Instant nextRunAt;
+    private Instant lastRunAt;
+    private String lastError;
+
+    public ScheduledTransferDTO() {
+
+    }
+
+    public ScheduledTransferDTO(ScheduledTransfer transfer) {
+        this.id = transfer.getId();
+        this.sourceCardId = transfer.getSourceCardId();
+        this.targetCardId = transfer.getTargetCardId();
+        this.amount = transfer.getAmount();
+        this.period = transfer.getPeriod();
+        this.status = transfer.getStatus();
+        this.nextRunAt = transfer.getNextRunAt();
+        this.lastRunAt = transfer.getLastRunAt();
+        this.lastError = transfer.getLastError();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Instant getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public Instant getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
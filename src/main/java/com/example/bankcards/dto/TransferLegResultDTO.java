@@ -0,0 +1,79 @@
+package com.example.bankcards.dto;
+
+import java.math.BigDecimal;
+
+public class TransferLegResultDTO {
+
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+    // Перевод корректен, но не выполнен из-за ошибки в другом переводе (режим ALL_OR_NOTHING)
+    public static final String NOT_APPLIED = "NOT_APPLIED";
+
+    private int index;
+    private Long sourceCardId;
+    private Long targetCardId;
+    private BigDecimal amount;
+    private String status;
+    private String error;
+
+    public TransferLegResultDTO() {
+
+    }
+
+    public TransferLegResultDTO(int index, TransferDTO transfer, String status, String error) {
+        this.index = index;
+        this.sourceCardId = transfer.getSourceCardId();
+        this.targetCardId = transfer.getTargetCardId();
+        this.amount = transfer.getAmount();
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void setSourceCardId(Long sourceCardId) {
+        this.sourceCardId = sourceCardId;
+    }
+
+    public void setTargetCardId(Long targetCardId) {
+        this.targetCardId = targetCardId;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
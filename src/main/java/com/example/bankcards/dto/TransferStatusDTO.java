@@ -0,0 +1,65 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.TransferRequest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+public class TransferStatusDTO {
+
+    private String transferId;
+    private String status;
+    private Long sourceCardId;
+    private Long targetCardId;
+    private BigDecimal amount;
+    private String error;
+    private Instant createdAt;
+    private Instant processedAt;
+
+    public TransferStatusDTO() {
+
+    }
+
+    public TransferStatusDTO(TransferRequest request) {
+        this.transferId = request.getId();
+        this.status = request.getStatus();
+        this.sourceCardId = request.getSourceCardId();
+        this.targetCardId = request.getTargetCardId();
+        this.amount = request.getAmount();
+        this.error = request.getError();
+        this.createdAt = request.getCreatedAt();
+        this.processedAt = request.getProcessedAt();
+    }
+
+    public String getTransferId() {
+        return transferId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.Users;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * Пользователь в ответах администратора: без пароля и без ленивой коллекции карт.
+ * cards - только если запрошены (includeCards=true), иначе поле не выводится
+ */
+public class UserSummaryDTO {
+
+    private final Long id;
+    private final String username;
+    private final String role;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final List<CardSummaryDTO> cards;
+
+    public UserSummaryDTO(Users user, List<CardSummaryDTO> cards) {
+        this.id = user.getId();
+        this.username = user.getUsername();
+        this.role = user.getRole();
+        this.cards = cards;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public List<CardSummaryDTO> getCards() {
+        return cards;
+    }
+}
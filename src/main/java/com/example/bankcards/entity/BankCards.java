@@ -28,6 +28,10 @@ public class BankCards {
     @Column(name = "balance", nullable = false, precision = 19, scale = 2)
     private BigDecimal balance;
 
+    // Зарезервировано предавторизациями; в balance не входит
+    @Column(name = "held_amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal heldAmount = BigDecimal.ZERO;
+
     @Column(name = "status", nullable = false, length = 10)
     private String status;
 
@@ -39,6 +43,16 @@ public class BankCards {
 
     @Column(name = "user_id", insertable = false, updatable = false)
     private Long userId;
+
+    // Оптимистическая блокировка: параллельное изменение карты не перезаписывается молча
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    public long getVersion() {
+        return version;
+    }
     @JsonProperty("userId")
     public Long getUserIdForJson() {
         return this.userId;
@@ -85,6 +99,10 @@ public class BankCards {
         return balance;
     }
 
+    public BigDecimal getHeldAmount() {
+        return heldAmount;
+    }
+
     public Users getUser() {
         return user;
     }
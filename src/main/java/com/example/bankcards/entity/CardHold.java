@@ -0,0 +1,106 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Предавторизация: сумма переведена из доступных средств карты в зарезервированные.
+ * AUTHORIZED -> CAPTURED (списание) / VOIDED (отмена) / EXPIRED (истек срок, резерв возвращен).
+ */
+@Entity
+@Table(name = "card_holds")
+public class CardHold {
+
+    public static final String AUTHORIZED = "AUTHORIZED";
+    public static final String CAPTURED = "CAPTURED";
+    public static final String VOIDED = "VOIDED";
+    public static final String EXPIRED = "EXPIRED";
+
+    @Id
+    @Column(name = "id", nullable = false, length = 36)
+    private String id;
+
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "merchant", nullable = false, length = 100)
+    private String merchant;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "captured_amount", precision = 19, scale = 2)
+    private BigDecimal capturedAmount;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    @Column(name = "settled_at")
+    private Instant settledAt;
+
+    public CardHold() {
+
+    }
+
+    public CardHold(String id, Long cardId, Long userId, String merchant, BigDecimal amount, Instant createdAt, Instant expiresAt) {
+        this.id = id;
+        this.cardId = cardId;
+        this.userId = userId;
+        this.merchant = merchant;
+        this.amount = amount;
+        this.status = AUTHORIZED;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getMerchant() {
+        return merchant;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getCapturedAmount() {
+        return capturedAmount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public Instant getSettledAt() {
+        return settledAt;
+    }
+}
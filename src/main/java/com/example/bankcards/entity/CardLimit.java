@@ -0,0 +1,62 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Индивидуальные лимиты расходов карты; null - действует лимит по умолчанию (app.limits)
+ */
+@Entity
+@Table(name = "card_limits")
+public class CardLimit {
+
+    @Id
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Column(name = "per_transaction", precision = 19, scale = 2)
+    private BigDecimal perTransaction;
+
+    @Column(name = "daily", precision = 19, scale = 2)
+    private BigDecimal daily;
+
+    @Column(name = "monthly", precision = 19, scale = 2)
+    private BigDecimal monthly;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public CardLimit() {
+
+    }
+
+    public CardLimit(Long cardId, BigDecimal perTransaction, BigDecimal daily, BigDecimal monthly, Instant updatedAt) {
+        this.cardId = cardId;
+        this.perTransaction = perTransaction;
+        this.daily = daily;
+        this.monthly = monthly;
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public BigDecimal getPerTransaction() {
+        return perTransaction;
+    }
+
+    public BigDecimal getDaily() {
+        return daily;
+    }
+
+    public BigDecimal getMonthly() {
+        return monthly;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Запись журнала движений по карте. Только добавляется, не изменяется.
+ * Пишется пакетно через JDBC (LedgerService), через JPA только читается.
+ */
+@Entity
+@Table(name = "card_transactions")
+public class CardTransaction {
+
+    public static final String TRANSFER_OUT = "TRANSFER_OUT";
+    public static final String TRANSFER_IN = "TRANSFER_IN";
+    public static final String ADJUSTMENT = "ADJUSTMENT";
+    public static final String CAPTURE = "CAPTURE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "card_id", nullable = false)
+    private Long cardId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "type", nullable = false, length = 20)
+    private String type;
+
+    // Со знаком: списание отрицательное, зачисление положительное
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    // Баланс после операции (null, если неизвестен - условное обновление в БД)
+    @Column(name = "balance_after", precision = 19, scale = 2)
+    private BigDecimal balanceAfter;
+
+    @Column(name = "counterparty_card_id")
+    private Long counterpartyCardId;
+
+    // Общий идентификатор записей одной операции (обе стороны перевода)
+    @Column(name = "reference", length = 36)
+    private String reference;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public CardTransaction() {
+
+    }
+
+    public CardTransaction(Long cardId, Long userId, String type, BigDecimal amount, BigDecimal balanceAfter,
+                           Long counterpartyCardId, String reference) {
+        this.cardId = cardId;
+        this.userId = userId;
+        this.type = type;
+        this.amount = amount;
+        this.balanceAfter = balanceAfter;
+        this.counterpartyCardId = counterpartyCardId;
+        this.reference = reference;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    public Long getCounterpartyCardId() {
+        return counterpartyCardId;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "idempotency_keys")
+public class IdempotencyRecord {
+
+    // Ключ в области пользователя: "<userId>:<операция>:<Idempotency-Key>"
+    @Id
+    @Column(name = "id", nullable = false, length = 150)
+    private String id;
+
+    @Column(name = "request_hash", nullable = false, length = 64)
+    private String requestHash;
+
+    // null - запрос еще выполняется
+    @Column(name = "status_code")
+    private Integer statusCode;
+
+    @Column(name = "response_body", columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    // Reference операции (записи журнала с тем же reference - операция зафиксирована)
+    @Column(name = "reference", length = 36)
+    private String reference;
+
+    public IdempotencyRecord() {
+
+    }
+
+    public IdempotencyRecord(String id, String requestHash, Integer statusCode, String responseBody, Instant createdAt) {
+        this(id, requestHash, statusCode, responseBody, createdAt, null);
+    }
+
+    public IdempotencyRecord(String id, String requestHash, Integer statusCode, String responseBody, Instant createdAt,
+                             String reference) {
+        this.id = id;
+        this.requestHash = requestHash;
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.createdAt = createdAt;
+        this.reference = reference;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+
+/**
+ * Регулярный перевод между своими картами: выполняется в next_run_at, затем next_run_at сдвигается на period
+ * (ISO-8601: P1D, P1W, P1M). Отмененный перевод остается в таблице со статусом CANCELLED.
+ */
+@Entity
+@Table(name = "scheduled_transfers")
+public class ScheduledTransfer {
+
+    public static final String ACTIVE = "ACTIVE";
+    public static final String CANCELLED = "CANCELLED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "source_card_id", nullable = false)
+    private Long sourceCardId;
+
+    @Column(name = "target_card_id", nullable = false)
+    private Long targetCardId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "period", nullable = false, length = 20)
+    private String period;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "next_run_at", nullable = false)
+    private Instant nextRunAt;
+
+    @Column(name = "last_run_at")
+    private Instant lastRunAt;
+
+    @Column(name = "last_error")
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    public ScheduledTransfer() {
+
+    }
+
+    public ScheduledTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, String period,
+                             Instant nextRunAt, Instant createdAt) {
+        this.userId = userId;
+        this.sourceCardId = sourceCardId;
+        this.targetCardId = targetCardId;
+        this.amount = amount;
+        this.period = period;
+        this.status = ACTIVE;
+        this.nextRunAt = nextRunAt;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Первый запуск после now: пропущенные запуски (простой сервиса) не догоняются
+     */
+    public Instant nextRunAfter(Instant now) {
+        Period step = Period.parse(period);
+        LocalDateTime next = LocalDateTime.ofInstant(nextRunAt, ZoneOffset.UTC);
+        do {
+            next = next.plus(step);
+        } while (!next.toInstant(ZoneOffset.UTC).isAfter(now));
+        return next.toInstant(ZoneOffset.UTC);
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public Instant getNextRunAt() {
+        return nextRunAt;
+    }
+
+    public Instant getLastRunAt() {
+        return lastRunAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Асинхронный перевод в очереди: PENDING -> PROCESSING -> COMPLETED / FAILED.
+ */
+@Entity
+@Table(name = "transfer_requests")
+public class TransferRequest {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    @Column(name = "id", nullable = false, length = 36)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "source_card_id", nullable = false)
+    private Long sourceCardId;
+
+    @Column(name = "target_card_id", nullable = false)
+    private Long targetCardId;
+
+    @Column(name = "amount", nullable = false, precision = 19, scale = 2)
+    private BigDecimal amount;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status;
+
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+    // Момент захвата обработчиком; зависший PROCESSING захватывается повторно по таймауту
+    @Column(name = "claimed_at")
+    private Instant claimedAt;
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+
+    // Число захватов обработчиком; после app.transfers.async.max-attempts запрос помечается FAILED
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    public TransferRequest() {
+
+    }
+
+    public TransferRequest(String id, Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, Instant createdAt) {
+        this.id = id;
+        this.userId = userId;
+        this.sourceCardId = sourceCardId;
+        this.targetCardId = targetCardId;
+        this.amount = amount;
+        this.status = PENDING;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getSourceCardId() {
+        return sourceCardId;
+    }
+
+    public Long getTargetCardId() {
+        return targetCardId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getClaimedAt() {
+        return claimedAt;
+    }
+
+    public void setClaimedAt(Instant claimedAt) {
+        this.claimedAt = claimedAt;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.math.BigDecimal;
+
+/**
+ * Сумма доступных и зарезервированных средств всех карт пользователя; обновляется в транзакции изменения баланса
+ */
+@Entity
+@Table(name = "user_balance_summary")
+public class UserBalanceSummary {
+
+    @Id
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "available", nullable = false, precision = 19, scale = 2)
+    private BigDecimal available;
+
+    @Column(name = "held", nullable = false, precision = 19, scale = 2)
+    private BigDecimal held;
+
+    public UserBalanceSummary() {
+
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public BigDecimal getAvailable() {
+        return available;
+    }
+
+    public void setAvailable(BigDecimal available) {
+        this.available = available;
+    }
+
+    public BigDecimal getHeld() {
+        return held;
+    }
+
+    public void setHeld(BigDecimal held) {
+        this.held = held;
+    }
+}
@@ -26,7 +26,13 @@ public class Users {
     @Column(name = "role", nullable = false, length = 10)
     private String role;
 
-    // Связь OneToMany с таблицей bank_cards
+    // Увеличивается при изменении пользователя, токены со старой версией считаются устаревшими
+    @JsonIgnore
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
+    // Связь OneToMany с таблицей bank_cards; в JSON не выводится - ленивая загрузка на каждого пользователя (N+1)
+    @JsonIgnore
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<BankCards> cards;
 
@@ -56,6 +62,10 @@ public class Users {
         return role;
     }
 
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     public List<BankCards> getCards() {
         return cards;
     }
@@ -76,6 +86,10 @@ public class Users {
         this.role = role;
     }
 
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
     public void setCards(List<BankCards> cards) {
         this.cards = cards;
     }
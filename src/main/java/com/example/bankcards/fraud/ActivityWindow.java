@@ -0,0 +1,90 @@
+package com.example.bankcards.fraud;
+
+/**
+ * Последние события карты (или пользователя): кольцо фиксированного размера из переводов
+ * (время, карта-контрагент, сумма, направление) и время последней смены статуса.
+ * Старые переводы вытесняются новыми, поэтому правила видят не больше capacity последних переводов.
+ * Не потокобезопасно: доступ - под блокировкой самого окна (см. FraudRuleEngine).
+ */
+public final class ActivityWindow {
+
+    private final long[] times;
+    private final long[] counterparties;
+    private final long[] amounts;
+    private final boolean[] outgoing;
+    // Индекс следующей записи и число заполненных слотов
+    private int head;
+    private int size;
+    private long lastStatusChangeAt = Long.MIN_VALUE;
+    private String lastStatus;
+
+    ActivityWindow(int capacity) {
+        this.times = new long[capacity];
+        this.counterparties = new long[capacity];
+        this.amounts = new long[capacity];
+        this.outgoing = new boolean[capacity];
+    }
+
+    /**
+     * Число исходящих переводов не раньше since
+     */
+    public int countOutgoingSince(long since) {
+        int count = 0;
+        for (int i = 0, index = newest(); i < size; i++, index = previous(index)) {
+            if (times[index] < since) {
+                break;
+            }
+            if (outgoing[index]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Был ли входящий перевод с карты cardId не раньше since
+     */
+    public boolean receivedFrom(long cardId, long since) {
+        for (int i = 0, index = newest(); i < size; i++, index = previous(index)) {
+            if (times[index] < since) {
+                return false;
+            }
+            if (!outgoing[index] && counterparties[index] == cardId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getLastStatusChangeAt() {
+        return lastStatusChangeAt;
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    void recordTransfer(long atMillis, long counterpartyCardId, long amountCents, boolean isOutgoing) {
+        times[head] = atMillis;
+        counterparties[head] = counterpartyCardId;
+        amounts[head] = amountCents;
+        outgoing[head] = isOutgoing;
+        head = (head + 1) % times.length;
+        if (size < times.length) {
+            size++;
+        }
+    }
+
+    void recordStatusChange(long atMillis, String status) {
+        lastStatusChangeAt = atMillis;
+        lastStatus = status;
+    }
+
+    private int newest() {
+        return previous(head);
+    }
+
+    private int previous(int index) {
+        return index == 0 ? times.length - 1 : index - 1;
+    }
+}
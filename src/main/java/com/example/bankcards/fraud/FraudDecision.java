@@ -0,0 +1,19 @@
+package com.example.bankcards.fraud;
+
+/**
+ * Решение правила: ALLOW - пропустить, FLAG - пропустить и записать в журнал решений, BLOCK - отклонить
+ */
+public record FraudDecision(Action action, String rule, String reason) {
+
+    public static final FraudDecision ALLOW = new FraudDecision(Action.ALLOW, null, null);
+
+    public enum Action {
+        ALLOW,
+        FLAG,
+        BLOCK
+    }
+
+    public static FraudDecision of(Action action, String rule, String reason) {
+        return action == Action.ALLOW ? ALLOW : new FraudDecision(action, rule, reason);
+    }
+}
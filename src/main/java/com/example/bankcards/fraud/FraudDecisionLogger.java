@@ -0,0 +1,89 @@
+package com.example.bankcards.fraud;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Журнал решений антифрода (FLAG / BLOCK) вне пути перевода: решения кладутся в ограниченную очередь
+ * и пишутся в лог отдельным потоком. Переполненная очередь не тормозит переводы - запись отбрасывается
+ * и учитывается в метрике fraud.decisions.dropped.
+ */
+@Component
+public class FraudDecisionLogger {
+
+    private static final Logger log = LoggerFactory.getLogger(FraudDecisionLogger.class);
+    private static final int DRAIN_BATCH = 256;
+
+    private final BlockingQueue<Entry> queue;
+    private final Counter droppedCounter;
+    private Thread writer;
+    private volatile boolean running = true;
+
+    public FraudDecisionLogger(@Value("${app.fraud.log.queue-size:10000}") int queueSize, MeterRegistry meterRegistry) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.droppedCounter = Counter.builder("fraud.decisions.dropped")
+                .description("Fraud decisions not logged because the log queue was full")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(this::run, "fraud-decision-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+        }
+    }
+
+    public void log(FraudEvent event, FraudDecision decision) {
+        if (!queue.offer(new Entry(event, decision))) {
+            droppedCounter.increment();
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>(DRAIN_BATCH);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, DRAIN_BATCH - 1);
+                batch.forEach(FraudDecisionLogger::write);
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // Остаток очереди при остановке
+        queue.drainTo(batch);
+        batch.forEach(FraudDecisionLogger::write);
+    }
+
+    private static void write(Entry entry) {
+        FraudEvent event = entry.event();
+        FraudDecision decision = entry.decision();
+        log.warn("Fraud {} by rule {}: {} (type={}, user={}, card={}, counterparty={}, amountCents={}, at={})",
+                decision.action(), decision.rule(), decision.reason(), event.type(), event.userId(), event.cardId(),
+                event.counterpartyCardId(), event.amountCents(), event.atMillis());
+    }
+
+    private record Entry(FraudEvent event, FraudDecision decision) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.bankcards.fraud;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Событие, проверяемое правилами: перевод с карты или смена статуса карты.
+ * Сумма - в копейках, время - epoch millis.
+ */
+public record FraudEvent(Type type, Long userId, Long cardId, Long counterpartyCardId, long amountCents, String status,
+                         long atMillis) {
+
+    public enum Type {
+        TRANSFER,
+        STATUS_CHANGE
+    }
+
+    public static FraudEvent transfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, long atMillis) {
+        return new FraudEvent(Type.TRANSFER, userId, sourceCardId, targetCardId, toCents(amount), null, atMillis);
+    }
+
+    public static FraudEvent statusChange(Long userId, Long cardId, String status, long atMillis) {
+        return new FraudEvent(Type.STATUS_CHANGE, userId, cardId, null, 0, status, atMillis);
+    }
+
+    public boolean isTransfer() {
+        return type == Type.TRANSFER;
+    }
+
+    static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
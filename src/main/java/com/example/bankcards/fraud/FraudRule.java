@@ -0,0 +1,17 @@
+package com.example.bankcards.fraud;
+
+/**
+ * Правило антифрода. Реализации - Spring-бины, FraudRuleEngine получает их все.
+ * evaluate вызывается под блокировкой окон карты и пользователя и не должна обращаться к БД:
+ * все, что нужно правилу, есть в событии и окнах активности.
+ */
+public interface FraudRule {
+
+    String name();
+
+    /**
+     * card - последние события карты, user - последние переводы пользователя
+     * (само событие в окна еще не записано)
+     */
+    FraudDecision evaluate(FraudEvent event, ActivityWindow card, ActivityWindow user);
+}
@@ -0,0 +1,212 @@
+package com.example.bankcards.fraud;
+
+import com.example.bankcards.exception.FraudSuspectedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Антифрод на пути перевода: каждое событие (перевод, смена статуса карты) проверяется всеми FraudRule
+ * по окнам активности карты и пользователя в памяти, без запросов к БД.
+ * Итог - самое строгое из решений правил; BLOCK отклоняет перевод (FraudSuspectedException),
+ * FLAG и BLOCK пишутся в журнал асинхронно (FraudDecisionLogger).
+ * Событие, прошедшее проверку, записывается в окна - учитываются попытки переводов, а не только успешные.
+ * Пакет переводов проверяется как одно событие (screenBatch): ноги не считаются друг против друга.
+ * Окна неактивных карт вытесняются через state-ttl (должен быть не меньше самого длинного окна правил).
+ * Состояние локально для инстанса.
+ */
+@Component
+public class FraudRuleEngine {
+
+    private final List<FraudRule> rules;
+    private final FraudDecisionLogger decisionLogger;
+    private final boolean enabled;
+    private final int historySize;
+    private final Cache<Long, ActivityWindow> cards;
+    private final Cache<Long, ActivityWindow> users;
+    private final LongSupplier clock;
+    private final Map<FraudDecision.Action, Counter> decisionCounters = new EnumMap<>(FraudDecision.Action.class);
+
+    @Autowired
+    public FraudRuleEngine(List<FraudRule> rules, FraudDecisionLogger decisionLogger,
+                           @Value("${app.fraud.enabled:true}") boolean enabled,
+                           @Value("${app.fraud.history-size:32}") int historySize,
+                           @Value("${app.fraud.state-ttl:1h}") Duration stateTtl,
+                           @Value("${app.fraud.max-entries:1000000}") long maxEntries,
+                           MeterRegistry meterRegistry) {
+        this(rules, decisionLogger, enabled, historySize, stateTtl, maxEntries, meterRegistry, System::currentTimeMillis);
+    }
+
+    FraudRuleEngine(List<FraudRule> rules, FraudDecisionLogger decisionLogger, boolean enabled, int historySize,
+                    Duration stateTtl, long maxEntries, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.rules = List.copyOf(rules);
+        this.decisionLogger = decisionLogger;
+        this.enabled = enabled;
+        this.historySize = historySize;
+        this.clock = clock;
+        this.cards = Caffeine.newBuilder().maximumSize(maxEntries).expireAfterAccess(stateTtl).build();
+        this.users = Caffeine.newBuilder().maximumSize(maxEntries).expireAfterAccess(stateTtl).build();
+        for (FraudDecision.Action action : FraudDecision.Action.values()) {
+            decisionCounters.put(action, Counter.builder("fraud.decisions")
+                    .tag("action", action.name())
+                    .description("Fraud rule engine decisions")
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Проверка перевода с карты sourceCardId; BLOCK - FraudSuspectedException
+     */
+    public void screenTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount) {
+        if (!enabled) {
+            return;
+        }
+        FraudDecision decision = evaluate(FraudEvent.transfer(userId, sourceCardId, targetCardId, amount, clock.getAsLong()));
+        if (decision.action() == FraudDecision.Action.BLOCK) {
+            throw new FraudSuspectedException("Transfer blocked: " + decision.reason());
+        }
+    }
+
+    /**
+     * Смена статуса карты (блокировка / активация); вызывается после ее коммита и не отклоняется
+     */
+    public void recordStatusChange(Long userId, Long cardId, String status) {
+        if (!enabled) {
+            return;
+        }
+        evaluate(FraudEvent.statusChange(userId, cardId, status, clock.getAsLong()));
+    }
+
+    /**
+     * Проверка пакета переводов с карт пользователя как одного события: каждая нога проверяется по окнам
+     * до пакета, а в окна записывается один исходящий перевод с каждой карты-источника и один - с карт пользователя,
+     * поэтому пакет не упирается в правило частоты сам по себе. Возвращает причины отклонения по индексам ног.
+     */
+    public Map<Integer, String> screenBatch(Long userId, List<BatchLeg> legs) {
+        Map<Integer, String> blocked = new HashMap<>();
+        if (!enabled) {
+            return blocked;
+        }
+        long atMillis = clock.getAsLong();
+        ActivityWindow user = users.get(userId, id -> new ActivityWindow(historySize));
+        List<FraudEvent> allowed = new ArrayList<>();
+        for (int i = 0; i < legs.size(); i++) {
+            BatchLeg leg = legs.get(i);
+            if (leg.sourceCardId().equals(leg.targetCardId())) {
+                continue;
+            }
+            FraudEvent event = FraudEvent.transfer(userId, leg.sourceCardId(), leg.targetCardId(), leg.amount(), atMillis);
+            ActivityWindow card = cards.get(event.cardId(), id -> new ActivityWindow(historySize));
+            FraudDecision decision;
+            synchronized (card) {
+                synchronized (user) {
+                    decision = decide(event, card, user);
+                }
+            }
+            report(event, decision);
+            if (decision.action() == FraudDecision.Action.BLOCK) {
+                blocked.put(i, "Transfer blocked: " + decision.reason());
+            } else {
+                allowed.add(event);
+            }
+        }
+        if (allowed.isEmpty()) {
+            return blocked;
+        }
+
+        Map<Long, Long> outgoingCents = new LinkedHashMap<>();
+        long totalCents = 0;
+        for (FraudEvent event : allowed) {
+            outgoingCents.merge(event.cardId(), event.amountCents(), Long::sum);
+            totalCents += event.amountCents();
+        }
+        FraudEvent first = allowed.get(0);
+        outgoingCents.forEach((cardId, cents) -> {
+            ActivityWindow card = cards.get(cardId, id -> new ActivityWindow(historySize));
+            synchronized (card) {
+                card.recordTransfer(atMillis, first.counterpartyCardId(), cents, true);
+            }
+        });
+        synchronized (user) {
+            user.recordTransfer(atMillis, first.counterpartyCardId(), totalCents, true);
+        }
+        allowed.forEach(this::recordIncoming);
+        return blocked;
+    }
+
+    FraudDecision evaluate(FraudEvent event) {
+        ActivityWindow card = cards.get(event.cardId(), id -> new ActivityWindow(historySize));
+        ActivityWindow user = users.get(event.userId(), id -> new ActivityWindow(historySize));
+        FraudDecision decision;
+        // Порядок блокировок: окно карты, затем окно пользователя; окна разных карт не вкладываются
+        synchronized (card) {
+            synchronized (user) {
+                decision = decide(event, card, user);
+                if (decision.action() != FraudDecision.Action.BLOCK) {
+                    record(event, card, user);
+                }
+            }
+        }
+        if (event.isTransfer() && decision.action() != FraudDecision.Action.BLOCK) {
+            recordIncoming(event);
+        }
+        report(event, decision);
+        return decision;
+    }
+
+    // Вызывается под блокировками окон карты и пользователя
+    private FraudDecision decide(FraudEvent event, ActivityWindow card, ActivityWindow user) {
+        FraudDecision decision = FraudDecision.ALLOW;
+        for (FraudRule rule : rules) {
+            FraudDecision ruleDecision = rule.evaluate(event, card, user);
+            if (ruleDecision.action().compareTo(decision.action()) > 0) {
+                decision = ruleDecision;
+            }
+        }
+        return decision;
+    }
+
+    // Входящий перевод карты получателя - для правил, смотрящих на обратные переводы
+    private void recordIncoming(FraudEvent event) {
+        ActivityWindow target = cards.get(event.counterpartyCardId(), id -> new ActivityWindow(historySize));
+        synchronized (target) {
+            target.recordTransfer(event.atMillis(), event.cardId(), event.amountCents(), false);
+        }
+    }
+
+    private void report(FraudEvent event, FraudDecision decision) {
+        decisionCounters.get(decision.action()).increment();
+        if (decision.action() != FraudDecision.Action.ALLOW) {
+            decisionLogger.log(event, decision);
+        }
+    }
+
+    private static void record(FraudEvent event, ActivityWindow card, ActivityWindow user) {
+        if (event.isTransfer()) {
+            card.recordTransfer(event.atMillis(), event.counterpartyCardId(), event.amountCents(), true);
+            user.recordTransfer(event.atMillis(), event.counterpartyCardId(), event.amountCents(), true);
+        } else {
+            card.recordStatusChange(event.atMillis(), event.status());
+        }
+    }
+
+    /**
+     * Нога пакета переводов
+     */
+    public record BatchLeg(Long sourceCardId, Long targetCardId, BigDecimal amount) {
+    }
+}
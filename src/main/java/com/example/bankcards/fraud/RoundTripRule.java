@@ -0,0 +1,35 @@
+package com.example.bankcards.fraud;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Перевод обратно на карту, с которой недавно пришли деньги (A -> B, затем B -> A)
+ */
+@Component
+public class RoundTripRule implements FraudRule {
+
+    private final long windowMillis;
+    private final FraudDecision.Action action;
+
+    public RoundTripRule(@Value("${app.fraud.rules.round-trip.window:10m}") Duration window,
+                         @Value("${app.fraud.rules.round-trip.action:FLAG}") FraudDecision.Action action) {
+        this.windowMillis = window.toMillis();
+        this.action = action;
+    }
+
+    @Override
+    public String name() {
+        return "round-trip";
+    }
+
+    @Override
+    public FraudDecision evaluate(FraudEvent event, ActivityWindow card, ActivityWindow user) {
+        if (event.isTransfer() && card.receivedFrom(event.counterpartyCardId(), event.atMillis() - windowMillis)) {
+            return FraudDecision.of(action, name(), "Round-trip transfer between the same cards");
+        }
+        return FraudDecision.ALLOW;
+    }
+}
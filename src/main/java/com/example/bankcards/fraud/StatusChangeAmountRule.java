@@ -0,0 +1,40 @@
+package com.example.bankcards.fraud;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+/**
+ * Крупный перевод вскоре после блокировки или активации карты
+ */
+@Component
+public class StatusChangeAmountRule implements FraudRule {
+
+    private final long amountCents;
+    private final long windowMillis;
+    private final FraudDecision.Action action;
+
+    public StatusChangeAmountRule(@Value("${app.fraud.rules.status-change.amount:1000}") BigDecimal amount,
+                                  @Value("${app.fraud.rules.status-change.window:1h}") Duration window,
+                                  @Value("${app.fraud.rules.status-change.action:BLOCK}") FraudDecision.Action action) {
+        this.amountCents = FraudEvent.toCents(amount);
+        this.windowMillis = window.toMillis();
+        this.action = action;
+    }
+
+    @Override
+    public String name() {
+        return "status-change";
+    }
+
+    @Override
+    public FraudDecision evaluate(FraudEvent event, ActivityWindow card, ActivityWindow user) {
+        if (event.isTransfer() && event.amountCents() >= amountCents
+                && card.getLastStatusChangeAt() >= event.atMillis() - windowMillis) {
+            return FraudDecision.of(action, name(), "Large transfer shortly after card status change");
+        }
+        return FraudDecision.ALLOW;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bankcards.fraud;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Слишком много переводов за короткое время: с одной карты или со всех карт пользователя.
+ * Считаются и попытки (включая отклоненные позже по балансу), поэтому по умолчанию - FLAG, а не BLOCK.
+ */
+@Component
+public class VelocityRule implements FraudRule {
+
+    private final int cardMaxTransfers;
+    private final int userMaxTransfers;
+    private final long windowMillis;
+    private final FraudDecision.Action action;
+
+    public VelocityRule(@Value("${app.fraud.rules.velocity.card-max-transfers:10}") int cardMaxTransfers,
+                        @Value("${app.fraud.rules.velocity.user-max-transfers:30}") int userMaxTransfers,
+                        @Value("${app.fraud.rules.velocity.window:1m}") Duration window,
+                        @Value("${app.fraud.rules.velocity.action:FLAG}") FraudDecision.Action action) {
+        this.cardMaxTransfers = cardMaxTransfers;
+        this.userMaxTransfers = userMaxTransfers;
+        this.windowMillis = window.toMillis();
+        this.action = action;
+    }
+
+    @Override
+    public String name() {
+        return "velocity";
+    }
+
+    @Override
+    public FraudDecision evaluate(FraudEvent event, ActivityWindow card, ActivityWindow user) {
+        if (!event.isTransfer()) {
+            return FraudDecision.ALLOW;
+        }
+        long since = event.atMillis() - windowMillis;
+        if (card.countOutgoingSince(since) >= cardMaxTransfers) {
+            return FraudDecision.of(action, name(), "Too many transfers from card");
+        }
+        if (user.countOutgoingSince(since) >= userMaxTransfers) {
+            return FraudDecision.of(action, name(), "Too many transfers from user cards");
+        }
+        return FraudDecision.ALLOW;
+    }
+}
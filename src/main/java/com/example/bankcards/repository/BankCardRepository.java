@@ -1,33 +1,58 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.dto.CardSummaryDTO;
 import com.example.bankcards.entity.BankCards;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface BankCardRepository extends JpaRepository<BankCards, Long> {
+public interface BankCardRepository extends JpaRepository<BankCards, Long>, BankCardRepositoryCustom {
     List<BankCards> findByUserId(Long userId);
 
     Page<BankCards> findByUserId(Long userId, Pageable pageable);
 
+    // Keyset-страница карт пользователя: id > afterId по индексу вместо OFFSET
+    @Query("SELECT b FROM BankCards b WHERE b.user.id = :userId AND b.id > :afterId ORDER BY b.id")
+    List<BankCards> findByUserIdAfter(@Param("userId") Long userId, @Param("afterId") long afterId, Limit limit);
+
+    // Keyset-страница всех карт
+    @Query("SELECT b FROM BankCards b WHERE b.id > :afterId ORDER BY b.id")
+    List<BankCards> findAllAfter(@Param("afterId") long afterId, Limit limit);
+
+    long countByUserId(Long userId);
+
+    // Краткие данные карт сразу нескольких пользователей одним запросом, без загрузки сущностей
+    @Query("SELECT new com.example.bankcards.dto.CardSummaryDTO(b.id, b.user.id, b.masked_card_number, b.status, b.balance, b.heldAmount) " +
+            "FROM BankCards b WHERE b.user.id IN :userIds ORDER BY b.id")
+    List<CardSummaryDTO> findSummariesByUserIds(@Param("userIds") Collection<Long> userIds);
+
     List<BankCards> findByUserIdAndStatus(Long userId, String status);
 
     Optional<BankCards> findByCardNumber(String cardNumber);
 
     boolean existsByCardNumber(String cardNumber);
 
+    // Только id по номеру карты (уникальный индекс idx_bank_cards_card_number), без загрузки сущности
+    @Query("SELECT b.id FROM BankCards b WHERE b.cardNumber = :cardNumber")
+    Optional<Long> findIdByCardNumber(@Param("cardNumber") String cardNumber);
+
 
-    @Query("SELECT SUM(b.balance) FROM BankCards b WHERE b.user.id = :userId")
-    BigDecimal sumBalanceByUserId(@Param("userId") Long userId);
+    // Доступные и зарезервированные средства одним запросом
+    @Query("SELECT new com.example.bankcards.dto.BalanceDTO(SUM(b.balance), SUM(b.heldAmount)) FROM BankCards b WHERE b.user.id = :userId")
+    BalanceDTO sumBalancesByUserId(@Param("userId") Long userId);
 
 
     // Находит активные карты с истекшим сроком
@@ -36,4 +61,28 @@ public interface BankCardRepository extends JpaRepository<BankCards, Long> {
 
     Optional<BankCards> findByUserIdAndId(Long userId, Long id);
 
+    // Условное списание одним UPDATE: 0 строк - карты нет, она не активна или недостаточно средств
+    @Modifying
+    @Query("UPDATE BankCards b SET b.balance = b.balance - :amount, b.version = b.version + 1 " +
+            "WHERE b.id = :cardId AND b.user.id = :userId AND b.status = 'ACTIVE' AND b.balance >= :amount")
+    int debitIfActive(@Param("cardId") Long cardId, @Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+    // Условное зачисление одним UPDATE: 0 строк - карты нет или она не активна
+    @Modifying
+    @Query("UPDATE BankCards b SET b.balance = b.balance + :amount, b.version = b.version + 1 " +
+            "WHERE b.id = :cardId AND b.user.id = :userId AND b.status = 'ACTIVE'")
+    int creditIfActive(@Param("cardId") Long cardId, @Param("userId") Long userId, @Param("amount") BigDecimal amount);
+
+    // Резерв одним UPDATE (доступные -> зарезервированные): 0 строк - карты нет, она не активна или недостаточно средств
+    @Modifying
+    @Query("UPDATE BankCards b SET b.balance = b.balance - :amount, b.heldAmount = b.heldAmount + :amount, b.version = b.version + 1 " +
+            "WHERE b.id = :cardId AND b.status = 'ACTIVE' AND b.balance >= :amount")
+    int holdIfAvailable(@Param("cardId") Long cardId, @Param("amount") BigDecimal amount);
+
+    // Закрытие холда: held снимается с резерва, released из него возвращается в доступные средства
+    @Modifying
+    @Query("UPDATE BankCards b SET b.heldAmount = b.heldAmount - :held, b.balance = b.balance + :released, b.version = b.version + 1 " +
+            "WHERE b.id = :cardId AND b.heldAmount >= :held")
+    int releaseHold(@Param("cardId") Long cardId, @Param("held") BigDecimal held, @Param("released") BigDecimal released);
+
 }
@@ -0,0 +1,20 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.BankCards;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+public interface BankCardRepositoryCustom {
+
+    // Блокировка карт (SELECT ... FOR UPDATE) одним запросом в порядке возрастания id
+    List<BankCards> lockAllInIdOrder(Collection<Long> ids, Duration lockTimeout);
+
+    // То же только для карт пользователя: чужие id не блокируются и в результат не попадают
+    List<BankCards> lockOwnedInIdOrder(Long userId, Collection<Long> ids, Duration lockTimeout);
+
+    // Перевод другому пользователю: своя карта-источник (с проверкой владельца) и карта получателя по id,
+    // одним запросом в порядке id
+    List<BankCards> lockSourceAndRecipientInIdOrder(Long userId, Long sourceCardId, Long recipientCardId, Duration lockTimeout);
+}
@@ -0,0 +1,75 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.BankCards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.Session;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Все транзакции берут блокировки строк bank_cards в одном и том же порядке (по id),
+ * поэтому встречные переводы между одними и теми же картами не могут взаимно заблокироваться.
+ * Пути пользователя фильтруют карты по владельцу в самом запросе: FOR UPDATE не должен брать
+ * блокировки на чужие карты, id которых прислал клиент.
+ */
+public class BankCardRepositoryCustomImpl implements BankCardRepositoryCustom {
+
+    private static final String LOCK_TIMEOUT_HINT = "jakarta.persistence.lock.timeout";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile Boolean postgres;
+
+    @Override
+    public List<BankCards> lockAllInIdOrder(Collection<Long> ids, Duration lockTimeout) {
+        return lock(entityManager.createQuery(
+                        "SELECT b FROM BankCards b WHERE b.id IN :ids ORDER BY b.id", BankCards.class)
+                .setParameter("ids", ids), lockTimeout);
+    }
+
+    @Override
+    public List<BankCards> lockOwnedInIdOrder(Long userId, Collection<Long> ids, Duration lockTimeout) {
+        return lock(entityManager.createQuery(
+                        "SELECT b FROM BankCards b WHERE b.id IN :ids AND b.user.id = :userId ORDER BY b.id", BankCards.class)
+                .setParameter("ids", ids)
+                .setParameter("userId", userId), lockTimeout);
+    }
+
+    @Override
+    public List<BankCards> lockSourceAndRecipientInIdOrder(Long userId, Long sourceCardId, Long recipientCardId, Duration lockTimeout) {
+        return lock(entityManager.createQuery(
+                        "SELECT b FROM BankCards b WHERE (b.id = :sourceCardId AND b.user.id = :userId) OR b.id = :recipientCardId " +
+                                "ORDER BY b.id", BankCards.class)
+                .setParameter("sourceCardId", sourceCardId)
+                .setParameter("userId", userId)
+                .setParameter("recipientCardId", recipientCardId), lockTimeout);
+    }
+
+    private List<BankCards> lock(TypedQuery<BankCards> query, Duration lockTimeout) {
+        if (isPostgres()) {
+            // PostgreSQL игнорирует hint таймаута для FOR UPDATE - задаем lock_timeout на транзакцию
+            entityManager.createNativeQuery("SET LOCAL lock_timeout = " + lockTimeout.toMillis())
+                    .executeUpdate();
+        }
+        return query
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .setHint(LOCK_TIMEOUT_HINT, (int) lockTimeout.toMillis())
+                .getResultList();
+    }
+
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            result = entityManager.unwrap(Session.class).doReturningWork(connection ->
+                    connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres"));
+            postgres = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardHold;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface CardHoldRepository extends JpaRepository<CardHold, String> {
+
+    // Страница холдов, истекающих до until, по индексу (status, expires_at, id); курсор - последняя строка предыдущей страницы
+    @Query("SELECT h FROM CardHold h WHERE h.status = 'AUTHORIZED' AND h.expiresAt < :until " +
+            "AND (h.expiresAt > :afterExpiresAt OR (h.expiresAt = :afterExpiresAt AND h.id > :afterId)) " +
+            "ORDER BY h.expiresAt, h.id")
+    List<CardHold> findExpiring(@Param("until") Instant until, @Param("afterExpiresAt") Instant afterExpiresAt,
+                                @Param("afterId") String afterId, Limit limit);
+
+    // Выполняется в транзакции вместе с изменением карты: 0 - холд уже закрыт (capture / void / истечение)
+    @Modifying
+    @Query("UPDATE CardHold h SET h.status = :status, h.capturedAmount = :capturedAmount, h.settledAt = :settledAt " +
+            "WHERE h.id = :id AND h.status = 'AUTHORIZED'")
+    int settle(@Param("id") String id, @Param("status") String status, @Param("capturedAmount") BigDecimal capturedAmount,
+               @Param("settledAt") Instant settledAt);
+}
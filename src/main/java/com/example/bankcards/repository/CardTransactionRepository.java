@@ -0,0 +1,29 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardTransaction;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface CardTransactionRepository extends JpaRepository<CardTransaction, Long> {
+
+    // Первая страница журнала карты (новые записи первыми)
+    @Query("SELECT t FROM CardTransaction t WHERE t.cardId = :cardId ORDER BY t.createdAt DESC, t.id DESC")
+    List<CardTransaction> findLatest(@Param("cardId") Long cardId, Limit limit);
+
+    // Следующая страница: keyset по (created_at, id) вместо OFFSET
+    @Query("SELECT t FROM CardTransaction t WHERE t.cardId = :cardId " +
+            "AND (t.createdAt < :createdAt OR (t.createdAt = :createdAt AND t.id < :id)) " +
+            "ORDER BY t.createdAt DESC, t.id DESC")
+    List<CardTransaction> findBefore(@Param("cardId") Long cardId, @Param("createdAt") Instant createdAt,
+                                     @Param("id") Long id, Limit limit);
+
+    // Перевод с данным reference зафиксирован (индекс idx_card_transactions_reference)
+    boolean existsByReference(String reference);
+}
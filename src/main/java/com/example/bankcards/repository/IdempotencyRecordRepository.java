@@ -0,0 +1,47 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    // Захват ключа до выполнения запроса: второй инстанс с тем же ключом упадет на первичном ключе
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (id, request_hash, created_at, reference) " +
+            "VALUES (:id, :requestHash, :createdAt, :reference)", nativeQuery = true)
+    int claim(@Param("id") String id, @Param("requestHash") String requestHash, @Param("createdAt") Instant createdAt,
+              @Param("reference") String reference);
+
+    // Перехват брошенного захвата: строка без ответа, захваченная раньше staleBefore; 0 - ее уже перехватили или завершили.
+    // Reference сохраняется: по нему проверяется, не зафиксировал ли операцию прежний владелец
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.createdAt = :claimedAt, r.reference = :reference " +
+            "WHERE r.id = :id AND r.statusCode IS NULL AND r.createdAt < :staleBefore")
+    int takeOver(@Param("id") String id, @Param("reference") String reference,
+                 @Param("claimedAt") Instant claimedAt, @Param("staleBefore") Instant staleBefore);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.statusCode = :statusCode, r.responseBody = :responseBody WHERE r.id = :id")
+    int complete(@Param("id") String id, @Param("statusCode") int statusCode, @Param("responseBody") String responseBody);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.id = :id")
+    int release(@Param("id") String id);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :before")
+    int deleteExpired(@Param("before") Instant before);
+}
@@ -0,0 +1,46 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.ScheduledTransfer;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ScheduledTransferRepository extends JpaRepository<ScheduledTransfer, Long> {
+
+    List<ScheduledTransfer> findByUserIdOrderById(Long userId);
+
+    // Страница окна [afterRunAt, until) по индексу (status, next_run_at, id); курсор - последняя строка предыдущей страницы
+    @Query("SELECT s FROM ScheduledTransfer s WHERE s.status = 'ACTIVE' AND s.nextRunAt < :until " +
+            "AND (s.nextRunAt > :afterRunAt OR (s.nextRunAt = :afterRunAt AND s.id > :afterId)) " +
+            "ORDER BY s.nextRunAt, s.id")
+    List<ScheduledTransfer> findDue(@Param("until") Instant until, @Param("afterRunAt") Instant afterRunAt,
+                                    @Param("afterId") Long afterId, Limit limit);
+
+    // Выполняется в транзакции перевода: 0 - запуск уже выполнен (другим инстансом) или перевод отменен
+    @Modifying
+    @Query("UPDATE ScheduledTransfer s SET s.nextRunAt = :nextRunAt, s.lastRunAt = :lastRunAt, s.lastError = null " +
+            "WHERE s.id = :id AND s.status = 'ACTIVE' AND s.nextRunAt = :expectedRunAt")
+    int advance(@Param("id") Long id, @Param("expectedRunAt") Instant expectedRunAt,
+                @Param("nextRunAt") Instant nextRunAt, @Param("lastRunAt") Instant lastRunAt);
+
+    // Перевод не выполнен (нет средств, карта заблокирована) - ошибка сохраняется, следующий запуск по расписанию
+    @Transactional
+    @Modifying
+    @Query("UPDATE ScheduledTransfer s SET s.nextRunAt = :nextRunAt, s.lastRunAt = :lastRunAt, s.lastError = :error " +
+            "WHERE s.id = :id AND s.status = 'ACTIVE' AND s.nextRunAt = :expectedRunAt")
+    int recordFailure(@Param("id") Long id, @Param("expectedRunAt") Instant expectedRunAt, @Param("nextRunAt") Instant nextRunAt,
+                      @Param("lastRunAt") Instant lastRunAt, @Param("error") String error);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ScheduledTransfer s SET s.status = 'CANCELLED' WHERE s.id = :id AND s.userId = :userId AND s.status = 'ACTIVE'")
+    int cancel(@Param("id") Long id, @Param("userId") Long userId);
+}
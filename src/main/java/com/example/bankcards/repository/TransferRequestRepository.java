@@ -0,0 +1,54 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.TransferRequest;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface TransferRequestRepository extends JpaRepository<TransferRequest, String> {
+
+    Optional<TransferRequest> findByIdAndUserId(String id, Long userId);
+
+    // Пачка для обработки: строки, захваченные другим обработчиком, пропускаются (lock timeout -2 = SKIP LOCKED)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT t FROM TransferRequest t WHERE t.status = 'PENDING' " +
+            "OR (t.status = 'PROCESSING' AND t.claimedAt < :staleBefore) ORDER BY t.createdAt")
+    List<TransferRequest> findClaimable(@Param("staleBefore") Instant staleBefore, Limit limit);
+
+    // Выполняется в транзакции перевода: 0 - запрос уже обработан другим обработчиком
+    @Modifying
+    @Query("UPDATE TransferRequest t SET t.status = 'COMPLETED', t.processedAt = :processedAt " +
+            "WHERE t.id = :id AND t.status = 'PROCESSING'")
+    int markCompleted(@Param("id") String id, @Param("processedAt") Instant processedAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE TransferRequest t SET t.status = 'FAILED', t.error = :error, t.processedAt = :processedAt " +
+            "WHERE t.id = :id AND t.status = 'PROCESSING'")
+    int markFailed(@Param("id") String id, @Param("error") String error, @Param("processedAt") Instant processedAt);
+
+    // Временная ошибка (конфликт, недоступность БД) - запрос вернется в очередь
+    @Transactional
+    @Modifying
+    @Query("UPDATE TransferRequest t SET t.status = 'PENDING', t.claimedAt = null WHERE t.id = :id AND t.status = 'PROCESSING'")
+    int release(@Param("id") String id);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM TransferRequest t WHERE t.status IN ('COMPLETED', 'FAILED') AND t.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") Instant before);
+}
@@ -0,0 +1,55 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.entity.UserBalanceSummary;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UserBalanceSummaryRepository extends JpaRepository<UserBalanceSummary, Long> {
+
+    // Чтение сводки по первичному ключу
+    @Query("SELECT new com.example.bankcards.dto.BalanceDTO(s.available, s.held) FROM UserBalanceSummary s WHERE s.userId = :userId")
+    Optional<BalanceDTO> findBalanceByUserId(@Param("userId") Long userId);
+
+    // Изменение сводки на разницу; 0 строк - сводки пользователя еще нет
+    @Modifying
+    @Query("UPDATE UserBalanceSummary s SET s.available = s.available + :available, s.held = s.held + :held WHERE s.userId = :userId")
+    int addToBalance(@Param("userId") Long userId, @Param("available") BigDecimal available, @Param("held") BigDecimal held);
+
+    // Создание сводки по текущим картам; 0 строк - пользователя нет
+    @Modifying
+    @Query(value = "INSERT INTO user_balance_summary (user_id, available, held) " +
+            "SELECT u.id, COALESCE(SUM(b.balance), 0), COALESCE(SUM(b.held_amount), 0) " +
+            "FROM users u LEFT JOIN bank_cards b ON b.user_id = u.id WHERE u.id = :userId GROUP BY u.id",
+            nativeQuery = true)
+    int insertFromCards(@Param("userId") Long userId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserBalanceSummary s WHERE s.userId = :userId")
+    Optional<UserBalanceSummary> lockByUserId(@Param("userId") Long userId);
+
+    // Блокировка сводок нескольких пользователей одним запросом в порядке user id (групповой коммит шарда)
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM UserBalanceSummary s WHERE s.userId IN :userIds ORDER BY s.userId")
+    List<UserBalanceSummary> lockAllByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    // Пользователи, у которых сводка расходится с суммой по картам или отсутствует
+    @Query(value = "SELECT u.id FROM users u " +
+            "LEFT JOIN bank_cards b ON b.user_id = u.id " +
+            "LEFT JOIN user_balance_summary s ON s.user_id = u.id " +
+            "GROUP BY u.id, s.user_id, s.available, s.held " +
+            "HAVING s.user_id IS NULL OR s.available <> COALESCE(SUM(b.balance), 0) OR s.held <> COALESCE(SUM(b.held_amount), 0)",
+            nativeQuery = true)
+    List<Long> findDriftedUserIds();
+}
@@ -1,9 +1,13 @@
 package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.Users;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -14,5 +18,9 @@ public interface UsersRepository extends JpaRepository<Users, Long> {
 
     Optional<Users> findUsersById(Long id);
 
+    // Keyset-страница пользователей: id > afterId вместо OFFSET
+    @Query("SELECT u FROM Users u WHERE u.id > :afterId ORDER BY u.id")
+    List<Users> findAllAfter(@Param("afterId") long afterId, Limit limit);
+
 
 }
@@ -4,50 +4,169 @@ import com.auth0.jwt.JWT;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Component;
 import java.time.ZonedDateTime;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Component
 public class JWTCore {
+    public static final String CLAIM_USERNAME = "username";
+    public static final String CLAIM_USER_ID = "id";
+    public static final String CLAIM_USER_VERSION = "ver";
+    public static final String CLAIM_ROLES = "roles";
+    public static final String CLAIM_TYPE = "typ";
+    public static final String TYPE_ACCESS = "access";
+    public static final String TYPE_REFRESH = "refresh";
+
+    private static final String SUBJECT = "User details";
+    private static final String ISSUER = "dev";
+
     @Value("${app.security.jwt.secret}")
     private String secret;
     @Value("${app.security.jwt.expiration}")
     private int lifeTime;
+    @Value("${app.security.jwt.refresh-expiration:1209600000}")
+    private long refreshLifeTime;
+    // kid текущего ключа подписи
+    @Value("${app.security.jwt.key-id:primary}")
+    private String keyId;
+    // Предыдущие ключи, только для проверки: "kid1=secret1,kid2=secret2"
+    @Value("${app.security.jwt.previous-keys:}")
+    private String previousKeys;
+
+    // Алгоритм и верификаторы создаются один раз и переиспользуются (потокобезопасны)
+    private Algorithm signingAlgorithm;
+    private Map<String, JWTVerifier> verifiers;
+
+    @PostConstruct
+    public void init() {
+        Map<String, JWTVerifier> registry = new HashMap<>();
+        if (previousKeys != null && !previousKeys.isBlank()) {
+            String[] entries = previousKeys.split(",");
+            for (int i = 0; i < entries.length; i++) {
+                String[] parts = entries[i].trim().split("=", 2);
+                if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+                    // Текст записи не выводим: без "=" в нем целиком секрет
+                    throw new IllegalStateException("Invalid app.security.jwt.previous-keys entry #" + (i + 1) + ": expected kid=secret");
+                }
+                registry.put(parts[0].trim(), buildVerifier(Algorithm.HMAC256(parts[1].trim())));
+            }
+        }
+        signingAlgorithm = Algorithm.HMAC256(secret);
+        registry.put(keyId, buildVerifier(signingAlgorithm));
+        verifiers = Map.copyOf(registry);
+    }
 
     public String generateToken(Authentication authentication) {
-        List<String> roles = authentication.getAuthorities().stream()
+        return generateToken((UsersDetailsImpl) authentication.getPrincipal());
+    }
+
+    /**
+     * Короткоживущий access-токен
+     */
+    public String generateToken(UsersDetailsImpl usersDetails) {
+        List<String> roles = usersDetails.getAuthorities().stream()
                 .map(GrantedAuthority::getAuthority)
                 .collect(Collectors.toList());
 
-        UsersDetailsImpl usersDetails = (UsersDetailsImpl) authentication.getPrincipal();
-
         Date expirationDate = Date.from(ZonedDateTime.now().toInstant().plusMillis(lifeTime));
 
         return JWT.create()
-                .withSubject("User details")
-                .withIssuer("dev")
-                .withClaim("username",usersDetails.getUsername())
-                .withClaim("roles",roles)
+                .withKeyId(keyId)
+                .withJWTId(UUID.randomUUID().toString())
+                .withSubject(SUBJECT)
+                .withIssuer(ISSUER)
+                .withClaim(CLAIM_TYPE,TYPE_ACCESS)
+                .withClaim(CLAIM_USERNAME,usersDetails.getUsername())
+                .withClaim(CLAIM_USER_ID,usersDetails.getId())
+                .withClaim(CLAIM_USER_VERSION,usersDetails.getTokenVersion())
+                .withClaim(CLAIM_ROLES,roles)
                 .withIssuedAt(new Date())
                 .withExpiresAt(expirationDate)
-                .sign(Algorithm.HMAC256(secret));
+                .sign(signingAlgorithm);
     }
 
-public String validateTokenAndRetrieveClaim(String token) throws JWTVerificationException {
-    JWTVerifier verifier = JWT.require(Algorithm.HMAC256(secret))
-            .withSubject("User details")
-            .withIssuer("dev")
-            .build();
+    /**
+     * Долгоживущий refresh-токен, принимается только в /api/auth/refresh
+     */
+    public String generateRefreshToken(UsersDetailsImpl usersDetails) {
+        Date expirationDate = Date.from(ZonedDateTime.now().toInstant().plusMillis(refreshLifeTime));
 
-    DecodedJWT jwt = verifier.verify(token);
-    return jwt.getClaim("username").asString();
+        return JWT.create()
+                .withKeyId(keyId)
+                .withJWTId(UUID.randomUUID().toString())
+                .withSubject(SUBJECT)
+                .withIssuer(ISSUER)
+                .withClaim(CLAIM_TYPE,TYPE_REFRESH)
+                .withClaim(CLAIM_USERNAME,usersDetails.getUsername())
+                .withClaim(CLAIM_USER_ID,usersDetails.getId())
+                .withClaim(CLAIM_USER_VERSION,usersDetails.getTokenVersion())
+                .withIssuedAt(new Date())
+                .withExpiresAt(expirationDate)
+                .sign(signingAlgorithm);
+    }
+
+    public int getLifeTime() {
+        return lifeTime;
+    }
+
+public String validateTokenAndRetrieveClaim(String token) throws JWTVerificationException {
+    return validateToken(token).getClaim(CLAIM_USERNAME).asString();
 }
 
+    /**
+     * Проверка токена с возвратом всех claims (username, id, ver, roles).
+     * Токен декодируется один раз, ключ выбирается по заголовку kid.
+     */
+    public DecodedJWT validateToken(String token) throws JWTVerificationException {
+        DecodedJWT decodedJWT = JWT.decode(token);
+        // Токены без kid выпущены до ротации ключей - проверяем текущим ключом
+        String kid = decodedJWT.getKeyId() != null ? decodedJWT.getKeyId() : keyId;
+        JWTVerifier verifier = verifiers.get(kid);
+        if (verifier == null) {
+            throw new JWTVerificationException("Unknown signing key: " + kid);
+        }
+        return verifier.verify(decodedJWT);
+    }
+
+    /**
+     * Построение principal только из claims токена, без обращения к БД.
+     * Для токенов старого формата (без id/ver/roles) возвращает null.
+     */
+    public UsersDetailsImpl toPrincipal(DecodedJWT decodedJWT) {
+        Claim id = decodedJWT.getClaim(CLAIM_USER_ID);
+        Claim version = decodedJWT.getClaim(CLAIM_USER_VERSION);
+        List<String> roles = decodedJWT.getClaim(CLAIM_ROLES).asList(String.class);
+        String username = decodedJWT.getClaim(CLAIM_USERNAME).asString();
+        if (id.isMissing() || version.isMissing() || roles == null || roles.isEmpty() || username == null) {
+            return null;
+        }
+        return new UsersDetailsImpl(id.asLong(), username, null, roles.get(0), version.asInt());
+    }
+
+    /**
+     * Refresh-токен нельзя использовать как access-токен (токены без typ считаются access)
+     */
+    public boolean isRefreshToken(DecodedJWT decodedJWT) {
+        return TYPE_REFRESH.equals(decodedJWT.getClaim(CLAIM_TYPE).asString());
+    }
+
+    private JWTVerifier buildVerifier(Algorithm algorithm) {
+        return JWT.require(algorithm)
+                .withSubject(SUBJECT)
+                .withIssuer(ISSUER)
+                .build();
+    }
+
 }
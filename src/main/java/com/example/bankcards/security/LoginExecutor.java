@@ -0,0 +1,85 @@
+package com.example.bankcards.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Отдельный ограниченный пул для проверки паролей (BCrypt), чтобы всплеск логинов
+ * не занимал потоки Tomcat. При переполнении очереди, а также если задача простояла
+ * в очереди дольше max-wait, запрос сразу отклоняется (RejectedExecutionException).
+ */
+@Component
+public class LoginExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final Duration maxWait;
+    private final Timer hashTimer;
+    private final Timer queueWaitTimer;
+    private final Counter rejectedCounter;
+
+    public LoginExecutor(@Value("${app.security.login.threads:4}") int threads,
+                         @Value("${app.security.login.queue-capacity:100}") int queueCapacity,
+                         @Value("${app.security.login.max-wait:5s}") Duration maxWait,
+                         MeterRegistry meterRegistry) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxWait = maxWait;
+
+        Gauge.builder("auth.login.queue.depth", executor, e -> e.getQueue().size())
+                .description("Login requests waiting for password verification")
+                .register(meterRegistry);
+        Gauge.builder("auth.login.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        this.hashTimer = Timer.builder("auth.login.hash.duration")
+                .description("Password verification latency")
+                .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("auth.login.queue.wait")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("auth.login.rejected")
+                .description("Login requests rejected because the login pool is saturated")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполнение проверки пароля в пуле логинов
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long waited = System.nanoTime() - enqueuedAt;
+                queueWaitTimer.record(waited, TimeUnit.NANOSECONDS);
+                if (waited > maxWait.toNanos()) {
+                    rejectedCounter.increment();
+                    throw new RejectedExecutionException("Login request waited too long in queue");
+                }
+                return hashTimer.record(task);
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.bankcards.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение неудачных попыток входа по username и по IP клиента.
+ * Попытки считаются в скользящем окне (кольцо из bucket'ов на AtomicLong, без блокировок).
+ * При превышении порога ключ блокируется; каждая следующая блокировка вдвое длиннее
+ * предыдущей (до max-lockout). Состояние хранится только в памяти, число ключей ограничено,
+ * неактивные ключи вытесняются.
+ */
+@Component
+public class LoginThrottle {
+
+    private static final int BUCKETS = 10;
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private final Cache<String, AttemptWindow> byUsername;
+    private final Cache<String, AttemptWindow> byIp;
+    private final int maxFailures;
+    private final int ipMaxFailures;
+    private final long bucketMillis;
+    private final long lockoutMillis;
+    private final long maxLockoutMillis;
+    private final LongSupplier clock;
+    private final Counter throttledCounter;
+
+    @Autowired
+    public LoginThrottle(@Value("${app.security.login-throttle.max-failures:5}") int maxFailures,
+                         @Value("${app.security.login-throttle.ip-max-failures:50}") int ipMaxFailures,
+                         @Value("${app.security.login-throttle.window:15m}") Duration window,
+                         @Value("${app.security.login-throttle.lockout:1m}") Duration lockout,
+                         @Value("${app.security.login-throttle.max-lockout:1h}") Duration maxLockout,
+                         @Value("${app.security.login-throttle.max-entries:100000}") long maxEntries,
+                         MeterRegistry meterRegistry) {
+        this(maxFailures, ipMaxFailures, window, lockout, maxLockout, maxEntries, meterRegistry, System::currentTimeMillis);
+    }
+
+    LoginThrottle(int maxFailures, int ipMaxFailures, Duration window, Duration lockout, Duration maxLockout,
+                  long maxEntries, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.maxFailures = maxFailures;
+        this.ipMaxFailures = ipMaxFailures;
+        this.bucketMillis = Math.max(1, window.toMillis() / BUCKETS);
+        this.lockoutMillis = lockout.toMillis();
+        this.maxLockoutMillis = maxLockout.toMillis();
+        this.clock = clock;
+        // Запись живет, пока идут попытки, плюс максимальная блокировка
+        Duration idle = window.plus(maxLockout);
+        this.byUsername = Caffeine.newBuilder().maximumSize(maxEntries).expireAfterAccess(idle).build();
+        this.byIp = Caffeine.newBuilder().maximumSize(maxEntries).expireAfterAccess(idle).build();
+        this.throttledCounter = Counter.builder("auth.login.throttled")
+                .description("Login attempts rejected before password verification")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Сколько миллисекунд осталось до разблокировки (0 - попытка разрешена)
+     */
+    public long retryAfterMillis(String username, String ip) {
+        long now = clock.getAsLong();
+        long wait = Math.max(remaining(byUsername.getIfPresent(username), now), remaining(byIp.getIfPresent(ip), now));
+        if (wait > 0) {
+            throttledCounter.increment();
+        }
+        return wait;
+    }
+
+    public void recordFailure(String username, String ip) {
+        long now = clock.getAsLong();
+        byUsername.get(username, key -> new AttemptWindow()).recordFailure(now, maxFailures);
+        byIp.get(ip, key -> new AttemptWindow()).recordFailure(now, ipMaxFailures);
+    }
+
+    /**
+     * Успешный вход сбрасывает счетчик по username (счетчик по IP остается)
+     */
+    public void recordSuccess(String username) {
+        byUsername.invalidate(username);
+    }
+
+    private static long remaining(AttemptWindow window, long now) {
+        return window == null ? 0 : Math.max(0, window.lockedUntil.get() - now);
+    }
+
+    private class AttemptWindow {
+        // Каждый слот: номер bucket'а в старших битах, число попыток в младших COUNT_BITS
+        private final AtomicLongArray slots = new AtomicLongArray(BUCKETS);
+        private final AtomicLong lockedUntil = new AtomicLong();
+        private final AtomicInteger lockouts = new AtomicInteger();
+
+        void recordFailure(long now, int threshold) {
+            long bucket = now / bucketMillis;
+            int index = (int) (bucket % BUCKETS);
+            long current;
+            long next;
+            do {
+                current = slots.get(index);
+                next = (current >>> COUNT_BITS) == bucket
+                        ? current + ((current & COUNT_MASK) < COUNT_MASK ? 1 : 0)
+                        : (bucket << COUNT_BITS) | 1;
+            } while (!slots.compareAndSet(index, current, next));
+
+            if (count(bucket) >= threshold) {
+                int lockoutNumber = lockouts.incrementAndGet();
+                long duration = Math.min(maxLockoutMillis, lockoutMillis << Math.min(lockoutNumber - 1, 30));
+                lockedUntil.accumulateAndGet(now + duration, Math::max);
+            }
+        }
+
+        private long count(long currentBucket) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long slot = slots.get(i);
+                if (currentBucket - (slot >>> COUNT_BITS) < BUCKETS) {
+                    total += slot & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+    }
+}
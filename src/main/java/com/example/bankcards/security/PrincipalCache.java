@@ -0,0 +1,54 @@
+package com.example.bankcards.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Кэш аутентифицированных пользователей, чтобы JWTFilter не ходил в таблицу users на каждый запрос.
+ * Ключ - username, значение - UsersDetailsImpl. Размер ограничен, записи вытесняются по TTL.
+ * Статистика (hits/misses/evictions) публикуется в Micrometer как cache.* с тегом cache=principals.
+ */
+@Component
+public class PrincipalCache {
+
+    private final Cache<String, UsersDetailsImpl> cache;
+
+    public PrincipalCache(@Value("${app.security.principal-cache.max-size:10000}") long maxSize,
+                          @Value("${app.security.principal-cache.ttl:5m}") Duration ttl,
+                          MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+    }
+
+    /**
+     * Получение пользователя из кэша, при промахе - загрузка через loader
+     */
+    public UsersDetailsImpl get(String username, Function<String, UsersDetailsImpl> loader) {
+        return cache.get(username, loader);
+    }
+
+    /**
+     * Сброс записи по username
+     */
+    public void invalidate(String username) {
+        cache.invalidate(username);
+    }
+
+    /**
+     * Сброс всех записей пользователя по его ID (username мог измениться)
+     */
+    public void invalidateUser(Long userId) {
+        cache.asMap().values().removeIf(details -> userId.equals(details.getId()));
+    }
+}
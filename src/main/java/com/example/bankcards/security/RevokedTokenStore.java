@@ -0,0 +1,147 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import com.example.bankcards.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Отозванные refresh-токены (jti). Источник истины - таблица revoked_tokens, в памяти держится
+ * набор Bloom-фильтров, разбитых по времени истечения токена (bucket, по умолчанию сутки).
+ * Проверка идет только в память; в БД обращаемся лишь при положительном ответе фильтра.
+ * Bucket начинается с небольшого фильтра и добавляет фильтры вдвое большей емкости по мере
+ * заполнения, так что память растет с реальным числом отзывов, а не с заложенным максимумом.
+ * Bucket удаляется целиком, когда истекли все токены в нем.
+ */
+@Component
+public class RevokedTokenStore {
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final ConcurrentNavigableMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    private final long bucketMillis;
+    private final int initialCapacity;
+    private final double falsePositiveRate;
+
+    private volatile Instant lastSync = Instant.EPOCH;
+
+    public RevokedTokenStore(RevokedTokenRepository revokedTokenRepository,
+                             @Value("${app.security.revocation.bucket:1d}") Duration bucketSize,
+                             @Value("${app.security.revocation.initial-capacity:1024}") int initialCapacity,
+                             @Value("${app.security.revocation.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.bucketMillis = bucketSize.toMillis();
+        this.initialCapacity = Math.max(1, initialCapacity);
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    @PostConstruct
+    public void load() {
+        Instant now = Instant.now();
+        revokedTokenRepository.findByExpiresAtAfter(now).forEach(this::remember);
+        lastSync = now;
+    }
+
+    /**
+     * Отзыв токена до момента его истечения.
+     * Возвращает false, если токен уже был отозван (например, параллельный refresh тем же токеном).
+     */
+    public boolean revoke(String jti, Instant expiresAt) {
+        RevokedToken revoked = new RevokedToken(jti, expiresAt, Instant.now());
+        boolean inserted;
+        try {
+            revokedTokenRepository.insert(revoked.getJti(), revoked.getExpiresAt(), revoked.getRevokedAt());
+            inserted = true;
+        } catch (DataIntegrityViolationException e) {
+            inserted = false;
+        }
+        remember(revoked);
+        return inserted;
+    }
+
+    public boolean isRevoked(String jti, Instant expiresAt) {
+        Bucket bucket = buckets.get(bucketOf(expiresAt));
+        if (bucket == null || !bucket.mightContain(jti)) {
+            return false;
+        }
+        // Фильтр мог ошибиться - подтверждаем по таблице
+        return revokedTokenRepository.existsById(jti);
+    }
+
+    /**
+     * Подтягиваем отзывы других инстансов и удаляем истекшие данные
+     */
+    @Scheduled(fixedDelayString = "${app.security.revocation.sync-interval:30000}")
+    public void sync() {
+        Instant now = Instant.now();
+        // Небольшое перекрытие окна, чтобы не потерять записи на границе
+        revokedTokenRepository.findByRevokedAtAfter(lastSync.minusSeconds(5)).forEach(this::remember);
+        lastSync = now;
+
+        buckets.headMap(bucketOf(now)).clear();
+        revokedTokenRepository.deleteExpired(now);
+    }
+
+    /**
+     * Суммарный размер фильтров в памяти, бит
+     */
+    public long memoryBits() {
+        return buckets.values().stream().mapToLong(Bucket::bitCount).sum();
+    }
+
+    private void remember(RevokedToken token) {
+        buckets.computeIfAbsent(bucketOf(token.getExpiresAt()), bucket -> new Bucket()).put(token.getJti());
+    }
+
+    private long bucketOf(Instant expiresAt) {
+        return expiresAt.toEpochMilli() / bucketMillis;
+    }
+
+    // Масштабируемый фильтр: при заполнении текущего добавляется следующий вдвое большей емкости
+    private final class Bucket {
+
+        private final List<BloomFilter> filters = new CopyOnWriteArrayList<>();
+        private int capacity = initialCapacity;
+        private int count;
+
+        Bucket() {
+            filters.add(new BloomFilter(capacity, falsePositiveRate));
+        }
+
+        synchronized void put(String jti) {
+            if (mightContain(jti)) {
+                return;
+            }
+            if (count >= capacity) {
+                capacity *= 2;
+                count = 0;
+                filters.add(new BloomFilter(capacity, falsePositiveRate));
+            }
+            filters.get(filters.size() - 1).put(jti);
+            count++;
+        }
+
+        boolean mightContain(String jti) {
+            for (BloomFilter filter : filters) {
+                if (filter.mightContain(jti)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long bitCount() {
+            return filters.stream().mapToLong(BloomFilter::bitCount).sum();
+        }
+    }
+}
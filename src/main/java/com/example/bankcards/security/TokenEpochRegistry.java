@@ -0,0 +1,52 @@
+package com.example.bankcards.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * "Эпоха" токенов пользователя: токены с версией (claim ver) ниже минимальной считаются отозванными.
+ * Хранится только в памяти и только для пользователей, измененных администратором.
+ * Запись больше не нужна, когда истекли все токены, выданные до ее появления, поэтому
+ * записи старше времени жизни токена периодически удаляются.
+ */
+@Component
+public class TokenEpochRegistry {
+
+    private final Map<Long, Epoch> epochs = new ConcurrentHashMap<>();
+
+    @Value("${app.security.jwt.expiration}")
+    private long lifeTime;
+
+    /**
+     * Отзыв всех токенов пользователя с версией ниже minVersion
+     */
+    public void advance(Long userId, int minVersion) {
+        epochs.merge(userId, new Epoch(minVersion, System.currentTimeMillis()),
+                (current, next) -> next.minVersion() >= current.minVersion() ? next : current);
+    }
+
+    /**
+     * Отзыв всех токенов пользователя (например, при удалении)
+     */
+    public void revokeAll(Long userId) {
+        advance(userId, Integer.MAX_VALUE);
+    }
+
+    public boolean isRevoked(Long userId, int tokenVersion) {
+        Epoch epoch = epochs.get(userId);
+        return epoch != null && tokenVersion < epoch.minVersion();
+    }
+
+    @Scheduled(fixedDelayString = "${app.security.jwt.epoch-purge-interval:60000}")
+    public void purgeExpired() {
+        long threshold = System.currentTimeMillis() - lifeTime;
+        epochs.values().removeIf(epoch -> epoch.recordedAt() < threshold);
+    }
+
+    private record Epoch(int minVersion, long recordedAt) {
+    }
+}
@@ -15,13 +15,19 @@ public class UsersDetailsImpl implements UserDetails {
     private String username;
     private String password;
     private String role;
+    private int tokenVersion;
     private final List<GrantedAuthority> authorities;
 
     public UsersDetailsImpl(Long id, String username, String password, String role) {
+        this(id, username, password, role, 0);
+    }
+
+    public UsersDetailsImpl(Long id, String username, String password, String role, int tokenVersion) {
         this.id = id;
         this.username = username;
         this.password = password;
         this.role = role;
+        this.tokenVersion = tokenVersion;
         this.authorities = Collections.singletonList(
                 new SimpleGrantedAuthority(
                         role.startsWith("ROLE_") ? role : "ROLE_" + role
@@ -42,11 +48,20 @@ public class UsersDetailsImpl implements UserDetails {
                 users.getId(),
                 users.getUsername(),
                 users.getPassword(),
-                users.getRole()
+                users.getRole(),
+                users.getTokenVersion()
         );
     }
 
 
+    public Long getId() {
+        return id;
+    }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
@@ -1,21 +1,35 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.CardLimitsDTO;
+import com.example.bankcards.dto.CardSummaryDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.UserSummaryDTO;
 import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardTransaction;
 import com.example.bankcards.entity.Users;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.fraud.FraudRuleEngine;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.TokenEpochRegistry;
 import com.example.bankcards.util.CardMaskingUtil;
+import com.example.bankcards.util.IdCursor;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Service
 public class AdminService {
@@ -24,12 +38,32 @@ public class AdminService {
     private final UsersRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final CardMaskingUtil cardMaskingUtil;
+    private final PrincipalCache principalCache;
+    private final TokenEpochRegistry tokenEpochRegistry;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final LedgerService ledgerService;
+    private final CardCommandPipeline cardCommandPipeline;
+    private final CardNumberResolver cardNumberResolver;
+    private final SpendingLimitService spendingLimitService;
+    private final FraudRuleEngine fraudRuleEngine;
+    private final UserCardsCache userCardsCache;
+    private final BalanceSummaryService balanceSummaryService;
 
-    public AdminService(BankCardRepository bankCardRepository, UsersRepository userRepository, PasswordEncoder passwordEncoder, CardMaskingUtil cardMaskingUtil) {
+    public AdminService(BankCardRepository bankCardRepository, UsersRepository userRepository, PasswordEncoder passwordEncoder, CardMaskingUtil cardMaskingUtil, PrincipalCache principalCache, TokenEpochRegistry tokenEpochRegistry, TransactionRetryExecutor transactionRetryExecutor, LedgerService ledgerService, CardCommandPipeline cardCommandPipeline, CardNumberResolver cardNumberResolver, SpendingLimitService spendingLimitService, FraudRuleEngine fraudRuleEngine, UserCardsCache userCardsCache, BalanceSummaryService balanceSummaryService) {
         this.bankCardRepository = bankCardRepository;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.cardMaskingUtil = cardMaskingUtil;
+        this.principalCache = principalCache;
+        this.tokenEpochRegistry = tokenEpochRegistry;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.ledgerService = ledgerService;
+        this.cardCommandPipeline = cardCommandPipeline;
+        this.cardNumberResolver = cardNumberResolver;
+        this.spendingLimitService = spendingLimitService;
+        this.fraudRuleEngine = fraudRuleEngine;
+        this.userCardsCache = userCardsCache;
+        this.balanceSummaryService = balanceSummaryService;
     }
 
     /**
@@ -53,39 +87,68 @@ public class AdminService {
         card.setStatus("ACTIVE");
         card.setUser(user);
 
-        return bankCardRepository.save(card);
+        BankCards saved = bankCardRepository.save(card);
+        // Номер мог быть запомнен как несуществующий
+        cardNumberResolver.invalidate(cardNumber);
+        userCardsCache.invalidate(userId);
+        return saved;
     }
 
     /**
      * Блокировка карты
      */
     public BankCards blockCard(Long cardId) {
-        BankCards card = bankCardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException("Card not found"));
+        BankCards card = transactionRetryExecutor.execute("card.block", () -> {
+            BankCards found = bankCardRepository.findById(cardId)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
 
-        card.setStatus("BLOCKED");
-        return bankCardRepository.save(card);
+            found.setStatus("BLOCKED");
+            return bankCardRepository.save(found);
+        });
+        userCardsCache.invalidate(card.getUserId());
+        fraudRuleEngine.recordStatusChange(card.getUserId(), cardId, card.getStatus());
+        return card;
     }
 
     /**
      * Активация карты
      */
     public BankCards activateCard(Long cardId) {
-        BankCards card = bankCardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException("Card not found"));
+        BankCards card = transactionRetryExecutor.execute("card.activate", () -> {
+            BankCards found = bankCardRepository.findById(cardId)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
 
-        card.setStatus("ACTIVE");
-        return bankCardRepository.save(card);
+            found.setStatus("ACTIVE");
+            return bankCardRepository.save(found);
+        });
+        userCardsCache.invalidate(card.getUserId());
+        fraudRuleEngine.recordStatusChange(card.getUserId(), cardId, card.getStatus());
+        return card;
     }
 
     /**
      * Удаление карты
      */
     public void deleteCard(Long cardId) {
+        BankCards card = transactionRetryExecutor.execute("card.delete", () -> {
+            BankCards found = bankCardRepository.findById(cardId)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
+            bankCardRepository.delete(found);
+            bankCardRepository.flush();
+            balanceSummaryService.apply(found.getUserId(), found.getBalance().negate(), found.getHeldAmount().negate());
+            return found;
+        });
+        userCardsCache.invalidate(card.getUserId());
+    }
+
+    /**
+     * Установка индивидуальных лимитов расходов карты (незаданные значения - лимиты по умолчанию)
+     */
+    public CardLimitsDTO setCardLimits(Long cardId, CardLimitsDTO limits) {
         if (!bankCardRepository.existsById(cardId)) {
             throw new CardNotFoundException("Card not found");
         }
-        bankCardRepository.deleteById(cardId);
+        return spendingLimitService.setLimits(cardId, limits);
     }
 
     /**
@@ -117,8 +180,14 @@ public class AdminService {
 
         user.setUsername(username);
         user.setRole(role.toUpperCase());
+        // Ранее выданные токены пользователя становятся устаревшими
+        user.setTokenVersion(user.getTokenVersion() + 1);
 
-        return userRepository.save(user);
+        Users saved = userRepository.save(user);
+        // Роль или имя изменились - закэшированный principal больше не актуален
+        principalCache.invalidateUser(userId);
+        tokenEpochRegistry.advance(userId, saved.getTokenVersion());
+        return saved;
     }
 
     /**
@@ -129,24 +198,55 @@ public class AdminService {
             throw new UserNotFoundException("User not found");
         }
         userRepository.deleteById(userId);
+        principalCache.invalidateUser(userId);
+        userCardsCache.invalidate(userId);
+        tokenEpochRegistry.revokeAll(userId);
     }
 
     /**
-     * Установка баланса карты
+     * Установка баланса карты (при включенном app.transfers.pipeline - через шард карты)
      */
     public BankCards setCardBalance(Long cardId, BigDecimal balance) {
-        BankCards card = bankCardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException("Card not found"));
+        Supplier<BankCards> command = () -> {
+            BankCards card = bankCardRepository.findById(cardId)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
 
-        card.setBalance(balance);
-        return bankCardRepository.save(card);
+            return applyBalance(card, balance);
+        };
+        if (cardCommandPipeline.isEnabled()) {
+            return CardCommandPipeline.await(cardCommandPipeline.submit(cardId, command));
+        }
+        return transactionRetryExecutor.execute("card.set-balance", command);
     }
     public BankCards setCardBalance(String cardNumber, BigDecimal balance) {
-        BankCards card = bankCardRepository.findByCardNumber(cardNumber)
-                .orElseThrow(() -> new CardNotFoundException("Card not found"));
+        if (cardCommandPipeline.isEnabled()) {
+            // Шард выбирается по id карты, чтобы команда попала в одну очередь с переводами по ней
+            BankCards card = bankCardRepository.findByCardNumber(cardNumber)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
+            return setCardBalance(card.getId(), balance);
+        }
+        return transactionRetryExecutor.execute("card.set-balance", () -> {
+            BankCards card = bankCardRepository.findByCardNumber(cardNumber)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found"));
+
+            return applyBalance(card, balance);
+        });
+    }
 
+    // Корректировка баланса администратором попадает в журнал как ADJUSTMENT на разницу
+    private BankCards applyBalance(BankCards card, BigDecimal balance) {
+        BigDecimal delta = balance.subtract(card.getBalance() == null ? BigDecimal.ZERO : card.getBalance());
         card.setBalance(balance);
-        return bankCardRepository.save(card);
+        BankCards saved = bankCardRepository.save(card);
+        // Строка карты блокируется раньше строки сводки - тот же порядок, что у переводов
+        bankCardRepository.flush();
+        balanceSummaryService.apply(card.getUserId(), delta, BigDecimal.ZERO);
+        userCardsCache.invalidate(card.getUserId());
+        if (delta.signum() != 0) {
+            ledgerService.record(List.of(new CardTransaction(card.getId(), card.getUserId(),
+                    CardTransaction.ADJUSTMENT, delta, balance, null, null)));
+        }
+        return saved;
     }
     /**
      * Получение всех пользователей
@@ -155,6 +255,40 @@ public class AdminService {
         return userRepository.findAll();
     }
 
+    /**
+     * Keyset-страница пользователей по id; total - только по запросу (отдельный COUNT).
+     * Карты (includeCards) загружаются одним запросом на всю страницу, а не ленивой коллекцией каждого пользователя
+     */
+    public CursorPage<UserSummaryDTO> getUsersPage(String cursor, int limit, boolean includeTotal, boolean includeCards) {
+        int pageSize = IdCursor.pageSize(limit);
+        List<Users> rows = userRepository.findAllAfter(IdCursor.decode(cursor), Limit.of(pageSize + 1));
+        Long total = includeTotal ? userRepository.count() : null;
+        CursorPage<Users> page = IdCursor.page(rows, pageSize, Users::getId, total);
+        return new CursorPage<>(toSummaries(page.getItems(), includeCards), page.getNextCursor(), page.getTotal());
+    }
+
+    /**
+     * Пользователь по ID в виде проекции; карты - только по запросу
+     */
+    public Optional<UserSummaryDTO> getUserSummary(Long userId, boolean includeCards) {
+        return userRepository.findUsersById(userId)
+                .map(user -> toSummaries(List.of(user), includeCards).get(0));
+    }
+
+    private List<UserSummaryDTO> toSummaries(List<Users> users, boolean includeCards) {
+        if (!includeCards || users.isEmpty()) {
+            return users.stream().map(user -> new UserSummaryDTO(user, null)).toList();
+        }
+        Map<Long, List<CardSummaryDTO>> cards = new HashMap<>();
+        for (Users user : users) {
+            cards.put(user.getId(), new ArrayList<>());
+        }
+        for (CardSummaryDTO card : bankCardRepository.findSummariesByUserIds(cards.keySet())) {
+            cards.get(card.getUserId()).add(card);
+        }
+        return users.stream().map(user -> new UserSummaryDTO(user, cards.get(user.getId()))).toList();
+    }
+
     /**
      * Получение пользователя по ID
      */
@@ -0,0 +1,277 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.entity.TransferRequest;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.fraud.FraudRuleEngine;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.TransferRequestRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронные переводы: запрос проверяется, записывается в таблицу transfer_requests и сразу
+ * возвращается клиенту (202 + id). Пул обработчиков забирает запросы пачками (SKIP LOCKED - несколько
+ * обработчиков и инстансов не мешают друг другу) и выполняет каждый перевод в своей короткой транзакции,
+ * в которой же запрос помечается COMPLETED. Число обработчиков, а не число HTTP-потоков, определяет
+ * нагрузку на пул соединений БД.
+ * Каждый захват увеличивает attempts: запрос, который так и не удалось выполнить за max-attempts
+ * захватов (постоянная ошибка БД, падение обработчика), помечается FAILED, а не возвращается в очередь бесконечно.
+ */
+@Service
+public class AsyncTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncTransferService.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final TransferRequestRepository transferRequestRepository;
+    private final BankCardRepository bankCardRepository;
+    private final UserService userService;
+    private final FraudRuleEngine fraudRuleEngine;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter completedCounter;
+    private final Counter failedCounter;
+    private final Counter releasedCounter;
+    private final Timer latencyTimer;
+    // Сигнал обработчикам о новом запросе, чтобы не ждать следующего опроса
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final List<Thread> workers = new ArrayList<>();
+
+    @Value("${app.transfers.async.workers:2}")
+    private int workerCount;
+    @Value("${app.transfers.async.batch-size:50}")
+    private int batchSize;
+    @Value("${app.transfers.async.poll-interval:500ms}")
+    private Duration pollInterval;
+    @Value("${app.transfers.async.claim-timeout:1m}")
+    private Duration claimTimeout;
+    @Value("${app.transfers.async.retention:7d}")
+    private Duration retention;
+    @Value("${app.transfers.async.max-attempts:5}")
+    private int maxAttempts;
+
+    private volatile boolean running = true;
+
+    public AsyncTransferService(TransferRequestRepository transferRequestRepository, BankCardRepository bankCardRepository,
+                                UserService userService, FraudRuleEngine fraudRuleEngine, TransactionRetryExecutor transactionRetryExecutor,
+                                PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.transferRequestRepository = transferRequestRepository;
+        this.bankCardRepository = bankCardRepository;
+        this.userService = userService;
+        this.fraudRuleEngine = fraudRuleEngine;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.completedCounter = Counter.builder("transfers.async.processed").tag("outcome", "completed").register(meterRegistry);
+        this.failedCounter = Counter.builder("transfers.async.processed").tag("outcome", "failed").register(meterRegistry);
+        this.releasedCounter = Counter.builder("transfers.async.processed").tag("outcome", "released").register(meterRegistry);
+        this.latencyTimer = Timer.builder("transfers.async.latency")
+                .description("Time from submission to completion of an asynchronous transfer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::runWorker, "transfer-worker-" + (i + 1));
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * Постановка перевода в очередь. Проверяются только карты пользователя; статус карт и баланс
+     * проверяются при выполнении.
+     */
+    public TransferRequest submit(Long userId, TransferDTO transfer) {
+        return submit(userId, transfer, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Постановка в очередь с заданным id запроса (по нему IdempotencyService находит уже принятый перевод)
+     */
+    public TransferRequest submit(Long userId, TransferDTO transfer, String transferId) {
+        if (transfer.getSourceCardId().equals(transfer.getTargetCardId())) {
+            throw new ValidationException("Cannot transfer to the same card");
+        }
+        bankCardRepository.findByUserIdAndId(userId, transfer.getSourceCardId())
+                .orElseThrow(() -> new CardNotFoundException("Source card not found or access denied"));
+        bankCardRepository.findByUserIdAndId(userId, transfer.getTargetCardId())
+                .orElseThrow(() -> new CardNotFoundException("Target card not found or access denied"));
+        // Проверка при приеме запроса: отклоненный перевод не попадает в очередь
+        fraudRuleEngine.screenTransfer(userId, transfer.getSourceCardId(), transfer.getTargetCardId(), transfer.getAmount());
+
+        TransferRequest request = transferRequestRepository.save(new TransferRequest(transferId, userId,
+                transfer.getSourceCardId(), transfer.getTargetCardId(), transfer.getAmount(), Instant.now()));
+        if (wakeUp.availablePermits() < workerCount) {
+            wakeUp.release();
+        }
+        return request;
+    }
+
+    /**
+     * Принятый ранее запрос пользователя с данным id
+     */
+    public Optional<TransferRequest> findSubmitted(Long userId, String transferId) {
+        return transferRequestRepository.findByIdAndUserId(transferId, userId);
+    }
+
+    /**
+     * Статус своего асинхронного перевода
+     */
+    public TransferStatusDTO getStatus(Long userId, String transferId) {
+        return transferRequestRepository.findByIdAndUserId(transferId, userId)
+                .map(TransferStatusDTO::new)
+                .orElseThrow(() -> new TransferNotFoundException("Transfer not found"));
+    }
+
+    private void runWorker() {
+        while (running) {
+            try {
+                List<TransferRequest> batch = claimBatch();
+                if (batch.isEmpty()) {
+                    wakeUp.tryAcquire(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                batch.forEach(this::processSafely);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Transfer worker failed to claim requests", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * Обработка одной пачки в текущем потоке; возвращает размер пачки
+     */
+    int processPending() {
+        List<TransferRequest> batch = claimBatch();
+        batch.forEach(this::processSafely);
+        return batch.size();
+    }
+
+    // Захват пачки: PENDING (и зависшие PROCESSING) переводятся в PROCESSING одним коммитом
+    private List<TransferRequest> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            Instant now = Instant.now();
+            List<TransferRequest> claimed = new ArrayList<>();
+            for (TransferRequest request : transferRequestRepository.findClaimable(now.minus(claimTimeout), Limit.of(batchSize))) {
+                // Строка могла быть обработана, пока ждали ее блокировку (БД без SKIP LOCKED)
+                if (TransferRequest.PENDING.equals(request.getStatus())
+                        || (TransferRequest.PROCESSING.equals(request.getStatus()) && request.getClaimedAt().isBefore(now.minus(claimTimeout)))) {
+                    request.setStatus(TransferRequest.PROCESSING);
+                    request.setClaimedAt(now);
+                    request.setAttempts(request.getAttempts() + 1);
+                    claimed.add(request);
+                }
+            }
+            return claimed;
+        });
+    }
+
+    // Ошибка одного запроса не прерывает пачку: необработанный запрос будет захвачен повторно по claim-timeout
+    private void processSafely(TransferRequest request) {
+        try {
+            process(request);
+        } catch (RuntimeException e) {
+            log.error("Async transfer {} left in processing: {}", request.getId(), e.getMessage());
+        }
+    }
+
+    private void process(TransferRequest request) {
+        try {
+            boolean applied = transactionRetryExecutor.execute("transfer.async", () -> {
+                // Отметка и перевод в одной транзакции: повторный захват не выполнит перевод дважды
+                if (transferRequestRepository.markCompleted(request.getId(), Instant.now()) == 0) {
+                    return false;
+                }
+                userService.applyTransfer(request.getUserId(), request.getSourceCardId(), request.getTargetCardId(), request.getAmount());
+                return true;
+            });
+            if (applied) {
+                completedCounter.increment();
+                latencyTimer.record(Duration.between(request.getCreatedAt(), Instant.now()));
+            }
+        } catch (DataAccessException | TransactionException e) {
+            if (request.getAttempts() >= maxAttempts) {
+                // Ошибка повторяется на каждой попытке - вероятно, постоянная
+                log.warn("Async transfer {} failed after {} attempts: {}", request.getId(), request.getAttempts(), e.getMessage());
+                fail(request, "Transfer could not be processed");
+                return;
+            }
+            // Конфликт после всех повторов или сбой БД - запрос вернется в очередь
+            log.warn("Async transfer {} postponed: {}", request.getId(), e.getMessage());
+            releasedCounter.increment();
+            releaseQuietly(request.getId());
+        } catch (RuntimeException e) {
+            log.info("Async transfer {} failed: {}", request.getId(), e.getMessage());
+            fail(request, e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+        }
+    }
+
+    private void fail(TransferRequest request, String error) {
+        failedCounter.increment();
+        transferRequestRepository.markFailed(request.getId(),
+                error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error, Instant.now());
+    }
+
+    private void releaseQuietly(String id) {
+        try {
+            transferRequestRepository.release(id);
+        } catch (RuntimeException e) {
+            // Запрос будет захвачен повторно по claim-timeout
+            log.warn("Failed to release async transfer {}: {}", id, e.getMessage());
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(pollInterval.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.transfers.async.cleanup-interval:3600000}")
+    public void deleteProcessed() {
+        int deleted = transferRequestRepository.deleteProcessedBefore(Instant.now().minus(retention));
+        if (deleted > 0) {
+            log.info("Deleted {} processed async transfers", deleted);
+        }
+    }
+}
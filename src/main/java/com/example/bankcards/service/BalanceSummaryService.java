@@ -0,0 +1,156 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.entity.UserBalanceSummary;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserBalanceSummaryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Сводка балансов пользователя (user_balance_summary) вместо SUM по картам при каждом запросе.
+ * Каждое изменение, меняющее сумму по пользователю (перевод другому пользователю, холды, корректировка
+ * и удаление карты), прибавляет разницу к строке сводки в своей транзакции - после изменения карт,
+ * так что блокировки берутся в порядке "карты, затем сводка". Перевод между своими картами сумму
+ * не меняет и сводку не трогает.
+ * Строки нет (пользователь появился после миграции) - она создается в отдельной транзакции по
+ * закоммиченным балансам, после чего разница прибавляется как обычно. Периодическая сверка
+ * сравнивает сводку с суммой по картам и исправляет расхождения.
+ */
+@Service
+public class BalanceSummaryService {
+
+    private static final Logger log = LoggerFactory.getLogger(BalanceSummaryService.class);
+
+    private final UserBalanceSummaryRepository userBalanceSummaryRepository;
+    private final BankCardRepository bankCardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransaction;
+    private final Counter repairedCounter;
+
+    public BalanceSummaryService(UserBalanceSummaryRepository userBalanceSummaryRepository,
+                                 BankCardRepository bankCardRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
+        this.userBalanceSummaryRepository = userBalanceSummaryRepository;
+        this.bankCardRepository = bankCardRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.repairedCounter = Counter.builder("balance.summary.repaired")
+                .description("User balance summaries corrected by reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Доступные и зарезервированные средства всех карт пользователя
+     */
+    public BalanceDTO getBalance(Long userId) {
+        // Сводки нет, пока у пользователя не было изменений баланса - считаем по картам
+        return userBalanceSummaryRepository.findBalanceByUserId(userId)
+                .orElseGet(() -> bankCardRepository.sumBalancesByUserId(userId));
+    }
+
+    /**
+     * Изменение сводки пользователя на разницу; вызывается в транзакции изменения карт
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void apply(Long userId, BigDecimal available, BigDecimal held) {
+        if (available.signum() == 0 && held.signum() == 0) {
+            return;
+        }
+        if (userBalanceSummaryRepository.addToBalance(userId, available, held) == 0) {
+            createFromCards(userId);
+            userBalanceSummaryRepository.addToBalance(userId, available, held);
+        }
+    }
+
+    /**
+     * Перевод между пользователями; строки сводки блокируются в порядке user id
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void transfer(Long sourceUserId, Long targetUserId, BigDecimal amount) {
+        if (sourceUserId.equals(targetUserId)) {
+            return;
+        }
+        if (sourceUserId < targetUserId) {
+            apply(sourceUserId, amount.negate(), BigDecimal.ZERO);
+            apply(targetUserId, amount, BigDecimal.ZERO);
+        } else {
+            apply(targetUserId, amount, BigDecimal.ZERO);
+            apply(sourceUserId, amount.negate(), BigDecimal.ZERO);
+        }
+    }
+
+    /**
+     * Сверка сводок с суммой по картам: недостающие строки создаются, расхождения исправляются
+     */
+    @Scheduled(fixedDelayString = "${app.balance-summary.reconcile-interval:3600000}")
+    public int reconcile() {
+        List<Long> drifted = userBalanceSummaryRepository.findDriftedUserIds();
+        int repaired = 0;
+        for (Long userId : drifted) {
+            try {
+                if (repair(userId)) {
+                    repaired++;
+                }
+            } catch (RuntimeException e) {
+                log.warn("Balance summary of user {} not reconciled: {}", userId, e.getMessage());
+            }
+        }
+        if (repaired > 0) {
+            repairedCounter.increment(repaired);
+            log.info("Reconciled {} user balance summaries", repaired);
+        }
+        return repaired;
+    }
+
+    private boolean repair(Long userId) {
+        if (userBalanceSummaryRepository.findBalanceByUserId(userId).isEmpty()) {
+            createFromCards(userId);
+            return true;
+        }
+        Boolean repaired = transactionTemplate.execute(status -> {
+            // Сначала блокировка строки, затем сумма новым запросом: изменения, успевшие обновить
+            // сводку, к этому моменту закоммичены и уже видны в сумме по картам
+            UserBalanceSummary summary = userBalanceSummaryRepository.lockByUserId(userId).orElse(null);
+            if (summary == null) {
+                return false;
+            }
+            BalanceDTO actual = bankCardRepository.sumBalancesByUserId(userId);
+            if (summary.getAvailable().compareTo(actual.getAvailable()) == 0
+                    && summary.getHeld().compareTo(actual.getHeld()) == 0) {
+                return false;
+            }
+            log.warn("Balance summary drift for user {}: available {} -> {}, held {} -> {}", userId,
+                    summary.getAvailable(), actual.getAvailable(), summary.getHeld(), actual.getHeld());
+            summary.setAvailable(actual.getAvailable());
+            summary.setHeld(actual.getHeld());
+            return true;
+        });
+        return Boolean.TRUE.equals(repaired);
+    }
+
+    // Отдельная транзакция: сумма считается по закоммиченным балансам, без изменений текущей
+    private void createFromCards(Long userId) {
+        try {
+            newTransaction.executeWithoutResult(status -> userBalanceSummaryRepository.insertFromCards(userId));
+        } catch (DataIntegrityViolationException e) {
+            // Строку параллельно создала другая транзакция
+            log.debug("Balance summary of user {} already created", userId);
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.CursorPage;
 import com.example.bankcards.entity.BankCards;
 import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.util.IdCursor;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -32,4 +35,14 @@ public class BankCardService {
         return bankCardRepository.findAll();
     }
 
+    /**
+     * Keyset-страница всех карт по id; total - только по запросу (отдельный COUNT)
+     */
+    public CursorPage<BankCards> getCardsPage(String cursor, int limit, boolean includeTotal) {
+        int pageSize = IdCursor.pageSize(limit);
+        List<BankCards> rows = bankCardRepository.findAllAfter(IdCursor.decode(cursor), Limit.of(pageSize + 1));
+        Long total = includeTotal ? bankCardRepository.count() : null;
+        return IdCursor.page(rows, pageSize, BankCards::getId, total);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,329 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UserBalanceSummaryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Однопоточные шарды для изменений баланса "горячих" карт (app.transfers.pipeline.enabled).
+ * Команда направляется в шард по меньшему id своих карт: команды одной карты (и одной пары карт)
+ * выполняются одним потоком по порядку. Карта может участвовать в командах разных шардов (перевод
+ * с горячей карты на карту с меньшим id уходит в шард получателя), поэтому шард не единственный
+ * писатель карты: в начале групповой транзакции он одним запросом блокирует все карты пачки в порядке id,
+ * затем строки сводки их владельцев в порядке user id - тот же порядок, что у обычных переводов,
+ * так что шарды не блокируют друг друга взаимно. Блокировки держатся до коммита пачки, max-batch
+ * ограничивает и время их удержания.
+ * Пачка выполняется в одной транзакции (групповой коммит): каждая команда - под своим savepoint, ошибка
+ * одной команды откатывает только ее. Команда, упавшая на конфликте, повторяется отдельно сразу после
+ * коммита предыдущих команд и до следующих, порядок команд шарда сохраняется.
+ * Вызывающий получает CompletableFuture с результатом после коммита.
+ */
+@Component
+public class CardCommandPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(CardCommandPipeline.class);
+
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final BankCardRepository bankCardRepository;
+    private final UserBalanceSummaryRepository userBalanceSummaryRepository;
+    private final MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.transfers.pipeline.enabled:false}")
+    private boolean enabled;
+    @Value("${app.transfers.pipeline.shards:8}")
+    private int shardCount;
+    @Value("${app.transfers.pipeline.queue-capacity:1024}")
+    private int queueCapacity;
+    @Value("${app.transfers.pipeline.max-batch:64}")
+    private int maxBatch;
+    @Value("${app.transfers.lock-timeout:2s}")
+    private Duration lockTimeout;
+
+    private Shard[] shards;
+    private DistributionSummary batchSize;
+    private Counter groupFailures;
+
+    public CardCommandPipeline(PlatformTransactionManager transactionManager, TransactionRetryExecutor transactionRetryExecutor,
+                               BankCardRepository bankCardRepository, UserBalanceSummaryRepository userBalanceSummaryRepository,
+                               MeterRegistry meterRegistry) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.bankCardRepository = bankCardRepository;
+        this.userBalanceSummaryRepository = userBalanceSummaryRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        batchSize = DistributionSummary.builder("cards.pipeline.batch.size")
+                .description("Commands committed in one group transaction")
+                .register(meterRegistry);
+        groupFailures = Counter.builder("cards.pipeline.group.failed")
+                .description("Group transactions that failed and were re-executed command by command")
+                .register(meterRegistry);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+            Gauge.builder("cards.pipeline.queue.depth", shards[i].queue, BlockingQueue::size)
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+            shards[i].thread.start();
+        }
+        log.info("Card command pipeline started with {} shards", shardCount);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Постановка команды, меняющей одну карту
+     */
+    public <T> CompletableFuture<T> submit(Long cardId, Supplier<T> work) {
+        return submit(List.of(cardId), work);
+    }
+
+    /**
+     * Постановка команды в шард меньшего из cardIds. cardIds - все карты, которые меняет команда:
+     * они блокируются перед выполнением пачки, поэтому вызывающий передает только карты, которые вправе блокировать.
+     * Очередь переполнена - future завершается RejectedExecutionException.
+     */
+    public <T> CompletableFuture<T> submit(Collection<Long> cardIds, Supplier<T> work) {
+        if (!enabled) {
+            throw new IllegalStateException("Card command pipeline is disabled");
+        }
+        Command<T> command = new Command<>(cardIds, work);
+        long routingId = Collections.min(cardIds);
+        Shard shard = shards[Math.floorMod(Long.hashCode(routingId) * 0x9E3779B9, shards.length)];
+        if (!shard.queue.offer(command)) {
+            command.future.completeExceptionally(new RejectedExecutionException("Card command queue is full"));
+        }
+        return command.future;
+    }
+
+    /**
+     * Синхронное ожидание результата команды; исключение команды пробрасывается как есть
+     */
+    public static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (shards == null) {
+            return;
+        }
+        for (Shard shard : shards) {
+            shard.running = false;
+            shard.thread.interrupt();
+        }
+    }
+
+    private final class Shard {
+        private final BlockingQueue<Command<?>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Shard(int index) {
+            this.thread = new Thread(this::run, "card-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            List<Command<?>> batch = new ArrayList<>(maxBatch);
+            while (running) {
+                try {
+                    Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatch - 1);
+                    execute(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (RuntimeException e) {
+                    log.error("Unexpected error in card command shard", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+            Command<?> pending;
+            while ((pending = queue.poll()) != null) {
+                pending.future.completeExceptionally(new RejectedExecutionException("Card command pipeline stopped"));
+            }
+        }
+    }
+
+    private void execute(List<Command<?>> batch) {
+        int from = 0;
+        while (from < batch.size()) {
+            List<Command<?>> group = batch.subList(from, batch.size());
+            int processed = executeGroup(group);
+            if (processed < 0) {
+                // Коммит группы не прошел - выполняем ее команды по одной, по порядку
+                group.forEach(Command::runAlone);
+                return;
+            }
+            for (Command<?> command : group.subList(0, processed)) {
+                if (command.conflicted) {
+                    // Предыдущие команды уже закоммичены, следующие еще не выполнялись
+                    command.runAlone();
+                } else if (command.succeeded) {
+                    command.completeWithResult();
+                } else {
+                    command.future.completeExceptionally(command.failure);
+                }
+            }
+            from += processed;
+        }
+    }
+
+    /**
+     * Выполнение команд в одной транзакции до первой, упавшей на конфликте (она входит в результат).
+     * Возвращает число обработанных команд или -1, если транзакция не закоммичена.
+     */
+    private int executeGroup(List<Command<?>> group) {
+        batchSize.record(group.size());
+        int[] processed = {0};
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                lockInIdOrder(group);
+                for (Command<?> command : group) {
+                    processed[0]++;
+                    Savepoint savepoint = jdbc(Connection::setSavepoint);
+                    try {
+                        command.result = command.work.get();
+                        // Изменения команды уходят в БД до освобождения savepoint: откат следующей команды их не затронет
+                        entityManager.flush();
+                        jdbc(connection -> {
+                            connection.releaseSavepoint(savepoint);
+                            return null;
+                        });
+                        command.succeeded = true;
+                    } catch (RuntimeException e) {
+                        jdbc(connection -> {
+                            connection.rollback(savepoint);
+                            return null;
+                        });
+                        // Сущности в контексте могли остаться измененными откатанной командой
+                        entityManager.clear();
+                        RuntimeException failure = translate(e);
+                        if (failure instanceof ConcurrencyFailureException) {
+                            command.conflicted = true;
+                            return;
+                        }
+                        command.failure = failure;
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("Group commit of {} commands failed, executing them one by one: {}", group.size(), e.getMessage());
+            groupFailures.increment();
+            return -1;
+        }
+        return processed[0];
+    }
+
+    // Карты всех команд группы, затем сводки их владельцев - каждое одним запросом в порядке id
+    private void lockInIdOrder(List<Command<?>> group) {
+        TreeSet<Long> cardIds = new TreeSet<>();
+        group.forEach(command -> cardIds.addAll(command.cardIds));
+        TreeSet<Long> userIds = new TreeSet<>();
+        for (BankCards card : bankCardRepository.lockAllInIdOrder(cardIds, lockTimeout)) {
+            userIds.add(card.getUserId());
+        }
+        if (!userIds.isEmpty()) {
+            userBalanceSummaryRepository.lockAllByUserIds(userIds);
+        }
+    }
+
+    // Savepoint на соединении транзакции: HibernateJpaDialect их не поддерживает (status.createSavepoint падает)
+    private <T> T jdbc(ReturningWork<T> work) {
+        return entityManager.unwrap(Session.class).doReturningWork(work);
+    }
+
+    private static RuntimeException translate(RuntimeException e) {
+        DataAccessException translated = EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+
+    private final class Command<T> {
+        private final Collection<Long> cardIds;
+        private final Supplier<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private Object result;
+        private boolean succeeded;
+        private boolean conflicted;
+        private RuntimeException failure;
+
+        private Command(Collection<Long> cardIds, Supplier<T> work) {
+            this.cardIds = cardIds;
+            this.work = work;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void completeWithResult() {
+            future.complete((T) result);
+        }
+
+        // Отдельная транзакция с повтором при конфликте
+        private void runAlone() {
+            try {
+                future.complete(transactionRetryExecutor.execute("pipeline.single", work));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
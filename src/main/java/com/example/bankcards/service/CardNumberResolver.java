@@ -0,0 +1,77 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.BankCardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Номер карты -> id карты для переводов по номеру.
+ * Связь номера и id не меняется, поэтому найденные id кэшируются надолго; несуществующие номера
+ * запоминаются ненадолго (negative-ttl), чтобы ошибочные и перебираемые номера не доходили до БД.
+ * Устаревшая запись сбрасывается через invalidate (создание карты, карта не нашлась при блокировке)
+ * после завершения транзакции, в которой она вызвана.
+ */
+@Component
+public class CardNumberResolver {
+
+    private final BankCardRepository bankCardRepository;
+    private final Cache<String, Long> ids;
+    private final Cache<String, Boolean> missing;
+
+    public CardNumberResolver(BankCardRepository bankCardRepository,
+                              @Value("${app.transfers.p2p.cache-size:100000}") long cacheSize,
+                              @Value("${app.transfers.p2p.negative-cache-size:10000}") long negativeCacheSize,
+                              @Value("${app.transfers.p2p.negative-ttl:1m}") Duration negativeTtl) {
+        this.bankCardRepository = bankCardRepository;
+        this.ids = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.missing = Caffeine.newBuilder().maximumSize(negativeCacheSize).expireAfterWrite(negativeTtl).build();
+    }
+
+    public Optional<Long> resolve(String cardNumber) {
+        Long cached = ids.getIfPresent(cardNumber);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (missing.getIfPresent(cardNumber) != null) {
+            return Optional.empty();
+        }
+        Optional<Long> id = bankCardRepository.findIdByCardNumber(cardNumber);
+        if (id.isPresent()) {
+            ids.put(cardNumber, id.get());
+        } else {
+            missing.put(cardNumber, Boolean.TRUE);
+        }
+        return id;
+    }
+
+    /**
+     * Сброс записи номера: внутри транзакции - после ее завершения, иначе сразу.
+     * До коммита параллельный поиск еще не видит новую карту и снова запомнил бы номер как несуществующий.
+     * В отличие от UserCardsCache сброс выполняется и при откате: перевод на удаленную карту сбрасывает
+     * устаревший id и завершается ошибкой.
+     */
+    public void invalidate(String cardNumber) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(cardNumber);
+                }
+            });
+        } else {
+            evict(cardNumber);
+        }
+    }
+
+    private void evict(String cardNumber) {
+        ids.invalidate(cardNumber);
+        missing.invalidate(cardNumber);
+    }
+}
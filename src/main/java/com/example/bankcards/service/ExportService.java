@@ -0,0 +1,198 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.ValidationException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Выгрузка всех карт и пользователей для администратора без загрузки таблицы в память.
+ * Строки читаются JDBC-курсором (fetch size, read-only транзакция - иначе драйвер PostgreSQL
+ * забирает весь результат сразу) и пишутся в поток ответа по одной: сущности JPA не создаются,
+ * поэтому и persistence context не растет. Номера карт выгружаются только маскированными, пароли - никогда.
+ */
+@Service
+public class ExportService {
+
+    public enum Format {
+        NDJSON, CSV;
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    private static final List<String> CARD_COLUMNS =
+            List.of("id", "maskedNumber", "expiryDate", "balance", "heldAmount", "status", "userId");
+    private static final List<String> USER_COLUMNS = List.of("id", "username", "role");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public ExportService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         @Value("${app.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Все карты в порядке id; возвращает число выгруженных строк
+     */
+    public long exportCards(Format format, OutputStream out) throws IOException {
+        return export(format, out, CARD_COLUMNS,
+                "SELECT id, masked_card_number, expiry_date, balance, held_amount, status, user_id FROM bank_cards ORDER BY id",
+                rs -> {
+                    Date expiry = rs.getDate(3);
+                    return new Object[]{rs.getLong(1), rs.getString(2), expiry != null ? expiry.toLocalDate().toString() : null,
+                            rs.getBigDecimal(4), rs.getBigDecimal(5), rs.getString(6), rs.getLong(7)};
+                });
+    }
+
+    /**
+     * Все пользователи в порядке id; возвращает число выгруженных строк
+     */
+    public long exportUsers(Format format, OutputStream out) throws IOException {
+        return export(format, out, USER_COLUMNS, "SELECT id, username, role FROM users ORDER BY id",
+                rs -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3)});
+    }
+
+    private long export(Format format, OutputStream out, List<String> columns, String sql, RowReader reader) throws IOException {
+        RowWriter writer = format == Format.CSV ? new CsvWriter(out, columns) : new NdjsonWriter(out, columns);
+        long[] rows = {0};
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(sql, rs -> {
+                try {
+                    writer.write(reader.read(rs));
+                } catch (IOException e) {
+                    // Клиент закрыл соединение - прекращаем чтение курсора
+                    throw new UncheckedIOException(e);
+                }
+                rows[0]++;
+            }));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.finish();
+        return rows[0];
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        Object[] read(ResultSet rs) throws SQLException;
+    }
+
+    private interface RowWriter {
+        void write(Object[] values) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    // Один JSON-объект на строку
+    private final class NdjsonWriter implements RowWriter {
+
+        private final JsonGenerator generator;
+        private final List<String> columns;
+
+        NdjsonWriter(OutputStream out, List<String> columns) throws IOException {
+            this.generator = jsonFactory.createGenerator(out);
+            this.generator.setRootValueSeparator(null);
+            this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            this.columns = columns;
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value instanceof Long number) {
+                    generator.writeNumberField(columns.get(i), number);
+                } else if (value instanceof BigDecimal number) {
+                    generator.writeNumberField(columns.get(i), number);
+                } else {
+                    generator.writeStringField(columns.get(i), (String) value);
+                }
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.close();
+        }
+    }
+
+    // CSV (RFC 4180) в gzip: заголовок, затем строки
+    private static final class CsvWriter implements RowWriter {
+
+        private final GZIPOutputStream gzip;
+        private final Writer writer;
+
+        CsvWriter(OutputStream out, List<String> columns) throws IOException {
+            this.gzip = new GZIPOutputStream(out, 8192);
+            this.writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            writer.write(String.join(",", columns));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                if (values[i] instanceof BigDecimal number) {
+                    writer.write(number.toPlainString());
+                } else if (values[i] != null) {
+                    writer.write(escape(values[i].toString()));
+                }
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void finish() throws IOException {
+            writer.flush();
+            // Дописываем конец gzip, поток ответа закрывает контейнер
+            gzip.finish();
+        }
+
+        private static String escape(String value) {
+            // Ячейка, начинающаяся с =, +, -, @ (или табуляции / CR), открывается в табличном редакторе как формула
+            if (!value.isEmpty() && "=+-@\t\r".indexOf(value.charAt(0)) >= 0) {
+                value = "'" + value;
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
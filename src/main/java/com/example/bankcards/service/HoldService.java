@@ -0,0 +1,366 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AuthorizeHoldDTO;
+import com.example.bankcards.dto.CardHoldDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardHold;
+import com.example.bankcards.entity.CardTransaction;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.HoldNotFoundException;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardHoldRepository;
+import com.example.bankcards.util.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Предавторизации (холды): authorize переводит сумму из доступных средств карты (balance) в зарезервированные
+ * (held_amount) условным UPDATE, capture списывает зарезервированное (остаток возвращается), void - возвращает.
+ * Изменения карты выполняются так же, как переводы: через повтор транзакции или шард CardCommandPipeline.
+ * Истекшие холды снимает колесо таймеров: из БД читается только окно ближайших истечений
+ * (по индексу (status, expires_at, id)), закрытие холда - условный UPDATE по статусу, поэтому capture,
+ * void и истечение на нескольких инстансах не вернут резерв дважды.
+ */
+@Service
+public class HoldService {
+
+    private static final Logger log = LoggerFactory.getLogger(HoldService.class);
+
+    private final CardHoldRepository cardHoldRepository;
+    private final BankCardRepository bankCardRepository;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final CardCommandPipeline cardCommandPipeline;
+    private final CardNumberResolver cardNumberResolver;
+    private final LedgerService ledgerService;
+    private final SpendingLimitService spendingLimitService;
+    private final UserCardsCache userCardsCache;
+    private final BalanceSummaryService balanceSummaryService;
+    private final Counter authorizedCounter;
+    private final Counter capturedCounter;
+    private final Counter voidedCounter;
+    private final Counter expiredCounter;
+    // Новые холды и повторы истечения; в колесо их переносит поток истечения
+    private final Queue<Expiry> inbox = new ConcurrentLinkedQueue<>();
+
+    @Value("${app.holds.ttl:7d}")
+    private Duration ttl;
+    @Value("${app.holds.expiry.enabled:true}")
+    private boolean expiryEnabled;
+    @Value("${app.holds.expiry.tick:1s}")
+    private Duration tick;
+    @Value("${app.holds.expiry.wheel-size:64}")
+    private int wheelSize;
+    @Value("${app.holds.expiry.window:10m}")
+    private Duration window;
+    @Value("${app.holds.expiry.batch-size:100}")
+    private int batchSize;
+    @Value("${app.holds.expiry.retry-delay:1m}")
+    private Duration retryDelay;
+
+    // Состояние истечения - только под монитором tick
+    private HierarchicalTimingWheel<String> wheel;
+    private final Set<String> inWheel = new HashSet<>();
+    private Instant loadedUntil;
+
+    private Thread expiryThread;
+    private volatile boolean running = true;
+
+    public HoldService(CardHoldRepository cardHoldRepository, BankCardRepository bankCardRepository,
+                       TransactionRetryExecutor transactionRetryExecutor, CardCommandPipeline cardCommandPipeline,
+                       CardNumberResolver cardNumberResolver, LedgerService ledgerService,
+                       SpendingLimitService spendingLimitService, UserCardsCache userCardsCache,
+                       BalanceSummaryService balanceSummaryService, MeterRegistry meterRegistry) {
+        this.cardHoldRepository = cardHoldRepository;
+        this.bankCardRepository = bankCardRepository;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.cardCommandPipeline = cardCommandPipeline;
+        this.cardNumberResolver = cardNumberResolver;
+        this.ledgerService = ledgerService;
+        this.spendingLimitService = spendingLimitService;
+        this.userCardsCache = userCardsCache;
+        this.balanceSummaryService = balanceSummaryService;
+        this.authorizedCounter = Counter.builder("holds.operations").tag("operation", "authorize").register(meterRegistry);
+        this.capturedCounter = Counter.builder("holds.operations").tag("operation", "capture").register(meterRegistry);
+        this.voidedCounter = Counter.builder("holds.operations").tag("operation", "void").register(meterRegistry);
+        this.expiredCounter = Counter.builder("holds.operations").tag("operation", "expire").register(meterRegistry);
+        Gauge.builder("holds.expiry.wheel.size", this, HoldService::loadedHolds)
+                .description("Hold expirations loaded into the timing wheel")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (expiryEnabled) {
+            expiryThread = new Thread(this::runExpiry, "hold-expiry");
+            expiryThread.setDaemon(true);
+            expiryThread.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (expiryThread != null) {
+            expiryThread.interrupt();
+        }
+    }
+
+    /**
+     * Резерв суммы на карте по номеру карты
+     */
+    public CardHold authorize(AuthorizeHoldDTO request) {
+        Long cardId = cardNumberResolver.resolve(request.getCardNumber())
+                .orElseThrow(() -> new CardNotFoundException("Card not found"));
+        String holdId = UUID.randomUUID().toString();
+        BigDecimal amount = request.getAmount();
+
+        CardHold hold = executeOnCard(cardId, "hold.authorize", () -> {
+            // Холд расходует лимиты карты; возврат холда возвращает и лимит
+            SpendingLimitService.Reservation reservation = spendingLimitService.reserve(cardId, amount);
+            try {
+                return authorizeOnCard(cardId, holdId, request);
+            } catch (RuntimeException e) {
+                reservation.release();
+                throw e;
+            }
+        });
+        userCardsCache.invalidate(hold.getUserId());
+        authorizedCounter.increment();
+        inbox.add(new Expiry(hold.getId(), hold.getExpiresAt()));
+        return hold;
+    }
+
+    private CardHold authorizeOnCard(Long cardId, String holdId, AuthorizeHoldDTO request) {
+        BigDecimal amount = request.getAmount();
+        if (bankCardRepository.holdIfAvailable(cardId, amount) == 0) {
+            BankCards card = bankCardRepository.findById(cardId).orElse(null);
+            if (card == null) {
+                cardNumberResolver.invalidate(request.getCardNumber());
+                throw new CardNotFoundException("Card not found");
+            }
+            if (!"ACTIVE".equals(card.getStatus())) {
+                throw new RuntimeException("Card is not active");
+            }
+            throw new InsufficientFundsException("Insufficient funds on card");
+        }
+        Long userId = bankCardRepository.findById(cardId).orElseThrow().getUserId();
+        balanceSummaryService.apply(userId, amount.negate(), amount);
+        Instant now = Instant.now();
+        return cardHoldRepository.save(new CardHold(holdId, cardId, userId, request.getMerchant(), amount, now, now.plus(ttl)));
+    }
+
+    /**
+     * Списание зарезервированной суммы (полностью или частично, остаток возвращается в доступные средства)
+     */
+    public CardHoldDTO capture(String holdId, BigDecimal amount) {
+        CardHold hold = cardHoldRepository.findById(holdId)
+                .orElseThrow(() -> new HoldNotFoundException("Hold not found"));
+        BigDecimal captured = amount != null ? amount : hold.getAmount();
+        if (captured.compareTo(hold.getAmount()) > 0) {
+            throw new ValidationException("Capture amount exceeds hold amount");
+        }
+
+        CardHoldDTO result = executeOnCard(hold.getCardId(), "hold.capture", () -> {
+            if (cardHoldRepository.settle(holdId, CardHold.CAPTURED, captured, Instant.now()) == 0) {
+                throw new ValidationException("Hold is not authorized");
+            }
+            releaseOnCard(hold, hold.getAmount().subtract(captured));
+            ledgerService.record(List.of(new CardTransaction(hold.getCardId(), hold.getUserId(), CardTransaction.CAPTURE,
+                    captured.negate(), null, null, holdId)));
+            return new CardHoldDTO(hold, CardHold.CAPTURED, captured);
+        });
+        spendingLimitService.refund(hold.getCardId(), hold.getAmount().subtract(captured), hold.getCreatedAt());
+        userCardsCache.invalidate(hold.getUserId());
+        capturedCounter.increment();
+        return result;
+    }
+
+    /**
+     * Отмена холда: вся сумма возвращается в доступные средства
+     */
+    public CardHoldDTO voidHold(String holdId) {
+        CardHold hold = cardHoldRepository.findById(holdId)
+                .orElseThrow(() -> new HoldNotFoundException("Hold not found"));
+
+        CardHoldDTO result = executeOnCard(hold.getCardId(), "hold.void", () -> {
+            if (cardHoldRepository.settle(holdId, CardHold.VOIDED, null, Instant.now()) == 0) {
+                throw new ValidationException("Hold is not authorized");
+            }
+            releaseOnCard(hold, hold.getAmount());
+            return new CardHoldDTO(hold, CardHold.VOIDED, null);
+        });
+        spendingLimitService.refund(hold.getCardId(), hold.getAmount(), hold.getCreatedAt());
+        userCardsCache.invalidate(hold.getUserId());
+        voidedCounter.increment();
+        return result;
+    }
+
+    private void releaseOnCard(CardHold hold, BigDecimal released) {
+        if (bankCardRepository.releaseHold(hold.getCardId(), hold.getAmount(), released) == 0) {
+            throw new IllegalStateException("Card " + hold.getCardId() + " does not hold " + hold.getAmount());
+        }
+        balanceSummaryService.apply(hold.getUserId(), released, hold.getAmount().negate());
+    }
+
+    private <T> T executeOnCard(Long cardId, String operation, Supplier<T> command) {
+        if (cardCommandPipeline.isEnabled()) {
+            return CardCommandPipeline.await(cardCommandPipeline.submit(cardId, command));
+        }
+        return transactionRetryExecutor.execute(operation, command);
+    }
+
+    private void runExpiry() {
+        long tickMillis = tick.toMillis();
+        while (running) {
+            try {
+                tick(Instant.now());
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Hold expiry tick failed", e);
+            }
+        }
+    }
+
+    /**
+     * Один тик истечения: подгрузка окна, перенос новых холдов в колесо, снятие истекших.
+     * Возвращает число снятых холдов.
+     */
+    synchronized int tick(Instant now) {
+        if (wheel == null) {
+            wheel = new HierarchicalTimingWheel<>(tick.toMillis(), wheelSize, now.toEpochMilli());
+        }
+        List<String> due = new ArrayList<>();
+        Expiry expiry;
+        while ((expiry = inbox.poll()) != null) {
+            // Холд за пределами загруженного окна будет прочитан из БД вместе со следующим окном
+            if (loadedUntil != null && expiry.at().isBefore(loadedUntil)) {
+                addToWheel(expiry.holdId(), expiry.at(), due);
+            }
+        }
+        if (loadedUntil == null) {
+            // Первое окно включает холды, истекшие за время простоя
+            loadedUntil = loadWindow(Instant.EPOCH, now.plus(window), due);
+        }
+        while (!now.isBefore(loadedUntil.minus(window.dividedBy(2)))) {
+            Instant until = loadedUntil.plus(window);
+            loadWindow(loadedUntil, until, due);
+            // Холды, просроченные больше чем на окно (созданы на другом инстансе после чтения окна), подбираются повторно
+            loadWindow(Instant.EPOCH, now.minus(window), due);
+            loadedUntil = until;
+        }
+        wheel.advance(now.toEpochMilli(), holdId -> {
+            inWheel.remove(holdId);
+            due.add(holdId);
+        });
+
+        int expired = 0;
+        for (CardHold hold : cardHoldRepository.findAllById(due)) {
+            if (CardHold.AUTHORIZED.equals(hold.getStatus()) && !hold.getExpiresAt().isAfter(now) && expire(hold, now)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private boolean expire(CardHold hold, Instant now) {
+        try {
+            boolean released = executeOnCard(hold.getCardId(), "hold.expire", () -> {
+                // 0 - холд закрыт capture / void или другим инстансом
+                if (cardHoldRepository.settle(hold.getId(), CardHold.EXPIRED, null, now) == 0) {
+                    return false;
+                }
+                if (!bankCardRepository.existsById(hold.getCardId())) {
+                    // Карта удалена вместе с резервом - холд закрывается без возврата, иначе его выбирали бы снова на каждом окне
+                    log.warn("Hold {} expired on deleted card {}", hold.getId(), hold.getCardId());
+                    return false;
+                }
+                releaseOnCard(hold, hold.getAmount());
+                return true;
+            });
+            if (released) {
+                spendingLimitService.refund(hold.getCardId(), hold.getAmount(), hold.getCreatedAt());
+                userCardsCache.invalidate(hold.getUserId());
+                expiredCounter.increment();
+            }
+            return released;
+        } catch (IllegalStateException e) {
+            // Резерв на карте меньше суммы холда - нарушение инварианта, повтор не поможет
+            log.error("Hold {} cannot be released: {}", hold.getId(), e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            log.warn("Hold {} expiry postponed: {}", hold.getId(), e.getMessage());
+            inbox.add(new Expiry(hold.getId(), now.plus(retryDelay)));
+            return false;
+        }
+    }
+
+    // Чтение окна страницами по курсору (expires_at, id); возвращает конец окна
+    private Instant loadWindow(Instant from, Instant until, List<String> due) {
+        Instant afterExpiresAt = from;
+        String afterId = "";
+        while (true) {
+            List<CardHold> page = cardHoldRepository.findExpiring(until, afterExpiresAt, afterId, Limit.of(batchSize));
+            for (CardHold hold : page) {
+                addToWheel(hold.getId(), hold.getExpiresAt(), due);
+            }
+            if (page.size() < batchSize) {
+                return until;
+            }
+            CardHold last = page.get(page.size() - 1);
+            afterExpiresAt = last.getExpiresAt();
+            afterId = last.getId();
+        }
+    }
+
+    private void addToWheel(String holdId, Instant at, List<String> due) {
+        if (!inWheel.add(holdId)) {
+            return;
+        }
+        if (!wheel.add(holdId, at.toEpochMilli())) {
+            inWheel.remove(holdId);
+            due.add(holdId);
+        }
+    }
+
+    /**
+     * Сброс колеса: на следующем тике окно будет заново прочитано из БД
+     */
+    synchronized void reset() {
+        wheel = null;
+        inWheel.clear();
+        loadedUntil = null;
+        inbox.clear();
+    }
+
+    private synchronized int loadedHolds() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    private record Expiry(String holdId, Instant at) {
+    }
+}
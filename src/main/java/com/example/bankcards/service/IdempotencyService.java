@@ -0,0 +1,300 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyRecord;
+import com.example.bankcards.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Идемпотентное выполнение запросов по заголовку Idempotency-Key.
+ * Недавние ключи держатся в ограниченном кэше в памяти (future ответа), таблица idempotency_keys -
+ * долговременное хранилище и защита от одновременного выполнения на разных инстансах.
+ * Параллельные дубли ждут единственное выполнение вместо повторного запуска операции.
+ * Захват без ответа старше claim-timeout считается брошенным (инстанс упал между захватом и записью
+ * ответа) и перехватывается следующим запросом с тем же ключом.
+ * Каждый захват получает reference, который операция записывает вместе со своим результатом (reference
+ * перевода в журнале, id асинхронного запроса) в той же транзакции. Перехвативший ключ сначала ищет
+ * результат по reference (recovery) и выполняет операцию, только если прежний владелец ее не зафиксировал.
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CompletableFuture<StoredResponse>> inFlight;
+    private final Duration ttl;
+    private final Duration waitTimeout;
+    private final Duration claimTimeout;
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              @Value("${app.idempotency.max-size:100000}") long maxSize,
+                              @Value("${app.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${app.idempotency.wait-timeout:10s}") Duration waitTimeout,
+                              @Value("${app.idempotency.claim-timeout:1m}") Duration claimTimeout) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.waitTimeout = waitTimeout;
+        this.claimTimeout = claimTimeout;
+        this.inFlight = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Выполнение операции не более одного раза для тройки (пользователь, операция, ключ).
+     * Повтор с тем же ключом возвращает сохраненный ответ, не вызывая операцию.
+     * Операция (эндпоинт) входит в область ключа: один ключ на /transfer и /transfers - разные запросы,
+     * иначе тела TransferDTO совпали бы по хэшу и повтор вернул бы чужой ответ.
+     * action получает reference захвата и должен зафиксировать его вместе с результатом;
+     * recovery по reference возвращает ответ уже зафиксированной операции или empty.
+     */
+    public ResponseEntity<?> execute(Long userId, String operation, String key, Object request,
+                                     Function<String, Optional<ResponseEntity<?>>> recovery,
+                                     Function<String, ResponseEntity<?>> action) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.badRequest().body(Map.of("error", HEADER + " must be 1-" + MAX_KEY_LENGTH + " characters"));
+        }
+        String scope = userId + ":" + operation + ":" + key;
+        String requestHash = hash(request);
+
+        while (true) {
+            CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+            CompletableFuture<StoredResponse> existing = inFlight.asMap().putIfAbsent(scope, mine);
+            if (existing == null) {
+                return executeOnce(scope, requestHash, mine, recovery, action);
+            }
+
+            StoredResponse stored;
+            try {
+                stored = existing.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                // Выполнение завершилось ошибкой и ключ освобожден - пробуем выполнить сами
+                continue;
+            } catch (TimeoutException e) {
+                return inProgress();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return inProgress();
+            }
+            return replay(stored, requestHash);
+        }
+    }
+
+    private ResponseEntity<?> executeOnce(String scope, String requestHash, CompletableFuture<StoredResponse> mine,
+                                          Function<String, Optional<ResponseEntity<?>>> recovery,
+                                          Function<String, ResponseEntity<?>> action) {
+        // mine завершается на любом пути, иначе дубли ждали бы его до истечения записи в кэше
+        try {
+            Claim claim = claimOrLoad(scope, requestHash);
+            if (claim.existing != null) {
+                StoredResponse stored = claim.existing;
+                if (stored.statusCode == null) {
+                    // Ключ захвачен другим инстансом, ответа еще нет
+                    inFlight.asMap().remove(scope, mine);
+                    mine.completeExceptionally(new IllegalStateException("Request is in progress"));
+                    return inProgress();
+                }
+                mine.complete(stored);
+                return replay(stored, requestHash);
+            }
+
+            ResponseEntity<?> response = null;
+            if (claim.takenOver) {
+                // Прежний владелец мог зафиксировать операцию и упасть до записи ответа
+                response = recovery.apply(claim.reference).orElse(null);
+                if (response != null) {
+                    log.warn("Idempotency key {} was abandoned after operation {} committed, not executing again", scope, claim.reference);
+                }
+            }
+            if (response == null) {
+                response = action.apply(claim.reference);
+            }
+            int status = response.getStatusCode().value();
+            if (!isFinal(status)) {
+                // Временная ошибка (конфликт, 5xx) - не запоминаем, повтор клиента выполнит операцию заново
+                release(scope, mine, new IllegalStateException("Request failed with status " + status));
+                return response;
+            }
+
+            StoredResponse stored = new StoredResponse(requestHash, status, toJson(response.getBody()));
+            // Операция выполнена: ответ в памяти сохраняется, даже если запись в БД не удастся.
+            // Без записи в БД ключ после claim-timeout перехватят, а recovery найдет операцию по reference
+            mine.complete(stored);
+            try {
+                idempotencyRecordRepository.complete(scope, stored.statusCode, stored.body);
+            } catch (RuntimeException e) {
+                log.warn("Idempotent response for {} not persisted: {}", scope, e.getMessage());
+            }
+            return response;
+        } finally {
+            if (!mine.isDone()) {
+                // Исключение операции, захвата или сериализации ответа - ключ освобождается для повтора
+                release(scope, mine, new IllegalStateException("Request was aborted"));
+            }
+        }
+    }
+
+    /**
+     * Захват ключа в БД. Если ключ уже есть (сохраненный ответ или выполнение на другом инстансе) - возвращаем его.
+     * Брошенный захват того же запроса (без ответа дольше claim-timeout) перехватывается с прежним reference.
+     */
+    private Claim claimOrLoad(String scope, String requestHash) {
+        Instant now = Instant.now();
+        Optional<IdempotencyRecord> record = idempotencyRecordRepository.findById(scope);
+        if (record.isEmpty()) {
+            String reference = UUID.randomUUID().toString();
+            try {
+                idempotencyRecordRepository.claim(scope, requestHash, now, reference);
+                return Claim.claimed(reference, false);
+            } catch (DataIntegrityViolationException e) {
+                record = idempotencyRecordRepository.findById(scope);
+            }
+        }
+        if (record.isPresent() && record.get().getStatusCode() == null
+                && record.get().getRequestHash().equals(requestHash)
+                && record.get().getCreatedAt().isBefore(now.minus(claimTimeout))) {
+            // Захват до появления reference (старые строки) - операцию по нему не найти, выполняем заново
+            String reference = record.get().getReference() != null ? record.get().getReference() : UUID.randomUUID().toString();
+            if (idempotencyRecordRepository.takeOver(scope, reference, now, now.minus(claimTimeout)) == 1) {
+                log.warn("Taking over abandoned idempotency key {} claimed at {}", scope, record.get().getCreatedAt());
+                return Claim.claimed(reference, true);
+            }
+            record = idempotencyRecordRepository.findById(scope);
+        }
+        return Claim.loaded(record
+                .map(r -> new StoredResponse(r.getRequestHash(), r.getStatusCode(), r.getResponseBody()))
+                // Строку удалили (release) между чтениями - считаем ключ занятым, клиент повторит
+                .orElse(new StoredResponse(requestHash, null, null)));
+    }
+
+    // Сначала освобождаем ожидающих в памяти: ошибка удаления строки не должна оставить ключ захваченным здесь
+    private void release(String scope, CompletableFuture<StoredResponse> mine, Exception cause) {
+        inFlight.asMap().remove(scope, mine);
+        mine.completeExceptionally(cause);
+        try {
+            idempotencyRecordRepository.release(scope);
+        } catch (RuntimeException e) {
+            // Строка останется захваченной до claim-timeout
+            log.warn("Idempotency key {} not released: {}", scope, e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String requestHash) {
+        if (!stored.requestHash.equals(requestHash)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                    .body(Map.of("error", HEADER + " was already used with a different request"));
+        }
+        try {
+            return ResponseEntity.status(stored.statusCode)
+                    .header(REPLAYED_HEADER, "true")
+                    .body(stored.body == null ? null : objectMapper.readTree(stored.body));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Stored idempotent response is not valid JSON", e);
+        }
+    }
+
+    private static ResponseEntity<?> inProgress() {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", "A request with this " + HEADER + " is still in progress"));
+    }
+
+    // Успех и ошибки валидации повторяются одинаково; конфликты, лимиты и 5xx - нет
+    private static boolean isFinal(int status) {
+        return status < 500 && status != HttpStatus.CONFLICT.value() && status != HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private String hash(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot hash idempotent request", e);
+        }
+    }
+
+    private String toJson(Object body) {
+        try {
+            return body == null ? null : objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize idempotent response", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.idempotency.cleanup-interval:3600000}")
+    public void deleteExpired() {
+        int deleted = idempotencyRecordRepository.deleteExpired(Instant.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private static final class Claim {
+        // Ключ захвачен этим запросом: reference передается операции
+        private final String reference;
+        // Захват перехвачен у упавшего владельца: операция могла быть уже зафиксирована
+        private final boolean takenOver;
+        // Ключ занят: сохраненный ответ или выполнение на другом инстансе
+        private final StoredResponse existing;
+
+        private Claim(String reference, boolean takenOver, StoredResponse existing) {
+            this.reference = reference;
+            this.takenOver = takenOver;
+            this.existing = existing;
+        }
+
+        private static Claim claimed(String reference, boolean takenOver) {
+            return new Claim(reference, takenOver, null);
+        }
+
+        private static Claim loaded(StoredResponse existing) {
+            return new Claim(null, false, existing);
+        }
+    }
+
+    private static final class StoredResponse {
+        private final String requestHash;
+        private final Integer statusCode;
+        private final String body;
+
+        private StoredResponse(String requestHash, Integer statusCode, String body) {
+            this.requestHash = requestHash;
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardTransactionDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.entity.CardTransaction;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.CardTransactionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Журнал движений по картам (card_transactions).
+ * Записи добавляются пакетным JDBC INSERT в той же транзакции, что и изменение баланса:
+ * либо сохраняются и баланс, и журнал, либо ничего.
+ */
+@Service
+public class LedgerService {
+
+    private static final String INSERT_SQL = "INSERT INTO card_transactions " +
+            "(card_id, user_id, type, amount, balance_after, counterparty_card_id, reference, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_PAGE_SIZE = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CardTransactionRepository cardTransactionRepository;
+
+    @Value("${app.ledger.batch-size:100}")
+    private int batchSize;
+
+    public LedgerService(JdbcTemplate jdbcTemplate, CardTransactionRepository cardTransactionRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cardTransactionRepository = cardTransactionRepository;
+    }
+
+    /**
+     * Запись движений одним пакетом. Вызывается только внутри транзакции изменения баланса.
+     */
+    public void record(List<CardTransaction> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Ledger entries must be written in the balance update transaction");
+        }
+
+        // Точность TIMESTAMP в БД - микросекунды; время пишется в UTC, как его читает Hibernate
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        jdbcTemplate.batchUpdate(INSERT_SQL, entries, batchSize, (ps, entry) -> {
+            entry.setCreatedAt(now);
+            ps.setLong(1, entry.getCardId());
+            ps.setLong(2, entry.getUserId());
+            ps.setString(3, entry.getType());
+            ps.setBigDecimal(4, entry.getAmount());
+            ps.setBigDecimal(5, entry.getBalanceAfter());
+            if (entry.getCounterpartyCardId() != null) {
+                ps.setLong(6, entry.getCounterpartyCardId());
+            } else {
+                ps.setNull(6, Types.BIGINT);
+            }
+            ps.setString(7, entry.getReference());
+            ps.setTimestamp(8, Timestamp.from(now), utc);
+        });
+    }
+
+    /**
+     * Есть ли в журнале записи с данным reference. Записи пишутся в транзакции изменения баланса,
+     * поэтому найденная запись означает, что операция зафиксирована.
+     */
+    public boolean isRecorded(String reference) {
+        return cardTransactionRepository.existsByReference(reference);
+    }
+
+    /**
+     * Страница журнала карты, новые записи первыми
+     */
+    public CursorPage<CardTransactionDTO> getCardTransactions(Long cardId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // Берем на одну запись больше, чтобы понять, есть ли следующая страница
+        Limit fetch = Limit.of(pageSize + 1);
+
+        List<CardTransaction> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = cardTransactionRepository.findLatest(cardId, fetch);
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = cardTransactionRepository.findBefore(cardId, position.createdAt(), position.id(), fetch);
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<CardTransaction> page = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            CardTransaction last = page.get(page.size() - 1);
+            nextCursor = new Cursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(page.stream().map(CardTransactionDTO::new).toList(), nextCursor);
+    }
+
+    // Позиция последней выданной записи: (created_at, id), в base64url
+    private record Cursor(Instant createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int separator = raw.indexOf('|');
+                return new Cursor(Instant.parse(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new ValidationException("Invalid cursor");
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CreateScheduledTransferDTO;
+import com.example.bankcards.dto.ScheduledTransferDTO;
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.ScheduledTransferRepository;
+import com.example.bankcards.util.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Регулярные переводы. Таблица не опрашивается на каждом тике: движок читает из БД только окно
+ * ближайших запусков [loadedUntil, loadedUntil + window) по индексу (status, next_run_at, id) и раскладывает их
+ * по иерархическому колесу таймеров; следующее окно подгружается, когда до конца текущего остается половина.
+ * Сработавшие запуски выполняются пачками в пуле обработчиков тем же путем, что и transferBetweenOwnCards
+ * (applyTransfer через повтор транзакции или через шарды CardCommandPipeline).
+ * Запуск выполняется ровно один раз: next_run_at сдвигается условным UPDATE в транзакции перевода,
+ * поэтому несколько инстансов с одним окном не выполнят перевод дважды.
+ */
+@Service
+public class ScheduledTransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledTransferService.class);
+    private static final int MAX_ERROR_LENGTH = 255;
+
+    private final ScheduledTransferRepository scheduledTransferRepository;
+    private final BankCardRepository bankCardRepository;
+    private final UserService userService;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final CardCommandPipeline cardCommandPipeline;
+    private final Counter firedCounter;
+    private final Counter failedCounter;
+    private final Counter retriedCounter;
+    // Новые и сдвинутые запуски от HTTP-потоков и обработчиков; в колесо их переносит поток движка
+    private final Queue<Run> inbox = new ConcurrentLinkedQueue<>();
+
+    @Value("${app.transfers.scheduled.enabled:true}")
+    private boolean enabled;
+    @Value("${app.transfers.scheduled.tick:1s}")
+    private Duration tick;
+    @Value("${app.transfers.scheduled.wheel-size:64}")
+    private int wheelSize;
+    @Value("${app.transfers.scheduled.window:5m}")
+    private Duration window;
+    @Value("${app.transfers.scheduled.batch-size:100}")
+    private int batchSize;
+    @Value("${app.transfers.scheduled.workers:2}")
+    private int workerCount;
+    @Value("${app.transfers.scheduled.retry-delay:1m}")
+    private Duration retryDelay;
+
+    // Состояние движка - только под монитором tick
+    private HierarchicalTimingWheel<Long> wheel;
+    private final Set<Long> inWheel = new HashSet<>();
+    private Instant loadedUntil;
+
+    private ThreadPoolExecutor executor;
+    private Thread engine;
+    private volatile boolean running = true;
+
+    public ScheduledTransferService(ScheduledTransferRepository scheduledTransferRepository, BankCardRepository bankCardRepository,
+                                    UserService userService, TransactionRetryExecutor transactionRetryExecutor,
+                                    CardCommandPipeline cardCommandPipeline, MeterRegistry meterRegistry) {
+        this.scheduledTransferRepository = scheduledTransferRepository;
+        this.bankCardRepository = bankCardRepository;
+        this.userService = userService;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.cardCommandPipeline = cardCommandPipeline;
+        this.firedCounter = Counter.builder("transfers.scheduled.runs").tag("outcome", "completed").register(meterRegistry);
+        this.failedCounter = Counter.builder("transfers.scheduled.runs").tag("outcome", "failed").register(meterRegistry);
+        this.retriedCounter = Counter.builder("transfers.scheduled.runs").tag("outcome", "retried").register(meterRegistry);
+        Gauge.builder("transfers.scheduled.wheel.size", this, ScheduledTransferService::loadedRuns)
+                .description("Scheduled runs loaded into the timing wheel")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (workerCount > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            // Очередь ограничена: при отставании обработчиков пачки выполняет поток движка
+            executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(workerCount * 4),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "scheduled-transfer-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        if (enabled) {
+            engine = new Thread(this::runEngine, "scheduled-transfer-engine");
+            engine.setDaemon(true);
+            engine.start();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (engine != null) {
+            engine.interrupt();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Создание регулярного перевода между своими картами
+     */
+    public ScheduledTransfer create(Long userId, CreateScheduledTransferDTO request) {
+        if (request.getSourceCardId().equals(request.getTargetCardId())) {
+            throw new ValidationException("Cannot transfer to the same card");
+        }
+        Period period;
+        try {
+            period = Period.parse(request.getPeriod());
+        } catch (DateTimeParseException e) {
+            throw new ValidationException("Period must be an ISO-8601 period, e.g. P1D, P1W, P1M");
+        }
+        if (period.isZero() || period.isNegative()) {
+            throw new ValidationException("Period must be positive");
+        }
+        bankCardRepository.findByUserIdAndId(userId, request.getSourceCardId())
+                .orElseThrow(() -> new CardNotFoundException("Source card not found or access denied"));
+        bankCardRepository.findByUserIdAndId(userId, request.getTargetCardId())
+                .orElseThrow(() -> new CardNotFoundException("Target card not found or access denied"));
+
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        Instant firstRun = request.getStartAt() == null
+                ? now.atZone(ZoneOffset.UTC).plus(period).toInstant()
+                : request.getStartAt().truncatedTo(ChronoUnit.SECONDS);
+        if (firstRun.isBefore(now)) {
+            throw new ValidationException("Start time must not be in the past");
+        }
+
+        ScheduledTransfer transfer = scheduledTransferRepository.save(new ScheduledTransfer(userId, request.getSourceCardId(),
+                request.getTargetCardId(), request.getAmount(), period.toString(), firstRun, now));
+        inbox.add(new Run(transfer.getId(), firstRun));
+        return transfer;
+    }
+
+    public List<ScheduledTransferDTO> getUserScheduledTransfers(Long userId) {
+        return scheduledTransferRepository.findByUserIdOrderById(userId).stream()
+                .map(ScheduledTransferDTO::new)
+                .toList();
+    }
+
+    /**
+     * Отмена; запуск, уже попавший в колесо, будет пропущен по статусу
+     */
+    public void cancel(Long userId, Long scheduledTransferId) {
+        if (scheduledTransferRepository.cancel(scheduledTransferId, userId) == 0) {
+            throw new TransferNotFoundException("Scheduled transfer not found");
+        }
+    }
+
+    private void runEngine() {
+        long tickMillis = tick.toMillis();
+        while (running) {
+            try {
+                tick(Instant.now());
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                // Окно не сдвинуто - будет загружено на следующем тике
+                log.error("Scheduled transfer engine tick failed", e);
+            }
+        }
+    }
+
+    /**
+     * Один тик движка: подгрузка окна, перенос новых запусков в колесо, выполнение наступивших.
+     * Возвращает число запусков, отправленных на выполнение.
+     */
+    synchronized int tick(Instant now) {
+        if (wheel == null) {
+            wheel = new HierarchicalTimingWheel<>(tick.toMillis(), wheelSize, now.toEpochMilli());
+        }
+        List<Long> due = new ArrayList<>();
+        Run run;
+        while ((run = inbox.poll()) != null) {
+            // Запуск за пределами загруженного окна будет прочитан из БД вместе со следующим окном
+            if (loadedUntil != null && run.at().isBefore(loadedUntil)) {
+                addToWheel(run.id(), run.at(), due);
+            }
+        }
+        if (loadedUntil == null) {
+            // Первое окно включает пропущенные за время простоя запуски
+            loadedUntil = loadWindow(Instant.EPOCH, now.plus(window), due);
+        }
+        while (!now.isBefore(loadedUntil.minus(window.dividedBy(2)))) {
+            Instant until = loadedUntil.plus(window);
+            loadWindow(loadedUntil, until, due);
+            // Запуски, просроченные больше чем на окно (сбой инстанса, выполнявшего их), подбираются повторно
+            loadWindow(Instant.EPOCH, now.minus(window), due);
+            loadedUntil = until;
+        }
+        wheel.advance(now.toEpochMilli(), id -> {
+            inWheel.remove(id);
+            due.add(id);
+        });
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<Long> chunk = due.subList(from, Math.min(from + batchSize, due.size()));
+            if (executor == null) {
+                fireChunk(chunk, now);
+            } else {
+                List<Long> ids = List.copyOf(chunk);
+                executor.execute(() -> fireChunk(ids, now));
+            }
+        }
+        return due.size();
+    }
+
+    /**
+     * Сброс колеса: на следующем тике окно будет заново прочитано из БД
+     */
+    synchronized void reset() {
+        wheel = null;
+        inWheel.clear();
+        loadedUntil = null;
+        inbox.clear();
+    }
+
+    // Чтение окна страницами по курсору (next_run_at, id); возвращает конец окна
+    private Instant loadWindow(Instant from, Instant until, List<Long> due) {
+        Instant afterRunAt = from;
+        Long afterId = 0L;
+        while (true) {
+            List<ScheduledTransfer> page = scheduledTransferRepository.findDue(until, afterRunAt, afterId, Limit.of(batchSize));
+            for (ScheduledTransfer transfer : page) {
+                addToWheel(transfer.getId(), transfer.getNextRunAt(), due);
+            }
+            if (page.size() < batchSize) {
+                return until;
+            }
+            ScheduledTransfer last = page.get(page.size() - 1);
+            afterRunAt = last.getNextRunAt();
+            afterId = last.getId();
+        }
+    }
+
+    private void addToWheel(Long id, Instant at, List<Long> due) {
+        if (!inWheel.add(id)) {
+            return;
+        }
+        if (!wheel.add(id, at.toEpochMilli())) {
+            inWheel.remove(id);
+            due.add(id);
+        }
+    }
+
+    private synchronized int loadedRuns() {
+        return wheel == null ? 0 : wheel.size();
+    }
+
+    // Состояние читается одним запросом на пачку; актуальность запуска проверяет условный UPDATE
+    private void fireChunk(List<Long> ids, Instant now) {
+        try {
+            Map<Long, ScheduledTransfer> transfers = scheduledTransferRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(ScheduledTransfer::getId, Function.identity()));
+            for (Long id : ids) {
+                ScheduledTransfer transfer = transfers.get(id);
+                if (transfer != null && ScheduledTransfer.ACTIVE.equals(transfer.getStatus())
+                        && !transfer.getNextRunAt().isAfter(now)) {
+                    fire(transfer, now);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to load scheduled transfers {}: {}", ids, e.getMessage());
+            Instant retryAt = now.plus(retryDelay);
+            ids.forEach(id -> inbox.add(new Run(id, retryAt)));
+        }
+    }
+
+    private void fire(ScheduledTransfer transfer, Instant now) {
+        Instant expectedRunAt = transfer.getNextRunAt();
+        Instant nextRunAt = transfer.nextRunAfter(now);
+        Supplier<Boolean> work = () -> {
+            if (scheduledTransferRepository.advance(transfer.getId(), expectedRunAt, nextRunAt, now) == 0) {
+                return false;
+            }
+            userService.applyTransfer(transfer.getUserId(), transfer.getSourceCardId(), transfer.getTargetCardId(), transfer.getAmount());
+            return true;
+        };
+
+        if (cardCommandPipeline.isEnabled()) {
+            cardCommandPipeline.submit(List.of(transfer.getSourceCardId(), transfer.getTargetCardId()), work)
+                    .whenComplete((applied, error) -> complete(transfer, expectedRunAt, nextRunAt, now, applied,
+                            error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+            return;
+        }
+        try {
+            complete(transfer, expectedRunAt, nextRunAt, now, transactionRetryExecutor.execute("transfer.scheduled", work), null);
+        } catch (RuntimeException e) {
+            complete(transfer, expectedRunAt, nextRunAt, now, null, e);
+        }
+    }
+
+    private void complete(ScheduledTransfer transfer, Instant expectedRunAt, Instant nextRunAt, Instant now,
+                          Boolean applied, Throwable error) {
+        if (error == null) {
+            // false - запуск выполнил другой инстанс, следующий он же и запланирует
+            if (Boolean.TRUE.equals(applied)) {
+                firedCounter.increment();
+                inbox.add(new Run(transfer.getId(), nextRunAt));
+            }
+            return;
+        }
+        if (error instanceof DataAccessException || error instanceof TransactionException
+                || error instanceof RejectedExecutionException) {
+            // Конфликт после всех повторов или сбой БД - тот же запуск повторится через retry-delay
+            log.warn("Scheduled transfer {} postponed: {}", transfer.getId(), error.getMessage());
+            retriedCounter.increment();
+            inbox.add(new Run(transfer.getId(), now.plus(retryDelay)));
+            return;
+        }
+        log.info("Scheduled transfer {} failed: {}", transfer.getId(), error.getMessage());
+        failedCounter.increment();
+        String message = error.getMessage() == null ? error.getClass().getSimpleName() : error.getMessage();
+        try {
+            if (scheduledTransferRepository.recordFailure(transfer.getId(), expectedRunAt, nextRunAt, now,
+                    message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message) > 0) {
+                inbox.add(new Run(transfer.getId(), nextRunAt));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to record scheduled transfer {} failure: {}", transfer.getId(), e.getMessage());
+            inbox.add(new Run(transfer.getId(), now.plus(retryDelay)));
+        }
+    }
+
+    private record Run(Long id, Instant at) {
+    }
+}
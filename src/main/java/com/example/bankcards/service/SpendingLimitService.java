@@ -0,0 +1,403 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardLimitsDTO;
+import com.example.bankcards.entity.CardLimit;
+import com.example.bankcards.exception.SpendingLimitExceededException;
+import com.example.bankcards.repository.CardLimitRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Лимиты расходов карты: на операцию, за последние 24 часа и за последние 30 дней.
+ * Расходы карты считаются в памяти скользящими окнами (часовые и дневные корзины), поэтому проверка лимита
+ * не добавляет запросов в перевод. Проверка и резерв суммы выполняются под блокировкой полосы (stripe) карты,
+ * так что параллельные списания не превысят лимит. Резерв снимается, если транзакция списания откатилась.
+ * Сами расходы хранятся в БД - это записи журнала (TRANSFER_OUT) и холды, записанные в транзакции списания;
+ * из них окна восстанавливаются при старте.
+ * Окна ведутся только для карт с дневным или месячным лимитом. Счетчики локальны для инстанса.
+ */
+@Service
+public class SpendingLimitService {
+
+    private static final Logger log = LoggerFactory.getLogger(SpendingLimitService.class);
+    private static final long HOUR_MILLIS = Duration.ofHours(1).toMillis();
+    private static final long DAY_MILLIS = Duration.ofDays(1).toMillis();
+    static final int DAY_HOURS = 24;
+    static final int MONTH_DAYS = 30;
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    private final CardLimitRepository cardLimitRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Limits defaults;
+    private final Object[] stripes;
+    // Действующие лимиты карт с индивидуальными настройками (остальные - defaults)
+    private final Map<Long, Limits> cardLimits = new ConcurrentHashMap<>();
+    private final Map<Long, SpendingWindow> windows = new ConcurrentHashMap<>();
+    private final Counter rejectedCounter;
+
+    public SpendingLimitService(CardLimitRepository cardLimitRepository, JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.limits.per-transaction:0}") BigDecimal perTransaction,
+                                @Value("${app.limits.daily:0}") BigDecimal daily,
+                                @Value("${app.limits.monthly:0}") BigDecimal monthly,
+                                @Value("${app.limits.stripes:64}") int stripeCount,
+                                MeterRegistry meterRegistry) {
+        this.cardLimitRepository = cardLimitRepository;
+        // Восстановление читает журнал курсором, а не целиком в память
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(1000);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.defaults = new Limits(limitCents(perTransaction), limitCents(daily), limitCents(monthly));
+        this.stripes = new Object[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Object();
+        }
+        this.rejectedCounter = Counter.builder("cards.limits.rejected")
+                .description("Debits rejected by spending limits")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Загрузка лимитов и восстановление окон из журнала и холдов за последние 30 дней
+     */
+    @PostConstruct
+    public void rebuild() {
+        cardLimits.clear();
+        for (CardLimit limit : cardLimitRepository.findAll()) {
+            cardLimits.put(limit.getCardId(), merge(limit));
+        }
+        windows.clear();
+        if (!defaults.windowed() && cardLimits.values().stream().noneMatch(Limits::windowed)) {
+            return;
+        }
+        long started = System.nanoTime();
+        replay(null, Instant.now(), this::replayEntry);
+        log.info("Spending windows rebuilt for {} cards in {} ms", windows.size(),
+                Duration.ofNanos(System.nanoTime() - started).toMillis());
+    }
+
+    /**
+     * Проверка лимитов и резерв суммы списания с карты. Вызывается в транзакции списания до изменения баланса:
+     * при откате транзакции резерв снимается автоматически, при ошибке внутри транзакции (откат к savepoint
+     * в CardCommandPipeline) вызывающий снимает его сам через release.
+     */
+    public Reservation reserve(Long cardId, BigDecimal amount) {
+        return reserve(cardId, amount, Instant.now());
+    }
+
+    Reservation reserve(Long cardId, BigDecimal amount, Instant now) {
+        Limits limits = limitsFor(cardId);
+        long cents = toCents(amount);
+        if (cents > limits.perTransaction()) {
+            rejectedCounter.increment();
+            throw new SpendingLimitExceededException("Per-transaction limit exceeded");
+        }
+        if (!limits.windowed()) {
+            return Reservation.NONE;
+        }
+
+        long nowMillis = now.toEpochMilli();
+        synchronized (stripe(cardId)) {
+            SpendingWindow window = windows.computeIfAbsent(cardId, id -> new SpendingWindow());
+            if (window.daily(nowMillis) + cents > limits.daily()) {
+                rejectedCounter.increment();
+                throw new SpendingLimitExceededException("Daily spending limit exceeded");
+            }
+            if (window.monthly(nowMillis) + cents > limits.monthly()) {
+                rejectedCounter.increment();
+                throw new SpendingLimitExceededException("Monthly spending limit exceeded");
+            }
+            window.add(nowMillis, cents);
+        }
+
+        Reservation reservation = new Reservation(this, cardId, cents, nowMillis);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        reservation.release();
+                    }
+                }
+            });
+        }
+        return reservation;
+    }
+
+    /**
+     * Возврат ранее учтенного расхода (отмена или истечение холда); вызывается после коммита возврата
+     */
+    public void refund(Long cardId, BigDecimal amount, Instant spentAt) {
+        if (amount.signum() <= 0) {
+            return;
+        }
+        subtract(cardId, spentAt.toEpochMilli(), toCents(amount));
+    }
+
+    /**
+     * Действующие лимиты карты и расход в текущих окнах
+     */
+    public CardLimitsDTO getLimits(Long cardId) {
+        Limits limits = limitsFor(cardId);
+        long nowMillis = System.currentTimeMillis();
+        long spentDaily = 0;
+        long spentMonthly = 0;
+        synchronized (stripe(cardId)) {
+            SpendingWindow window = windows.get(cardId);
+            if (window != null) {
+                spentDaily = window.daily(nowMillis);
+                spentMonthly = window.monthly(nowMillis);
+            }
+        }
+        return new CardLimitsDTO(fromCents(limits.perTransaction()), fromCents(limits.daily()), fromCents(limits.monthly()),
+                fromCents(spentDaily), fromCents(spentMonthly));
+    }
+
+    /**
+     * Индивидуальные лимиты карты; все null - карта возвращается к лимитам по умолчанию
+     */
+    public CardLimitsDTO setLimits(Long cardId, CardLimitsDTO request) {
+        boolean wasWindowed = limitsFor(cardId).windowed();
+        Limits updated = null;
+        if (request.getPerTransaction() == null && request.getDaily() == null && request.getMonthly() == null) {
+            cardLimitRepository.deleteById(cardId);
+        } else {
+            CardLimit limit = cardLimitRepository.save(new CardLimit(cardId, request.getPerTransaction(), request.getDaily(),
+                    request.getMonthly(), Instant.now()));
+            updated = merge(limit);
+        }
+        boolean windowed = (updated != null ? updated : defaults).windowed();
+
+        // Для карты раньше не велось окно - расходы восстанавливаются из журнала в новое окно до публикации лимитов:
+        // пока лимиты не опубликованы, reserve не пишет в окно карты, и списание не будет учтено дважды
+        SpendingWindow rebuilt = null;
+        if (windowed && !wasWindowed) {
+            SpendingWindow window = new SpendingWindow();
+            replay(cardId, Instant.now(), (id, amount, createdAt) -> window.add(createdAt.getTime(), toCents(amount)));
+            rebuilt = window;
+        }
+        synchronized (stripe(cardId)) {
+            if (updated != null) {
+                cardLimits.put(cardId, updated);
+            } else {
+                cardLimits.remove(cardId);
+            }
+            if (rebuilt != null) {
+                // Заменяет и окно, оставшееся от резерва, начатого до снятия лимитов
+                windows.put(cardId, rebuilt);
+            } else if (!windowed) {
+                windows.remove(cardId);
+            }
+        }
+        return getLimits(cardId);
+    }
+
+    private Limits limitsFor(Long cardId) {
+        return cardLimits.getOrDefault(cardId, defaults);
+    }
+
+    private Limits merge(CardLimit limit) {
+        return new Limits(
+                limit.getPerTransaction() != null ? limitCents(limit.getPerTransaction()) : defaults.perTransaction(),
+                limit.getDaily() != null ? limitCents(limit.getDaily()) : defaults.daily(),
+                limit.getMonthly() != null ? limitCents(limit.getMonthly()) : defaults.monthly());
+    }
+
+    // Расходы за 30 дней: переводы с карты из журнала и холды (захваченные - на списанную сумму)
+    private void replay(Long onlyCardId, Instant now, ReplaySink sink) {
+        Instant from = now.minus(Duration.ofDays(MONTH_DAYS));
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        String cardFilter = onlyCardId != null ? " AND card_id = ?" : "";
+        Object[] args = onlyCardId != null ? new Object[]{Timestamp.from(from), onlyCardId} : new Object[]{Timestamp.from(from)};
+        readOnlyTransaction.executeWithoutResult(status -> {
+            jdbcTemplate.query("SELECT card_id, amount, created_at FROM card_transactions " +
+                            "WHERE type = 'TRANSFER_OUT' AND created_at >= ?" + cardFilter,
+                    rs -> {
+                        sink.accept(rs.getLong(1), rs.getBigDecimal(2).negate(), rs.getTimestamp(3, utc));
+                    }, args);
+            jdbcTemplate.query("SELECT card_id, CASE WHEN status = 'CAPTURED' THEN captured_amount ELSE amount END, created_at " +
+                            "FROM card_holds WHERE status IN ('AUTHORIZED', 'CAPTURED') AND created_at >= ?" + cardFilter,
+                    rs -> {
+                        sink.accept(rs.getLong(1), rs.getBigDecimal(2), rs.getTimestamp(3, utc));
+                    }, args);
+        });
+    }
+
+    private void replayEntry(long cardId, BigDecimal amount, Timestamp createdAt) {
+        if (!limitsFor(cardId).windowed()) {
+            return;
+        }
+        synchronized (stripe(cardId)) {
+            windows.computeIfAbsent(cardId, id -> new SpendingWindow()).add(createdAt.getTime(), toCents(amount));
+        }
+    }
+
+    private void subtract(Long cardId, long atMillis, long cents) {
+        synchronized (stripe(cardId)) {
+            SpendingWindow window = windows.get(cardId);
+            if (window != null) {
+                window.subtract(atMillis, cents);
+            }
+        }
+    }
+
+    private Object stripe(Long cardId) {
+        return stripes[(int) Math.floorMod(cardId, (long) stripes.length)];
+    }
+
+    // 0 и null - без лимита
+    private static long limitCents(BigDecimal limit) {
+        if (limit == null || limit.signum() == 0) {
+            return UNLIMITED;
+        }
+        return toCents(limit);
+    }
+
+    private static long toCents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return cents == UNLIMITED ? null : BigDecimal.valueOf(cents, 2);
+    }
+
+    @FunctionalInterface
+    private interface ReplaySink {
+        void accept(long cardId, BigDecimal amount, Timestamp createdAt);
+    }
+
+    private record Limits(long perTransaction, long daily, long monthly) {
+
+        boolean windowed() {
+            return daily != UNLIMITED || monthly != UNLIMITED;
+        }
+    }
+
+    /**
+     * Резерв суммы в окнах карты; release идемпотентен
+     */
+    public static final class Reservation {
+
+        public static final Reservation NONE = new Reservation(null, null, 0, 0);
+
+        private final SpendingLimitService service;
+        private final Long cardId;
+        private final long cents;
+        private final long atMillis;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(SpendingLimitService service, Long cardId, long cents, long atMillis) {
+            this.service = service;
+            this.cardId = cardId;
+            this.cents = cents;
+            this.atMillis = atMillis;
+        }
+
+        public void release() {
+            if (service != null && released.compareAndSet(false, true)) {
+                service.subtract(cardId, atMillis, cents);
+            }
+        }
+    }
+
+    /**
+     * Скользящие окна расходов карты в копейках: 24 часовые и 30 дневных корзин.
+     * Корзина хранит номер своего часа (дня); устаревшая корзина обнуляется при записи и не учитывается в сумме.
+     * Доступ - под блокировкой полосы карты.
+     */
+    static final class SpendingWindow {
+
+        private final long[] hourKeys = new long[DAY_HOURS];
+        private final long[] hourAmounts = new long[DAY_HOURS];
+        private final long[] dayKeys = new long[MONTH_DAYS];
+        private final long[] dayAmounts = new long[MONTH_DAYS];
+
+        SpendingWindow() {
+            Arrays.fill(hourKeys, Long.MIN_VALUE);
+            Arrays.fill(dayKeys, Long.MIN_VALUE);
+        }
+
+        void add(long atMillis, long cents) {
+            long hour = Math.floorDiv(atMillis, HOUR_MILLIS);
+            int hourSlot = (int) Math.floorMod(hour, (long) DAY_HOURS);
+            // Запись старше той, что уже занимает корзину, вне окна (возможно при восстановлении)
+            if (hour > hourKeys[hourSlot]) {
+                hourKeys[hourSlot] = hour;
+                hourAmounts[hourSlot] = 0;
+            }
+            if (hour == hourKeys[hourSlot]) {
+                hourAmounts[hourSlot] += cents;
+            }
+            long day = Math.floorDiv(atMillis, DAY_MILLIS);
+            int daySlot = (int) Math.floorMod(day, (long) MONTH_DAYS);
+            if (day > dayKeys[daySlot]) {
+                dayKeys[daySlot] = day;
+                dayAmounts[daySlot] = 0;
+            }
+            if (day == dayKeys[daySlot]) {
+                dayAmounts[daySlot] += cents;
+            }
+        }
+
+        void subtract(long atMillis, long cents) {
+            long hour = Math.floorDiv(atMillis, HOUR_MILLIS);
+            int hourSlot = (int) Math.floorMod(hour, (long) DAY_HOURS);
+            if (hourKeys[hourSlot] == hour) {
+                hourAmounts[hourSlot] = Math.max(0, hourAmounts[hourSlot] - cents);
+            }
+            long day = Math.floorDiv(atMillis, DAY_MILLIS);
+            int daySlot = (int) Math.floorMod(day, (long) MONTH_DAYS);
+            if (dayKeys[daySlot] == day) {
+                dayAmounts[daySlot] = Math.max(0, dayAmounts[daySlot] - cents);
+            }
+        }
+
+        // Последние 24 часа (с точностью до часа)
+        long daily(long nowMillis) {
+            long nowHour = Math.floorDiv(nowMillis, HOUR_MILLIS);
+            long sum = 0;
+            for (int i = 0; i < DAY_HOURS; i++) {
+                if (hourKeys[i] > nowHour - DAY_HOURS && hourKeys[i] <= nowHour) {
+                    sum += hourAmounts[i];
+                }
+            }
+            return sum;
+        }
+
+        // Последние 30 дней (с точностью до дня)
+        long monthly(long nowMillis) {
+            long nowDay = Math.floorDiv(nowMillis, DAY_MILLIS);
+            long sum = 0;
+            for (int i = 0; i < MONTH_DAYS; i++) {
+                if (dayKeys[i] > nowDay - MONTH_DAYS && dayKeys[i] <= nowDay) {
+                    sum += dayAmounts[i];
+                }
+            }
+            return sum;
+        }
+    }
+}
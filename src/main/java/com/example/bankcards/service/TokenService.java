@@ -0,0 +1,96 @@
+package com.example.bankcards.service;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.bankcards.dto.TokenPairDTO;
+import com.example.bankcards.exception.InvalidTokenException;
+import com.example.bankcards.security.JWTCore;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.RevokedTokenStore;
+import com.example.bankcards.security.TokenEpochRegistry;
+import com.example.bankcards.security.UsersDetailsImpl;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TokenService {
+
+    private final JWTCore jwtCore;
+    private final RevokedTokenStore revokedTokenStore;
+    private final PrincipalCache principalCache;
+    private final UserDetailsService userDetailsService;
+    private final TokenEpochRegistry tokenEpochRegistry;
+
+    public TokenService(JWTCore jwtCore, RevokedTokenStore revokedTokenStore, PrincipalCache principalCache, UserDetailsService userDetailsService, TokenEpochRegistry tokenEpochRegistry) {
+        this.jwtCore = jwtCore;
+        this.revokedTokenStore = revokedTokenStore;
+        this.principalCache = principalCache;
+        this.userDetailsService = userDetailsService;
+        this.tokenEpochRegistry = tokenEpochRegistry;
+    }
+
+    /**
+     * Выдача пары access + refresh токенов
+     */
+    public TokenPairDTO issueTokens(UsersDetailsImpl usersDetails) {
+        return new TokenPairDTO(
+                jwtCore.generateToken(usersDetails),
+                jwtCore.generateRefreshToken(usersDetails),
+                jwtCore.getLifeTime() / 1000L
+        );
+    }
+
+    /**
+     * Обмен refresh-токена на новую пару. Старый refresh-токен отзывается (ротация),
+     * поэтому повторно использовать его нельзя.
+     */
+    public TokenPairDTO refresh(String refreshToken) {
+        DecodedJWT jwt = verifyRefreshToken(refreshToken);
+
+        UsersDetailsImpl usersDetails;
+        try {
+            // Берем актуальные роль и версию пользователя, а не значения из токена
+            usersDetails = principalCache.get(jwt.getClaim(JWTCore.CLAIM_USERNAME).asString(),
+                    name -> (UsersDetailsImpl) userDetailsService.loadUserByUsername(name));
+        } catch (UsernameNotFoundException e) {
+            throw new InvalidTokenException("Refresh token is no longer valid");
+        }
+
+        Long userId = jwt.getClaim(JWTCore.CLAIM_USER_ID).asLong();
+        Integer version = jwt.getClaim(JWTCore.CLAIM_USER_VERSION).asInt();
+        if (userId == null || version == null || !userId.equals(usersDetails.getId())
+                || version != usersDetails.getTokenVersion() || tokenEpochRegistry.isRevoked(userId, version)) {
+            throw new InvalidTokenException("Refresh token is no longer valid");
+        }
+
+        if (!revokedTokenStore.revoke(jwt.getId(), jwt.getExpiresAtAsInstant())) {
+            throw new InvalidTokenException("Refresh token has already been used");
+        }
+        return issueTokens(usersDetails);
+    }
+
+    /**
+     * Выход: refresh-токен отзывается и больше не может быть обменян
+     */
+    public void logout(String refreshToken) {
+        DecodedJWT jwt = verifyRefreshToken(refreshToken);
+        revokedTokenStore.revoke(jwt.getId(), jwt.getExpiresAtAsInstant());
+    }
+
+    private DecodedJWT verifyRefreshToken(String refreshToken) {
+        DecodedJWT jwt;
+        try {
+            jwt = jwtCore.validateToken(refreshToken);
+        } catch (JWTVerificationException e) {
+            throw new InvalidTokenException("Invalid refresh token");
+        }
+        if (!jwtCore.isRefreshToken(jwt) || jwt.getId() == null) {
+            throw new InvalidTokenException("Invalid refresh token");
+        }
+        if (revokedTokenStore.isRevoked(jwt.getId(), jwt.getExpiresAtAsInstant())) {
+            throw new InvalidTokenException("Refresh token has been revoked");
+        }
+        return jwt;
+    }
+}
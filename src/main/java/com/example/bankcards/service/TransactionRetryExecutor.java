@@ -0,0 +1,88 @@
+package com.example.bankcards.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Выполнение операции в отдельной транзакции с повтором при конфликтах конкурентного доступа
+ * (deadlock, таймаут блокировки, ошибка сериализации). Между попытками - экспоненциальная
+ * пауза со случайным разбросом, чтобы конфликтующие транзакции не повторялись синхронно.
+ * Метрики по операции: transactions.conflicts (каждый конфликт), transactions.retries
+ * (выполненные повторы), transactions.retries.exhausted (попытки закончились).
+ */
+@Component
+public class TransactionRetryExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionRetryExecutor.class);
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.transactions.retry.max-attempts:3}")
+    private int maxAttempts;
+    @Value("${app.transactions.retry.backoff:20ms}")
+    private Duration backoff;
+    @Value("${app.transactions.retry.max-backoff:200ms}")
+    private Duration maxBackoff;
+
+    public TransactionRetryExecutor(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> T execute(String operation, Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (ConcurrencyFailureException e) {
+                counter("transactions.conflicts", operation, e).increment();
+                if (attempt >= maxAttempts) {
+                    counter("transactions.retries.exhausted", operation, e).increment();
+                    log.warn("{} failed after {} attempts on {}: {}", operation, attempt, conflictTarget(e), e.getMessage());
+                    throw e;
+                }
+                // Идентификатор сущности в логе показывает, какие карты "горячие"
+                log.info("{} conflict on {} (attempt {}), retrying", operation, conflictTarget(e), attempt);
+                counter("transactions.retries", operation, e).increment();
+                sleep(attempt);
+            }
+        }
+    }
+
+    private Counter counter(String name, String operation, ConcurrencyFailureException e) {
+        return Counter.builder(name)
+                .tag("operation", operation)
+                .tag("type", e instanceof OptimisticLockingFailureException ? "optimistic" : "lock")
+                .register(meterRegistry);
+    }
+
+    private static String conflictTarget(ConcurrencyFailureException e) {
+        if (e instanceof ObjectOptimisticLockingFailureException optimistic && optimistic.getIdentifier() != null) {
+            return optimistic.getPersistentClassName() + "#" + optimistic.getIdentifier();
+        }
+        return "locked row";
+    }
+
+    private void sleep(int attempt) {
+        long ceiling = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to retry", e);
+        }
+    }
+}
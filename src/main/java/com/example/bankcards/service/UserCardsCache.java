@@ -0,0 +1,73 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.repository.BankCardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Карты пользователя по user id для GET /api/users/cards и /cards/active (read-through, размер и TTL ограничены).
+ * Запись сбрасывается при каждом изменении карт пользователя (статус, баланс, холды, создание и удаление карт):
+ * внутри транзакции - после ее коммита, иначе сразу. Загрузка и сброс одного ключа не пересекаются
+ * (Caffeine выполняет их под блокировкой ключа), поэтому список, прочитанный до коммита, не переживает сброс.
+ * TTL - страховка для изменений в обход сервисов (SQL вручную, другой инстанс).
+ * Метрики: cache.gets{cache=user-cards,result=hit|miss} и cards.list.cache.hit-ratio.
+ */
+@Component
+public class UserCardsCache {
+
+    private final BankCardRepository bankCardRepository;
+    private final Cache<Long, List<BankCards>> cards;
+
+    public UserCardsCache(BankCardRepository bankCardRepository,
+                          @Value("${app.cards.list-cache.max-users:100000}") long maxUsers,
+                          @Value("${app.cards.list-cache.ttl:5m}") Duration ttl,
+                          MeterRegistry meterRegistry) {
+        this.bankCardRepository = bankCardRepository;
+        this.cards = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cards, "user-cards");
+        Gauge.builder("cards.list.cache.hit-ratio", cards, cache -> cache.stats().hitRate())
+                .description("Share of card list requests served from the per-user cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Все карты пользователя (неизменяемый список)
+     */
+    public List<BankCards> getCards(Long userId) {
+        return cards.get(userId, id -> List.copyOf(bankCardRepository.findByUserId(id)));
+    }
+
+    /**
+     * Сброс карт пользователя; в транзакции - после коммита
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cards.invalidate(userId);
+                }
+            });
+        } else {
+            cards.invalidate(userId);
+        }
+    }
+}
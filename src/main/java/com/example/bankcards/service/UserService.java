@@ -1,13 +1,29 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.dto.BatchTransferDTO;
+import com.example.bankcards.dto.BatchTransferResultDTO;
+import com.example.bankcards.dto.CardLimitsDTO;
+import com.example.bankcards.dto.CardTransactionDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferLegResultDTO;
 import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardTransaction;
 import com.example.bankcards.entity.Users;
 import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.FraudSuspectedException;
 import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.SpendingLimitExceededException;
 import com.example.bankcards.exception.UserNotFoundException;
+import com.example.bankcards.fraud.FraudRuleEngine;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.UsersDetailsImpl;
+import com.example.bankcards.util.IdCursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.Authentication;
@@ -15,26 +31,57 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class UserService {
 
 
+    private static final String LOCKING_CONDITIONAL = "conditional";
+
     private final BankCardRepository bankCardRepository;
     private final UsersRepository userRepository;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final LedgerService ledgerService;
+    private final CardCommandPipeline cardCommandPipeline;
+    private final CardNumberResolver cardNumberResolver;
+    private final SpendingLimitService spendingLimitService;
+    private final FraudRuleEngine fraudRuleEngine;
+    private final UserCardsCache userCardsCache;
+    private final BalanceSummaryService balanceSummaryService;
+
+    @Value("${app.transfers.locking:pessimistic}")
+    private String lockingMode;
+    @Value("${app.transfers.lock-timeout:2s}")
+    private Duration lockTimeout;
 
-    public UserService(BankCardRepository bankCardRepository, UsersRepository userRepository) {
+    public UserService(BankCardRepository bankCardRepository, UsersRepository userRepository, TransactionRetryExecutor transactionRetryExecutor, LedgerService ledgerService, CardCommandPipeline cardCommandPipeline, CardNumberResolver cardNumberResolver, SpendingLimitService spendingLimitService, FraudRuleEngine fraudRuleEngine, UserCardsCache userCardsCache, BalanceSummaryService balanceSummaryService) {
         this.bankCardRepository = bankCardRepository;
         this.userRepository = userRepository;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.ledgerService = ledgerService;
+        this.cardCommandPipeline = cardCommandPipeline;
+        this.cardNumberResolver = cardNumberResolver;
+        this.spendingLimitService = spendingLimitService;
+        this.fraudRuleEngine = fraudRuleEngine;
+        this.userCardsCache = userCardsCache;
+        this.balanceSummaryService = balanceSummaryService;
     }
 
     /**
-     * Получение всех карт пользователя
+     * Получение всех карт пользователя (из кэша UserCardsCache)
      */
     public List<BankCards> getAllUserCards(Long userId) {
-        return bankCardRepository.findByUserId(userId);
+        return userCardsCache.getCards(userId);
     }
 
     /**
@@ -44,70 +91,450 @@ public class UserService {
         return bankCardRepository.findByUserId(userId, pageable);
     }
 
+    /**
+     * Keyset-страница карт пользователя по id; total - только по запросу (отдельный COUNT)
+     */
+    public CursorPage<BankCards> getUserCardsPage(Long userId, String cursor, int limit, boolean includeTotal) {
+        int pageSize = IdCursor.pageSize(limit);
+        List<BankCards> rows = bankCardRepository.findByUserIdAfter(userId, IdCursor.decode(cursor), Limit.of(pageSize + 1));
+        Long total = includeTotal ? bankCardRepository.countByUserId(userId) : null;
+        return IdCursor.page(rows, pageSize, BankCards::getId, total);
+    }
+
     /**
      * Получение активных карт пользователя
      */
     public List<BankCards> getActiveUserCards(Long userId) {
-        return bankCardRepository.findByUserIdAndStatus(userId, "ACTIVE");
+        // Тот же закэшированный список, что и для всех карт - отдельного запроса нет
+        return userCardsCache.getCards(userId).stream()
+                .filter(card -> "ACTIVE".equals(card.getStatus()))
+                .toList();
     }
 
     /**
      * Блокировка своей карты
      */
     public BankCards blockOwnCard(Long userId, Long cardId) {
-        BankCards card = bankCardRepository.findByUserIdAndId(userId, cardId)
-                .orElseThrow(() -> new CardNotFoundException("Card not found or access denied"));
+        BankCards blocked = transactionRetryExecutor.execute("card.block-own", () -> {
+            BankCards card = bankCardRepository.findByUserIdAndId(userId, cardId)
+                    .orElseThrow(() -> new CardNotFoundException("Card not found or access denied"));
 
-        if (!card.getUserId().equals(userId)) {
-            throw new RuntimeException("Access denied: This is not your card");
-        }
+            if (!card.getUserId().equals(userId)) {
+                throw new RuntimeException("Access denied: This is not your card");
+            }
 
-        card.setStatus("BLOCKED");
+            card.setStatus("BLOCKED");
 
-        return bankCardRepository.save(card);
+            return bankCardRepository.save(card);
+        });
+        userCardsCache.invalidate(userId);
+        fraudRuleEngine.recordStatusChange(userId, cardId, blocked.getStatus());
+        return blocked;
     }
 
     /**
-     * Перевод средств между своими картами
+     * Перевод средств между своими картами.
+     * Каждая попытка - отдельная транзакция; при deadlock/таймауте блокировки перевод повторяется.
+     * Режим app.transfers.locking:
+     * pessimistic - обе карты блокируются одним запросом в порядке id, проверки выполняются в Java;
+     * conditional - условные UPDATE, проверка статуса и баланса выполняется самой БД.
+     * При включенном app.transfers.pipeline перевод выполняется шардом карты (см. submitTransfer).
      */
     public void transferBetweenOwnCards(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount) {
+        transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Перевод между своими картами с заданным reference записей журнала
+     * (по нему IdempotencyService проверяет, зафиксирован ли перевод)
+     */
+    public void transferBetweenOwnCards(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, String reference) {
+        if (cardCommandPipeline.isEnabled()) {
+            CardCommandPipeline.await(submitTransfer(userId, sourceCardId, targetCardId, amount, reference));
+            return;
+        }
         if (sourceCardId.equals(targetCardId)) {
             throw new RuntimeException("Cannot transfer to the same card");
         }
+        fraudRuleEngine.screenTransfer(userId, sourceCardId, targetCardId, amount);
 
-        BankCards sourceCard = bankCardRepository.findByUserIdAndId(userId, sourceCardId)
-                .orElseThrow(() -> new CardNotFoundException("Source card not found or access denied"));
+        transactionRetryExecutor.execute("transfer", () -> {
+            applyTransfer(userId, sourceCardId, targetCardId, amount, reference);
+            return null;
+        });
+    }
 
-        BankCards targetCard = bankCardRepository.findByUserIdAndId(userId, targetCardId)
-                .orElseThrow(() -> new CardNotFoundException("Source card not found or access denied"));
+    /**
+     * Асинхронный перевод через однопоточный шард карты с меньшим id: переводы между одной парой карт
+     * выполняются строго по порядку и фиксируются групповым коммитом вместе с соседними командами шарда.
+     * Шард блокирует карты команды до ее выполнения, поэтому принадлежность карт проверяется заранее.
+     */
+    public CompletableFuture<Void> submitTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount) {
+        return submitTransfer(userId, sourceCardId, targetCardId, amount, UUID.randomUUID().toString());
+    }
 
-        if (!sourceCard.getStatus().equals("ACTIVE")) {
+    private CompletableFuture<Void> submitTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount,
+                                                   String reference) {
+        if (sourceCardId.equals(targetCardId)) {
+            return CompletableFuture.failedFuture(new RuntimeException("Cannot transfer to the same card"));
+        }
+        if (!ownsCard(userId, sourceCardId)) {
+            return CompletableFuture.failedFuture(new CardNotFoundException("Source card not found or access denied"));
+        }
+        if (!ownsCard(userId, targetCardId)) {
+            return CompletableFuture.failedFuture(new CardNotFoundException("Target card not found or access denied"));
+        }
+        try {
+            fraudRuleEngine.screenTransfer(userId, sourceCardId, targetCardId, amount);
+        } catch (FraudSuspectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return cardCommandPipeline.submit(List.of(sourceCardId, targetCardId), () -> {
+            applyTransfer(userId, sourceCardId, targetCardId, amount, reference);
+            return null;
+        });
+    }
+
+    /**
+     * Перевод в текущей транзакции (вызывающий отвечает за транзакцию и повторы)
+     */
+    public void applyTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount) {
+        applyTransfer(userId, sourceCardId, targetCardId, amount, UUID.randomUUID().toString());
+    }
+
+    private void applyTransfer(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, String reference) {
+        if (LOCKING_CONDITIONAL.equalsIgnoreCase(lockingMode)) {
+            transferWithConditionalUpdates(userId, sourceCardId, targetCardId, amount, reference);
+        } else {
+            transferWithRowLocks(userId, sourceCardId, targetCardId, amount, reference);
+        }
+        userCardsCache.invalidate(userId);
+    }
+
+    /**
+     * Перевод на карту другого пользователя по номеру карты.
+     * Номер разрешается в id через кэш CardNumberResolver, дальше - как перевод между своими картами:
+     * обе карты блокируются одним запросом в порядке id, перевод пишется в журнал обеих карт.
+     */
+    public void transferToCardNumber(Long userId, Long sourceCardId, String targetCardNumber, BigDecimal amount) {
+        transferToCardNumber(userId, sourceCardId, targetCardNumber, amount, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Перевод по номеру карты с заданным reference записей журнала
+     */
+    public void transferToCardNumber(Long userId, Long sourceCardId, String targetCardNumber, BigDecimal amount, String reference) {
+        Long targetCardId = cardNumberResolver.resolve(targetCardNumber)
+                .orElseThrow(() -> new CardNotFoundException("Recipient card not found"));
+        if (sourceCardId.equals(targetCardId)) {
+            throw new RuntimeException("Cannot transfer to the same card");
+        }
+        fraudRuleEngine.screenTransfer(userId, sourceCardId, targetCardId, amount);
+
+        if (cardCommandPipeline.isEnabled()) {
+            if (!ownsCard(userId, sourceCardId)) {
+                throw new CardNotFoundException("Source card not found or access denied");
+            }
+            CardCommandPipeline.await(cardCommandPipeline.submit(List.of(sourceCardId, targetCardId), () -> {
+                transferToOtherUserWithRowLocks(userId, sourceCardId, targetCardId, targetCardNumber, amount, reference);
+                return null;
+            }));
+            return;
+        }
+        transactionRetryExecutor.execute("transfer.p2p", () -> {
+            transferToOtherUserWithRowLocks(userId, sourceCardId, targetCardId, targetCardNumber, amount, reference);
+            return null;
+        });
+    }
+
+    private void transferToOtherUserWithRowLocks(Long userId, Long sourceCardId, Long targetCardId, String targetCardNumber,
+                                                 BigDecimal amount, String reference) {
+        Map<Long, BankCards> locked = new HashMap<>();
+        // Карта-источник блокируется только своя, карта получателя - по id
+        for (BankCards card : bankCardRepository.lockSourceAndRecipientInIdOrder(userId, sourceCardId, targetCardId, lockTimeout)) {
+            locked.put(card.getId(), card);
+        }
+
+        BankCards sourceCard = locked.get(sourceCardId);
+        if (sourceCard == null || !userId.equals(sourceCard.getUserId())) {
+            throw new CardNotFoundException("Source card not found or access denied");
+        }
+        BankCards targetCard = locked.get(targetCardId);
+        if (targetCard == null) {
+            // Карта удалена после того, как ее id попал в кэш
+            cardNumberResolver.invalidate(targetCardNumber);
+            throw new CardNotFoundException("Recipient card not found");
+        }
+
+        if (!"ACTIVE".equals(sourceCard.getStatus())) {
             throw new RuntimeException("Source card is not active");
         }
+        if (!"ACTIVE".equals(targetCard.getStatus())) {
+            throw new RuntimeException("Recipient card is not active");
+        }
+        if (sourceCard.getBalance().compareTo(amount) < 0) {
+            throw new InsufficientFundsException("Insufficient funds on source card");
+        }
 
-        if (!targetCard.getStatus().equals("ACTIVE")) {
-            throw new RuntimeException("Target card is not active");
+        withinSpendingLimits(sourceCardId, amount, () -> {
+            sourceCard.setBalance(sourceCard.getBalance().subtract(amount));
+            targetCard.setBalance(targetCard.getBalance().add(amount));
+            ledgerService.record(transferEntries(userId, sourceCardId, targetCard.getUserId(), targetCardId, amount,
+                    sourceCard.getBalance(), targetCard.getBalance(), reference));
+            balanceSummaryService.transfer(userId, targetCard.getUserId(), amount);
+        });
+        userCardsCache.invalidate(userId);
+        userCardsCache.invalidate(targetCard.getUserId());
+    }
+
+    /**
+     * Пакет переводов между своими картами в одной транзакции.
+     * Все свои карты пакета блокируются одним запросом с фильтром по владельцу, переводы
+     * применяются по порядку к балансам в памяти, затем итоговый баланс записывается один раз на карту.
+     */
+    public BatchTransferResultDTO transferBatch(Long userId, List<TransferDTO> transfers, BatchTransferDTO.Mode mode) {
+        TreeSet<Long> cardIds = new TreeSet<>();
+        for (TransferDTO transfer : transfers) {
+            cardIds.add(transfer.getSourceCardId());
+            cardIds.add(transfer.getTargetCardId());
+        }
+        // Антифрод - до транзакции, чтобы повтор транзакции не учитывал переводы повторно; пакет - одно событие
+        Map<Integer, String> blockedLegs = fraudRuleEngine.screenBatch(userId, transfers.stream()
+                .map(transfer -> new FraudRuleEngine.BatchLeg(transfer.getSourceCardId(), transfer.getTargetCardId(), transfer.getAmount()))
+                .toList());
+        if (cardCommandPipeline.isEnabled()) {
+            // Шард блокирует карты команды заранее - передаем ему только свои
+            Set<Long> ownedCardIds = new TreeSet<>(cardIds);
+            ownedCardIds.removeIf(cardId -> !ownsCard(userId, cardId));
+            if (!ownedCardIds.isEmpty()) {
+                return CardCommandPipeline.await(cardCommandPipeline.submit(ownedCardIds,
+                        () -> applyBatch(userId, transfers, mode, cardIds, blockedLegs)));
+            }
+        }
+        return transactionRetryExecutor.execute("transfer.batch", () -> applyBatch(userId, transfers, mode, cardIds, blockedLegs));
+    }
+
+    private BatchTransferResultDTO applyBatch(Long userId, List<TransferDTO> transfers, BatchTransferDTO.Mode mode, Set<Long> cardIds,
+                                              Map<Integer, String> blockedLegs) {
+        Map<Long, BankCards> cards = new HashMap<>();
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        // Блокируются только карты пользователя; переводы с чужими id отклоняются при проверке как не найденные
+        for (BankCards card : bankCardRepository.lockOwnedInIdOrder(userId, cardIds, lockTimeout)) {
+            cards.put(card.getId(), card);
+            balances.put(card.getId(), card.getBalance());
+        }
+
+        List<SpendingLimitService.Reservation> reservations = new ArrayList<>();
+        try {
+            return applyBatchLegs(userId, transfers, mode, cards, balances, blockedLegs, reservations);
+        } catch (RuntimeException e) {
+            reservations.forEach(SpendingLimitService.Reservation::release);
+            throw e;
+        }
+    }
+
+    private BatchTransferResultDTO applyBatchLegs(Long userId, List<TransferDTO> transfers, BatchTransferDTO.Mode mode,
+                                                  Map<Long, BankCards> cards, Map<Long, BigDecimal> balances,
+                                                  Map<Integer, String> blockedLegs, List<SpendingLimitService.Reservation> reservations) {
+        List<TransferLegResultDTO> results = new ArrayList<>();
+        List<CardTransaction> ledgerEntries = new ArrayList<>();
+        boolean anyFailed = false;
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferDTO transfer = transfers.get(i);
+            String error = blockedLegs.containsKey(i) ? blockedLegs.get(i) : validateLeg(transfer, cards, balances);
+            if (error == null) {
+                try {
+                    reservations.add(spendingLimitService.reserve(transfer.getSourceCardId(), transfer.getAmount()));
+                } catch (SpendingLimitExceededException e) {
+                    error = e.getMessage();
+                }
+            }
+            if (error == null) {
+                balances.merge(transfer.getSourceCardId(), transfer.getAmount(), BigDecimal::subtract);
+                balances.merge(transfer.getTargetCardId(), transfer.getAmount(), BigDecimal::add);
+                ledgerEntries.addAll(transferEntries(userId, transfer.getSourceCardId(), transfer.getTargetCardId(),
+                        transfer.getAmount(), balances.get(transfer.getSourceCardId()), balances.get(transfer.getTargetCardId()),
+                        UUID.randomUUID().toString()));
+                results.add(new TransferLegResultDTO(i, transfer, TransferLegResultDTO.COMPLETED, null));
+            } else {
+                anyFailed = true;
+                results.add(new TransferLegResultDTO(i, transfer, TransferLegResultDTO.FAILED, error));
+            }
         }
 
+        if (anyFailed && mode == BatchTransferDTO.Mode.ALL_OR_NOTHING) {
+            // Балансы не меняются; корректные переводы помечаются как невыполненные
+            reservations.forEach(SpendingLimitService.Reservation::release);
+            results.stream()
+                    .filter(result -> TransferLegResultDTO.COMPLETED.equals(result.getStatus()))
+                    .forEach(result -> result.setStatus(TransferLegResultDTO.NOT_APPLIED));
+            return new BatchTransferResultDTO(mode, false, results);
+        }
+
+        // Карты под блокировкой - изменения уходят одним пакетом UPDATE при коммите
+        balances.forEach((cardId, balance) -> {
+            BankCards card = cards.get(cardId);
+            if (card.getBalance().compareTo(balance) != 0) {
+                card.setBalance(balance);
+            }
+        });
+        ledgerService.record(ledgerEntries);
+        userCardsCache.invalidate(userId);
+        return new BatchTransferResultDTO(mode, true, results);
+    }
+
+    private static String validateLeg(TransferDTO transfer, Map<Long, BankCards> cards, Map<Long, BigDecimal> balances) {
+        if (transfer.getSourceCardId().equals(transfer.getTargetCardId())) {
+            return "Cannot transfer to the same card";
+        }
+        BankCards sourceCard = cards.get(transfer.getSourceCardId());
+        if (sourceCard == null) {
+            return "Source card not found or access denied";
+        }
+        BankCards targetCard = cards.get(transfer.getTargetCardId());
+        if (targetCard == null) {
+            return "Target card not found or access denied";
+        }
+        if (!"ACTIVE".equals(sourceCard.getStatus())) {
+            return "Source card is not active";
+        }
+        if (!"ACTIVE".equals(targetCard.getStatus())) {
+            return "Target card is not active";
+        }
+        if (balances.get(sourceCard.getId()).compareTo(transfer.getAmount()) < 0) {
+            return "Insufficient funds on source card";
+        }
+        return null;
+    }
+
+    private void transferWithRowLocks(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, String reference) {
+        Map<Long, BankCards> locked = new HashMap<>();
+        // Владелец проверяется в самом запросе: чужие карты не блокируются
+        for (BankCards card : bankCardRepository.lockOwnedInIdOrder(userId, List.of(sourceCardId, targetCardId), lockTimeout)) {
+            locked.put(card.getId(), card);
+        }
+
+        BankCards sourceCard = locked.get(sourceCardId);
+        if (sourceCard == null || !userId.equals(sourceCard.getUserId())) {
+            throw new CardNotFoundException("Source card not found or access denied");
+        }
+        BankCards targetCard = locked.get(targetCardId);
+        if (targetCard == null || !userId.equals(targetCard.getUserId())) {
+            throw new CardNotFoundException("Target card not found or access denied");
+        }
+
+        if (!"ACTIVE".equals(sourceCard.getStatus())) {
+            throw new RuntimeException("Source card is not active");
+        }
+        if (!"ACTIVE".equals(targetCard.getStatus())) {
+            throw new RuntimeException("Target card is not active");
+        }
         if (sourceCard.getBalance().compareTo(amount) < 0) {
             throw new InsufficientFundsException("Insufficient funds on source card");
         }
 
-        sourceCard.setBalance(sourceCard.getBalance().subtract(amount));
-        targetCard.setBalance(targetCard.getBalance().add(amount));
+        // Карты под блокировкой и управляются JPA - изменения записываются при коммите
+        withinSpendingLimits(sourceCardId, amount, () -> {
+            sourceCard.setBalance(sourceCard.getBalance().subtract(amount));
+            targetCard.setBalance(targetCard.getBalance().add(amount));
+            ledgerService.record(transferEntries(userId, sourceCardId, targetCardId, amount,
+                    sourceCard.getBalance(), targetCard.getBalance(), reference));
+        });
+    }
 
-        bankCardRepository.save(sourceCard);
-        bankCardRepository.save(targetCard);
+    private void transferWithConditionalUpdates(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount,
+                                                String reference) {
+        // Лимит проверяется до списания: его превышение не должно зависеть от баланса
+        withinSpendingLimits(sourceCardId, amount, () -> debitAndCredit(userId, sourceCardId, targetCardId, amount, reference));
+    }
+
+    private void debitAndCredit(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount, String reference) {
+        if (bankCardRepository.debitIfActive(sourceCardId, userId, amount) == 0) {
+            BankCards sourceCard = bankCardRepository.findByUserIdAndId(userId, sourceCardId)
+                    .orElseThrow(() -> new CardNotFoundException("Source card not found or access denied"));
+            if (!"ACTIVE".equals(sourceCard.getStatus())) {
+                throw new RuntimeException("Source card is not active");
+            }
+            throw new InsufficientFundsException("Insufficient funds on source card");
+        }
+
+        // Исключение откатывает уже выполненное списание
+        if (bankCardRepository.creditIfActive(targetCardId, userId, amount) == 0) {
+            BankCards targetCard = bankCardRepository.findByUserIdAndId(userId, targetCardId)
+                    .orElseThrow(() -> new CardNotFoundException("Target card not found or access denied"));
+            if (!"ACTIVE".equals(targetCard.getStatus())) {
+                throw new RuntimeException("Target card is not active");
+            }
+            throw new IllegalStateException("Target card was not credited");
+        }
+        // Баланс изменен в БД, его итоговое значение здесь неизвестно
+        ledgerService.record(transferEntries(userId, sourceCardId, targetCardId, amount, null, null, reference));
+    }
+
+    // Принадлежность карты по закэшированному списку карт пользователя, без блокировки строки
+    private boolean ownsCard(Long userId, Long cardId) {
+        return userCardsCache.getCards(userId).stream().anyMatch(card -> card.getId().equals(cardId));
+    }
+
+    // Списание в пределах лимитов карты: резерв снимается, если списание не выполнено
+    private void withinSpendingLimits(Long cardId, BigDecimal amount, Runnable debit) {
+        SpendingLimitService.Reservation reservation = spendingLimitService.reserve(cardId, amount);
+        try {
+            debit.run();
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
+        }
+    }
+
+    // Две записи журнала на перевод (списание и зачисление) с общим reference
+    private static List<CardTransaction> transferEntries(Long userId, Long sourceCardId, Long targetCardId, BigDecimal amount,
+                                                         BigDecimal sourceBalanceAfter, BigDecimal targetBalanceAfter,
+                                                         String reference) {
+        return transferEntries(userId, sourceCardId, userId, targetCardId, amount, sourceBalanceAfter, targetBalanceAfter, reference);
+    }
+
+    private static List<CardTransaction> transferEntries(Long sourceUserId, Long sourceCardId, Long targetUserId, Long targetCardId,
+                                                         BigDecimal amount, BigDecimal sourceBalanceAfter, BigDecimal targetBalanceAfter,
+                                                         String reference) {
+        return List.of(
+                new CardTransaction(sourceCardId, sourceUserId, CardTransaction.TRANSFER_OUT, amount.negate(), sourceBalanceAfter, targetCardId, reference),
+                new CardTransaction(targetCardId, targetUserId, CardTransaction.TRANSFER_IN, amount, targetBalanceAfter, sourceCardId, reference));
+    }
+
+    /**
+     * Зафиксирован ли перевод с данным reference (есть записи журнала)
+     */
+    public boolean isTransferRecorded(String reference) {
+        return ledgerService.isRecorded(reference);
+    }
+
+    /**
+     * Журнал движений по своей карте (keyset-пагинация)
+     */
+    public CursorPage<CardTransactionDTO> getCardTransactions(Long userId, Long cardId, String cursor, int limit) {
+        bankCardRepository.findByUserIdAndId(userId, cardId)
+                .orElseThrow(() -> new CardNotFoundException("Card not found or access denied"));
+        return ledgerService.getCardTransactions(cardId, cursor, limit);
     }
 
     /**
-     * Получение баланса своей карты
+     * Получение баланса своей карты: доступные средства и зарезервированные холдами
      */
-    public BigDecimal getCardBalance(Long userId, Long cardId) {
+    public BalanceDTO getCardBalance(Long userId, Long cardId) {
         BankCards card = bankCardRepository.findByUserIdAndId(userId, cardId)
                 .orElseThrow(() -> new CardNotFoundException("Card not found or access denied"));
 
-        return card.getBalance();
+        return new BalanceDTO(card.getBalance(), card.getHeldAmount());
+    }
+
+    /**
+     * Лимиты расходов своей карты и расход за текущие сутки и 30 дней
+     */
+    public CardLimitsDTO getCardLimits(Long userId, Long cardId) {
+        bankCardRepository.findByUserIdAndId(userId, cardId)
+                .orElseThrow(() -> new CardNotFoundException("Card not found or access denied"));
+        return spendingLimitService.getLimits(cardId);
     }
 
     /**
@@ -123,6 +550,10 @@ public class UserService {
         }
 
         Object principal = authentication.getPrincipal();
+        // ID уже известен из токена/кэша - обходимся без запроса в БД
+        if (principal instanceof UsersDetailsImpl usersDetails && usersDetails.getId() != null) {
+            return usersDetails.getId();
+        }
         if (principal instanceof UserDetails) {
             String username = ((UserDetails) principal).getUsername();
             return getUserIdByUsername(username);
@@ -138,12 +569,9 @@ public class UserService {
             throw new UserNotFoundException("User not found with username: " + username);
         }
     }
-    public BigDecimal getTotalBalanceByUserId(Long userId) {
-
-        // Вариант 1: Используем репозиторий (если есть готовый метод)
-        BigDecimal totalBalance = bankCardRepository.sumBalanceByUserId(userId);
+    public BalanceDTO getTotalBalanceByUserId(Long userId) {
 
-        // Если в БД NULL, возвращаем 0
-        return totalBalance != null ? totalBalance : BigDecimal.ZERO;
+        // Доступные и зарезервированные суммы - чтение сводки пользователя по первичному ключу
+        return balanceSummaryService.getBalance(userId);
     }
 }
\ No newline at end of file
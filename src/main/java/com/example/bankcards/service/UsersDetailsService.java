@@ -2,8 +2,12 @@ package com.example.bankcards.service;
 
 import com.example.bankcards.entity.Users;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.PrincipalCache;
 import com.example.bankcards.security.UsersDetailsImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -12,12 +16,16 @@ import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @Transactional(readOnly = true)
-public class UsersDetailsService implements UserDetailsService {
+public class UsersDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger log = LoggerFactory.getLogger(UsersDetailsService.class);
 
     private final UsersRepository usersRepository;
+    private final PrincipalCache principalCache;
 
-    public UsersDetailsService(UsersRepository usersRepository) {
+    public UsersDetailsService(UsersRepository usersRepository, PrincipalCache principalCache) {
         this.usersRepository = usersRepository;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -26,4 +34,20 @@ public class UsersDetailsService implements UserDetailsService {
 
         return UsersDetailsImpl.build(users);
     }
+
+    /**
+     * Пересчет хэша пароля при входе, если его стоимость ниже целевой (app.security.password.bcrypt-strength).
+     * Вызывается DaoAuthenticationProvider после успешной проверки пароля.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Users users = usersRepository.findByUsername(user.getUsername()).orElseThrow(() -> new UsernameNotFoundException(String.format("User '%s' not found", user.getUsername())));
+        users.setPassword(newPassword);
+        usersRepository.save(users);
+        principalCache.invalidate(users.getUsername());
+        log.info("Password hash upgraded for user {}", users.getUsername());
+
+        return UsersDetailsImpl.build(users);
+    }
 }
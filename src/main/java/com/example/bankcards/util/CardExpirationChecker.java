@@ -2,6 +2,8 @@ package com.example.bankcards.util;
 
 import com.example.bankcards.entity.BankCards;
 import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.service.TransactionRetryExecutor;
+import com.example.bankcards.service.UserCardsCache;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -12,9 +14,14 @@ import java.util.List;
 public class CardExpirationChecker {
 
     private final BankCardRepository bankCardRepository;
+    private final TransactionRetryExecutor transactionRetryExecutor;
+    private final UserCardsCache userCardsCache;
 
-    public CardExpirationChecker(BankCardRepository bankCardRepository) {
+    public CardExpirationChecker(BankCardRepository bankCardRepository, TransactionRetryExecutor transactionRetryExecutor,
+                                 UserCardsCache userCardsCache) {
         this.bankCardRepository = bankCardRepository;
+        this.transactionRetryExecutor = transactionRetryExecutor;
+        this.userCardsCache = userCardsCache;
     }
 
     // Проверяем истекшие карты каждый день в 02:00
@@ -24,14 +31,18 @@ public class CardExpirationChecker {
         // Находим все активные карты с истекшим сроком
         List<BankCards> expiredCards = bankCardRepository.findActiveExpiredCards(LocalDate.now());
 
-        if (!expiredCards.isEmpty()) {
-
-            for (BankCards card : expiredCards) {
-                card.setStatus("EXPIRED");
-                bankCardRepository.save(card);
-
-            }
+        for (BankCards expired : expiredCards) {
+            // Карта перечитывается в транзакции: за время обхода ее могли изменить (перевод, блокировка)
+            transactionRetryExecutor.execute("card.expire", () -> {
+                bankCardRepository.findById(expired.getId())
+                        .filter(card -> "ACTIVE".equals(card.getStatus()))
+                        .ifPresent(card -> {
+                            card.setStatus("EXPIRED");
+                            userCardsCache.invalidate(card.getUserId());
+                        });
+                return null;
+            });
         }
 
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package com.example.bankcards.util;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Иерархическое колесо таймеров: добавление и срабатывание за O(1) независимо от числа элементов.
+ * Нижний уровень - wheelSize корзин по tickMillis; элементы дальше его оборота попадают на уровень выше
+ * (корзины по tickMillis * wheelSize) и спускаются вниз, когда до срока остается меньше оборота.
+ * Не потокобезопасно: add и advance вызываются из одного потока.
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMillis;
+    private final int wheelSize;
+    private final long intervalMillis;
+    private final ArrayDeque<Entry<T>>[] buckets;
+    // Начало текущего тика (кратно tickMillis)
+    private long currentTime;
+    private HierarchicalTimingWheel<T> overflowWheel;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMillis must be positive and wheelSize greater than 1");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.intervalMillis = tickMillis * wheelSize;
+        this.currentTime = startMillis - Math.floorMod(startMillis, tickMillis);
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Добавление элемента со сроком expirationMillis.
+     * false - срок уже наступил (в пределах текущего тика), элемент не добавлен и должен быть обработан сразу.
+     */
+    public boolean add(T item, long expirationMillis) {
+        if (!place(new Entry<>(item, expirationMillis))) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Продвижение часов до nowMillis; элементы с наступившим сроком передаются в onExpired в порядке тиков
+     */
+    public void advance(long nowMillis, Consumer<T> onExpired) {
+        while (currentTime + tickMillis <= nowMillis) {
+            currentTime += tickMillis;
+            if (overflowWheel != null) {
+                // Верхние уровни спускают элементы, срок которых вошел в оборот нижнего уровня
+                overflowWheel.advanceTo(currentTime, entry -> reinsert(entry, onExpired));
+            }
+            ArrayDeque<Entry<T>> bucket = buckets[bucketIndex(currentTime)];
+            Entry<T> entry;
+            while ((entry = bucket.poll()) != null) {
+                reinsert(entry, onExpired);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    private void reinsert(Entry<T> entry, Consumer<T> onExpired) {
+        if (!place(entry)) {
+            size--;
+            onExpired.accept(entry.item);
+        }
+    }
+
+    private boolean place(Entry<T> entry) {
+        if (entry.expiration < currentTime + tickMillis) {
+            return false;
+        }
+        if (entry.expiration < currentTime + intervalMillis) {
+            buckets[bucketIndex(entry.expiration)].add(entry);
+        } else {
+            overflow().place(entry);
+        }
+        return true;
+    }
+
+    // Уровень выше: продвигается нижним уровнем и возвращает ему элементы из своих корзин
+    private void advanceTo(long time, Consumer<Entry<T>> descend) {
+        while (currentTime + tickMillis <= time) {
+            currentTime += tickMillis;
+            if (overflowWheel != null) {
+                overflowWheel.advanceTo(currentTime, descend);
+            }
+            ArrayDeque<Entry<T>> bucket = buckets[bucketIndex(currentTime)];
+            Entry<T> entry;
+            while ((entry = bucket.poll()) != null) {
+                descend.accept(entry);
+            }
+        }
+    }
+
+    private HierarchicalTimingWheel<T> overflow() {
+        if (overflowWheel == null) {
+            overflowWheel = new HierarchicalTimingWheel<>(intervalMillis, wheelSize, currentTime);
+        }
+        return overflowWheel;
+    }
+
+    private int bucketIndex(long time) {
+        return (int) Math.floorMod(time / tickMillis, (long) wheelSize);
+    }
+
+    private static final class Entry<T> {
+        private final T item;
+        private final long expiration;
+
+        private Entry(T item, long expiration) {
+            this.item = item;
+            this.expiration = expiration;
+        }
+    }
+}
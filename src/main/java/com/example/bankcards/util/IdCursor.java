@@ -0,0 +1,52 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.exception.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Keyset-пагинация по id: курсор - id последней выданной записи в base64url,
+ * следующая страница - WHERE id > :afterId ORDER BY id LIMIT size + 1 без OFFSET.
+ */
+public final class IdCursor {
+
+    public static final int MAX_PAGE_SIZE = 200;
+
+    private IdCursor() {
+    }
+
+    public static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    // Без курсора - первая страница (id начинаются с 1)
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return Long.parseLong(raw);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("Invalid cursor");
+        }
+    }
+
+    public static String encode(Long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Страница из выборки размером pageSize + 1: лишняя запись означает, что есть следующая страница
+     */
+    public static <T> CursorPage<T> page(List<T> rows, int pageSize, Function<T, Long> id, Long total) {
+        boolean hasMore = rows.size() > pageSize;
+        List<T> items = hasMore ? rows.subList(0, pageSize) : rows;
+        String nextCursor = hasMore ? encode(id.apply(items.get(items.size() - 1))) : null;
+        return new CursorPage<>(List.copyOf(items), nextCursor, total);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.bankcards.util;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+/**
+ * Заранее создает месячные секции card_transactions (PostgreSQL).
+ * Секции создаются на несколько месяцев вперед, чтобы строки не попадали в секцию DEFAULT:
+ * если в DEFAULT есть строки за месяц, секцию для этого месяца не создать, пока их оттуда не перенести.
+ * Первая проверка выполняется при создании бина - после миграций Liquibase и до запуска веб-сервера,
+ * поэтому переводы не успевают записать текущий месяц в DEFAULT. Без секции текущего месяца приложение не стартует.
+ */
+@Component
+public class LedgerPartitionMaintainer {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerPartitionMaintainer.class);
+    private static final String DEFAULT_PARTITION = "card_transactions_default";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.ledger.partitions-ahead:2}")
+    private int monthsAhead;
+
+    public LedgerPartitionMaintainer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void ensurePartitionsOnStartup() {
+        ensurePartitions(true);
+    }
+
+    // Новые месяцы - каждый день в 03:00
+    @Scheduled(cron = "0 0 3 * * ?")
+    public void ensurePartitions() {
+        ensurePartitions(false);
+    }
+
+    private void ensurePartitions(boolean failOnError) {
+        if (!isPostgres()) {
+            return;
+        }
+        // created_at хранится в UTC
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                ensurePartition(month);
+            } catch (RuntimeException e) {
+                if (failOnError) {
+                    throw new IllegalStateException("Cannot create ledger partition for " + month, e);
+                }
+                log.error("Failed to create ledger partition for {}", month, e);
+            }
+        }
+    }
+
+    /**
+     * Создание секции месяца. Строки этого месяца, попавшие в DEFAULT, переносятся в новую секцию
+     * в той же транзакции: DEFAULT отсоединяется, секция создается, строки копируются и удаляются
+     * из DEFAULT, после чего она присоединяется обратно.
+     */
+    private void ensurePartition(YearMonth month) {
+        String partition = String.format("card_transactions_y%04dm%02d", month.getYear(), month.getMonthValue());
+        String from = month.atDay(1).toString();
+        String to = month.plusMonths(1).atDay(1).toString();
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            if (exists(connection, partition)) {
+                return null;
+            }
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                int moved = 0;
+                boolean misplaced = hasDefaultRows(connection, from, to);
+                if (misplaced) {
+                    statement.execute("ALTER TABLE card_transactions DETACH PARTITION " + DEFAULT_PARTITION);
+                }
+                statement.execute("CREATE TABLE " + partition + " PARTITION OF card_transactions " +
+                        "FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+                if (misplaced) {
+                    String range = " WHERE created_at >= '" + from + "' AND created_at < '" + to + "'";
+                    moved = statement.executeUpdate("INSERT INTO " + partition + " SELECT * FROM " + DEFAULT_PARTITION + range);
+                    statement.executeUpdate("DELETE FROM " + DEFAULT_PARTITION + range);
+                    statement.execute("ALTER TABLE card_transactions ATTACH PARTITION " + DEFAULT_PARTITION + " DEFAULT");
+                }
+                connection.commit();
+                if (misplaced) {
+                    log.warn("Moved {} ledger rows for {} from {} to {}", moved, month, DEFAULT_PARTITION, partition);
+                } else {
+                    log.info("Created ledger partition {}", partition);
+                }
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return null;
+        });
+    }
+
+    private static boolean exists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, table);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private static boolean hasDefaultRows(Connection connection, String from, String to) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT EXISTS (SELECT 1 FROM " + DEFAULT_PARTITION +
+                " WHERE created_at >= CAST(? AS TIMESTAMP) AND created_at < CAST(? AS TIMESTAMP))")) {
+            statement.setString(1, from);
+            statement.setString(2, to);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getBoolean(1);
+            }
+        }
+    }
+
+    private boolean isPostgres() {
+        Boolean postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                connection.getMetaData().getDatabaseProductName().toLowerCase().contains("postgres"));
+        return Boolean.TRUE.equals(postgres);
+    }
+}
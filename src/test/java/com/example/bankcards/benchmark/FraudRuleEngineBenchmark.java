@@ -0,0 +1,92 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.exception.FraudSuspectedException;
+import com.example.bankcards.fraud.FraudDecision;
+import com.example.bankcards.fraud.FraudDecisionLogger;
+import com.example.bankcards.fraud.FraudRule;
+import com.example.bankcards.fraud.FraudRuleEngine;
+import com.example.bankcards.fraud.RoundTripRule;
+import com.example.bankcards.fraud.StatusChangeAmountRule;
+import com.example.bankcards.fraud.VelocityRule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Проверка перевода правилами антифрода: время одной проверки и пропускная способность из многих потоков.
+ * Пороги правил подняты, чтобы переводы не отклонялись, а окна карт были заполнены целиком (худший случай сканирования).
+ * Запуск: mvn test-compile, затем main() этого класса (classpath тестов).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FraudRuleEngineBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("25.00");
+
+    @Param({"1000", "100000"})
+    public int cards;
+
+    private FraudRuleEngine engine;
+    private FraudDecisionLogger decisionLogger;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        List<FraudRule> rules = List.of(
+                new VelocityRule(Integer.MAX_VALUE, Integer.MAX_VALUE, Duration.ofMinutes(1), FraudDecision.Action.BLOCK),
+                new RoundTripRule(Duration.ofMinutes(10), FraudDecision.Action.FLAG),
+                new StatusChangeAmountRule(new BigDecimal("1000"), Duration.ofHours(1), FraudDecision.Action.BLOCK));
+        decisionLogger = new FraudDecisionLogger(10000, meterRegistry);
+        decisionLogger.start();
+        engine = new FraudRuleEngine(rules, decisionLogger, true, 32, Duration.ofHours(1), cards * 2L, meterRegistry);
+        // Окна всех карт заполняются до начала измерений
+        for (int i = 0; i < cards * 32; i++) {
+            transfer(i % cards);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decisionLogger.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void screenTransfer() {
+        transfer(ThreadLocalRandom.current().nextInt(cards));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void screenTransferContended() {
+        transfer(ThreadLocalRandom.current().nextInt(cards));
+    }
+
+    private void transfer(int card) {
+        long sourceCardId = card;
+        long targetCardId = (card + 1) % cards;
+        try {
+            engine.screenTransfer(sourceCardId / 4, sourceCardId, targetCardId, AMOUNT);
+        } catch (FraudSuspectedException e) {
+            throw new IllegalStateException("Benchmark transfer must not be blocked", e);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(FraudRuleEngineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
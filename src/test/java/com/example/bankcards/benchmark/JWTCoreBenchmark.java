@@ -0,0 +1,60 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.security.JWTCore;
+import com.example.bankcards.security.UsersDetailsImpl;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пропускная способность подписи и проверки JWT.
+ * Запуск: mvn test-compile, затем main() этого класса (classpath тестов).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JWTCoreBenchmark {
+
+    private JWTCore jwtCore;
+    private Authentication authentication;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtCore = new JWTCore();
+        ReflectionTestUtils.setField(jwtCore, "secret", "benchmarkSecretKeyForJwtSigningAndVerification");
+        ReflectionTestUtils.setField(jwtCore, "lifeTime", 3600000);
+        ReflectionTestUtils.setField(jwtCore, "keyId", "primary");
+        ReflectionTestUtils.setField(jwtCore, "previousKeys", "old=previousBenchmarkSecretKey");
+        jwtCore.init();
+
+        UsersDetailsImpl principal = new UsersDetailsImpl(1L, "benchmark", "password", "ROLE_USER", 0);
+        authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+        token = jwtCore.generateToken(authentication);
+    }
+
+    @Benchmark
+    public String sign() {
+        return jwtCore.generateToken(authentication);
+    }
+
+    @Benchmark
+    public Object verify() {
+        return jwtCore.validateToken(token);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JWTCoreBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.service.TransferServicesTestConfig;
+import com.example.bankcards.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Переводы на одну "горячую" карту из многих потоков: блокировка строки на каждый перевод (rowlock)
+ * против однопоточного шарда с групповым коммитом (pipeline).
+ * По умолчанию H2 в памяти (без fsync, выигрыш группового коммита занижен); для PostgreSQL
+ * передать -Dspring.datasource.url/username/password/driver-class-name и -Dspring.jpa.database-platform
+ * (JMH передает их в форк через -jvmArgsAppend).
+ * Запуск: mvn test-compile, затем main() этого класса (classpath тестов).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class TransferPipelineBenchmark {
+
+    private static final int SOURCE_CARDS = 64;
+
+    @Param({"rowlock", "pipeline"})
+    public String mode;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private Long userId;
+    private Long hotCardId;
+    private final List<Long> sourceCardIds = new ArrayList<>();
+    private final AtomicInteger nextSource = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Аргументы командной строки приоритетнее application.yml; БД можно переопределить через -D
+        context = new SpringApplicationBuilder(BenchmarkContext.class)
+                .web(WebApplicationType.NONE)
+                .run(
+                        "--spring.datasource.url=" + System.getProperty("spring.datasource.url", "jdbc:h2:mem:transfer-benchmark;DB_CLOSE_DELAY=-1"),
+                        "--spring.datasource.username=" + System.getProperty("spring.datasource.username", "sa"),
+                        "--spring.datasource.password=" + System.getProperty("spring.datasource.password", ""),
+                        "--spring.datasource.driver-class-name=" + System.getProperty("spring.datasource.driver-class-name", "org.h2.Driver"),
+                        "--spring.jpa.database-platform=" + System.getProperty("spring.jpa.database-platform", "org.hibernate.dialect.H2Dialect"),
+                        "--spring.liquibase.enabled=false",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--app.transactions.retry.max-attempts=10",
+                        "--app.transfers.pipeline.enabled=" + "pipeline".equals(mode));
+        userService = context.getBean(UserService.class);
+        BankCardRepository bankCardRepository = context.getBean(BankCardRepository.class);
+
+        Users user = context.getBean(UsersRepository.class).save(new Users("benchmark", "password", "USER"));
+        userId = user.getId();
+        // Горячая карта создается первой: у нее меньший id, и все переводы на нее попадают в один шард
+        hotCardId = bankCardRepository.save(card(user, "5000000000000000", BigDecimal.ZERO)).getId();
+        for (int i = 1; i <= SOURCE_CARDS; i++) {
+            sourceCardIds.add(bankCardRepository.save(card(user, String.valueOf(5000000000000000L + i), new BigDecimal("1000000000.00"))).getId());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Source {
+        Long cardId;
+
+        @Setup(Level.Trial)
+        public void pick(TransferPipelineBenchmark benchmark) {
+            cardId = benchmark.sourceCardIds.get(benchmark.nextSource.getAndIncrement() % SOURCE_CARDS);
+        }
+    }
+
+    @Benchmark
+    public void transferToHotCard(Source source) {
+        try {
+            userService.transferBetweenOwnCards(userId, source.cardId, hotCardId, new BigDecimal("0.01"));
+        } catch (InsufficientFundsException e) {
+            throw new IllegalStateException("Source card balance exhausted", e);
+        }
+    }
+
+    private static BankCards card(Users user, String number, BigDecimal balance) {
+        BankCards card = new BankCards();
+        card.setCardNumber(number);
+        card.setMasked_card_number("**** **** **** " + number.substring(12));
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(balance);
+        card.setStatus("ACTIVE");
+        card.setUser(user);
+        return card;
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    @EntityScan("com.example.bankcards.entity")
+    @EnableJpaRepositories("com.example.bankcards.repository")
+    @Import(TransferServicesTestConfig.class)
+    static class BenchmarkContext {
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TransferPipelineBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.bankcards.fraud;
+
+import com.example.bankcards.exception.FraudSuspectedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Правила по умолчанию: не больше 3 переводов с карты (5 с карт пользователя) в минуту - BLOCK,
+ * обратный перевод в течение 10 минут - FLAG, перевод от 1000 в течение часа после смены статуса - BLOCK.
+ */
+class FraudRuleEngineTest {
+
+    private static final Long USER = 1L;
+    private static final Long CARD_A = 10L;
+    private static final Long CARD_B = 20L;
+    private static final Long CARD_C = 30L;
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private FraudRuleEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = engine(true);
+    }
+
+    // ==================== Частота переводов ====================
+
+    @Test
+    void testVelocity_BlocksTooManyTransfersFromCard() {
+        for (int i = 0; i < 3; i++) {
+            engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+        }
+
+        assertThatThrownBy(() -> engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00")))
+                .isInstanceOf(FraudSuspectedException.class)
+                .hasMessage("Transfer blocked: Too many transfers from card");
+
+        // Через минуту окно свободно
+        now.addAndGet(Duration.ofMinutes(1).toMillis() + 1);
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+    }
+
+    @Test
+    void testVelocity_CountsTransfersAcrossUserCards() {
+        for (int i = 0; i < 3; i++) {
+            engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+        }
+        engine.screenTransfer(USER, CARD_B, CARD_C, new BigDecimal("10.00"));
+        engine.screenTransfer(USER, CARD_C, 40L, new BigDecimal("10.00"));
+
+        assertThatThrownBy(() -> engine.screenTransfer(USER, CARD_C, 40L, new BigDecimal("10.00")))
+                .isInstanceOf(FraudSuspectedException.class)
+                .hasMessage("Transfer blocked: Too many transfers from user cards");
+        // Другой пользователь не затронут
+        engine.screenTransfer(2L, 50L, 60L, new BigDecimal("10.00"));
+    }
+
+    @Test
+    void testBatch_ScreenedAsOneEvent() {
+        List<FraudRuleEngine.BatchLeg> legs = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            legs.add(new FraudRuleEngine.BatchLeg(CARD_A, i % 2 == 0 ? CARD_B : CARD_C, new BigDecimal("10.00")));
+        }
+
+        assertThat(engine.screenBatch(USER, legs)).isEmpty();
+
+        // Пакет учтен как один перевод с карты: до лимита остается еще два
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+        assertThat(engine.screenBatch(USER, legs)).hasSize(legs.size())
+                .containsValue("Transfer blocked: Too many transfers from card");
+    }
+
+    @Test
+    void testBatch_LegsScreenedIndividually() {
+        engine.recordStatusChange(USER, CARD_A, "ACTIVE");
+
+        Map<Integer, String> blocked = engine.screenBatch(USER, List.of(
+                new FraudRuleEngine.BatchLeg(CARD_A, CARD_B, new BigDecimal("5000.00")),
+                new FraudRuleEngine.BatchLeg(CARD_B, CARD_C, new BigDecimal("5000.00")),
+                new FraudRuleEngine.BatchLeg(CARD_C, CARD_C, new BigDecimal("1.00"))));
+
+        assertThat(blocked).containsOnlyKeys(0)
+                .containsEntry(0, "Transfer blocked: Large transfer shortly after card status change");
+        // Отклоненная нога не записана: перевод B -> A не обратный, а C получила деньги от B
+        assertThat(engine.evaluate(FraudEvent.transfer(USER, CARD_B, CARD_A, new BigDecimal("10.00"), now.get())))
+                .isEqualTo(FraudDecision.ALLOW);
+        assertThat(engine.evaluate(FraudEvent.transfer(USER, CARD_C, CARD_B, new BigDecimal("10.00"), now.get())).rule())
+                .isEqualTo("round-trip");
+    }
+
+    // ==================== Обратные переводы ====================
+
+    @Test
+    void testRoundTrip_FlaggedButAllowed() {
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("100.00"));
+        now.addAndGet(Duration.ofMinutes(5).toMillis());
+
+        FraudDecision decision = engine.evaluate(FraudEvent.transfer(USER, CARD_B, CARD_A, new BigDecimal("100.00"), now.get()));
+
+        assertThat(decision.action()).isEqualTo(FraudDecision.Action.FLAG);
+        assertThat(decision.rule()).isEqualTo("round-trip");
+        assertThat(meterRegistry.counter("fraud.decisions", "action", "FLAG").count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testRoundTrip_NotFlaggedAfterWindow() {
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("100.00"));
+        now.addAndGet(Duration.ofMinutes(11).toMillis());
+
+        FraudDecision decision = engine.evaluate(FraudEvent.transfer(USER, CARD_B, CARD_A, new BigDecimal("100.00"), now.get()));
+
+        assertThat(decision).isEqualTo(FraudDecision.ALLOW);
+    }
+
+    // ==================== Смена статуса карты ====================
+
+    @Test
+    void testStatusChange_BlocksLargeTransferAfterActivation() {
+        engine.recordStatusChange(USER, CARD_A, "ACTIVE");
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("999.99"));
+        assertThatThrownBy(() -> engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("1000.00")))
+                .isInstanceOf(FraudSuspectedException.class)
+                .hasMessage("Transfer blocked: Large transfer shortly after card status change");
+
+        now.addAndGet(Duration.ofHours(1).toMillis());
+        engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("1000.00"));
+    }
+
+    @Test
+    void testBlockedTransfer_NotRecorded() {
+        engine.recordStatusChange(USER, CARD_A, "ACTIVE");
+        assertThatThrownBy(() -> engine.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("5000.00")))
+                .isInstanceOf(FraudSuspectedException.class);
+
+        // Отклоненный перевод A -> B не делает перевод B -> A обратным
+        FraudDecision decision = engine.evaluate(FraudEvent.transfer(USER, CARD_B, CARD_A, new BigDecimal("10.00"), now.get()));
+        assertThat(decision).isEqualTo(FraudDecision.ALLOW);
+    }
+
+    @Test
+    void testDisabled_NeverBlocks() {
+        FraudRuleEngine disabled = engine(false);
+
+        for (int i = 0; i < 10; i++) {
+            disabled.screenTransfer(USER, CARD_A, CARD_B, new BigDecimal("10.00"));
+        }
+    }
+
+    private FraudRuleEngine engine(boolean enabled) {
+        List<FraudRule> rules = List.of(
+                new VelocityRule(3, 5, Duration.ofMinutes(1), FraudDecision.Action.BLOCK),
+                new RoundTripRule(Duration.ofMinutes(10), FraudDecision.Action.FLAG),
+                new StatusChangeAmountRule(new BigDecimal("1000"), Duration.ofHours(1), FraudDecision.Action.BLOCK));
+        return new FraudRuleEngine(rules, new FraudDecisionLogger(100, meterRegistry), enabled, 32, Duration.ofHours(1),
+                1000, meterRegistry, now::get);
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.bankcards.security;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.*;
+
+class JWTCoreTest {
+
+    private static final String SECRET = "testSecretKeyForTestingPurposesOnly";
+    private static final String OLD_SECRET = "previousTestSecretKey";
+
+    private JWTCore jwtCore;
+    private Authentication authentication;
+
+    @BeforeEach
+    void setUp() {
+        jwtCore = newCore("v2", SECRET, "v1=" + OLD_SECRET);
+
+        UsersDetailsImpl principal = new UsersDetailsImpl(5L, "testuser", "password", "ROLE_USER", 2);
+        authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+    }
+
+    @Test
+    void testGenerateAndValidate() {
+        String token = jwtCore.generateToken(authentication);
+
+        DecodedJWT jwt = jwtCore.validateToken(token);
+
+        assertThat(jwt.getKeyId()).isEqualTo("v2");
+        assertThat(jwt.getClaim(JWTCore.CLAIM_USERNAME).asString()).isEqualTo("testuser");
+        assertThat(jwt.getClaim(JWTCore.CLAIM_USER_ID).asLong()).isEqualTo(5L);
+        assertThat(jwt.getClaim(JWTCore.CLAIM_USER_VERSION).asInt()).isEqualTo(2);
+    }
+
+    @Test
+    void testValidate_TokenSignedWithPreviousKey() {
+        // Токен выпущен до ротации, когда текущим ключом был v1
+        String oldToken = newCore("v1", OLD_SECRET, "").generateToken(authentication);
+
+        assertThat(jwtCore.validateTokenAndRetrieveClaim(oldToken)).isEqualTo("testuser");
+    }
+
+    @Test
+    void testValidate_UnknownKeyId() {
+        String token = newCore("v0", "retiredSecretKey", "").generateToken(authentication);
+
+        assertThatThrownBy(() -> jwtCore.validateToken(token))
+                .isInstanceOf(JWTVerificationException.class)
+                .hasMessage("Unknown signing key: v0");
+    }
+
+    @Test
+    void testValidate_TokenWithoutKeyIdUsesCurrentKey() {
+        String legacyToken = JWT.create()
+                .withSubject("User details")
+                .withIssuer("dev")
+                .withClaim(JWTCore.CLAIM_USERNAME, "legacy")
+                .sign(Algorithm.HMAC256(SECRET));
+
+        assertThat(jwtCore.validateTokenAndRetrieveClaim(legacyToken)).isEqualTo("legacy");
+    }
+
+    @Test
+    void testToPrincipal_FromClaims() {
+        DecodedJWT jwt = jwtCore.validateToken(jwtCore.generateToken(authentication));
+
+        UsersDetailsImpl principal = jwtCore.toPrincipal(jwt);
+
+        assertThat(principal.getId()).isEqualTo(5L);
+        assertThat(principal.getUsername()).isEqualTo("testuser");
+        assertThat(principal.getTokenVersion()).isEqualTo(2);
+        assertThat(principal.getAuthorities()).extracting("authority").containsExactly("ROLE_USER");
+    }
+
+    @Test
+    void testToPrincipal_LegacyTokenWithoutClaims() {
+        String legacyToken = JWT.create()
+                .withSubject("User details")
+                .withIssuer("dev")
+                .withClaim(JWTCore.CLAIM_USERNAME, "legacy")
+                .sign(Algorithm.HMAC256(SECRET));
+
+        assertThat(jwtCore.toPrincipal(jwtCore.validateToken(legacyToken))).isNull();
+    }
+
+    @Test
+    void testInvalidPreviousKeyDoesNotLeakSecret() {
+        assertThatThrownBy(() -> newCore("v2", SECRET, "v1=" + OLD_SECRET + "," + OLD_SECRET))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("entry #2")
+                .hasMessageNotContaining(OLD_SECRET);
+    }
+
+    private JWTCore newCore(String keyId, String secret, String previousKeys) {
+        JWTCore core = new JWTCore();
+        ReflectionTestUtils.setField(core, "secret", secret);
+        ReflectionTestUtils.setField(core, "lifeTime", 3600000);
+        ReflectionTestUtils.setField(core, "keyId", keyId);
+        ReflectionTestUtils.setField(core, "previousKeys", previousKeys);
+        core.init();
+        return core;
+    }
+}
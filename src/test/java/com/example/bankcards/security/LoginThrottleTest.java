@@ -0,0 +1,79 @@
+package com.example.bankcards.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+class LoginThrottleTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private LoginThrottle loginThrottle;
+
+    @BeforeEach
+    void setUp() {
+        loginThrottle = new LoginThrottle(3, 10, Duration.ofMinutes(15), Duration.ofMinutes(1),
+                Duration.ofMinutes(10), 1000, new SimpleMeterRegistry(), now::get);
+    }
+
+    @Test
+    void testLockoutAfterThreshold() {
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isZero();
+
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isEqualTo(60_000L);
+        // Другой пользователь с другого адреса не затронут
+        assertThat(loginThrottle.retryAfterMillis("bob", "10.0.0.2")).isZero();
+    }
+
+    @Test
+    void testLockoutGrowsExponentially() {
+        for (int i = 0; i < 3; i++) {
+            loginThrottle.recordFailure("alice", "10.0.0.1");
+        }
+        now.addAndGet(60_000L);
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isZero();
+
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isEqualTo(120_000L);
+    }
+
+    @Test
+    void testFailuresOutsideWindowAreForgotten() {
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        now.addAndGet(Duration.ofMinutes(16).toMillis());
+
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isZero();
+    }
+
+    @Test
+    void testIpThresholdAcrossUsernames() {
+        for (int i = 0; i < 10; i++) {
+            loginThrottle.recordFailure("user" + i, "10.0.0.1");
+        }
+
+        assertThat(loginThrottle.retryAfterMillis("fresh", "10.0.0.1")).isEqualTo(60_000L);
+    }
+
+    @Test
+    void testSuccessResetsUsername() {
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+        loginThrottle.recordSuccess("alice");
+
+        loginThrottle.recordFailure("alice", "10.0.0.1");
+
+        assertThat(loginThrottle.retryAfterMillis("alice", "10.0.0.1")).isZero();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RevokedTokenStoreTest {
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    private RevokedTokenStore revokedTokenStore;
+    private final Instant expiresAt = Instant.now().plus(Duration.ofDays(7));
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        revokedTokenStore = new RevokedTokenStore(revokedTokenRepository, Duration.ofDays(1), 16, 0.001);
+    }
+
+    @Test
+    void testRevoked_ConfirmedByTable() {
+        when(revokedTokenRepository.existsById("jti-1")).thenReturn(true);
+
+        revokedTokenStore.revoke("jti-1", expiresAt);
+
+        assertThat(revokedTokenStore.isRevoked("jti-1", expiresAt)).isTrue();
+        // Другой bucket истечения - таблица не запрашивается
+        assertThat(revokedTokenStore.isRevoked("jti-1", expiresAt.plus(Duration.ofDays(2)))).isFalse();
+        verify(revokedTokenRepository, times(1)).existsById(anyString());
+    }
+
+    @Test
+    void testBucketGrowsWithRevocations() {
+        revokedTokenStore.revoke("jti-0", expiresAt);
+        long initialBits = revokedTokenStore.memoryBits();
+
+        for (int i = 1; i < 200; i++) {
+            revokedTokenStore.revoke("jti-" + i, expiresAt);
+        }
+
+        // Память растет с числом отзывов, а не выделяется под максимум заранее
+        assertThat(initialBits).isLessThan(1024);
+        assertThat(revokedTokenStore.memoryBits()).isGreaterThan(initialBits).isLessThan(200 * 64);
+        when(revokedTokenRepository.existsById(anyString())).thenReturn(true);
+        for (int i = 0; i < 200; i++) {
+            assertThat(revokedTokenStore.isRevoked("jti-" + i, expiresAt)).isTrue();
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package com.example.bankcards.service;
 
 import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardTransaction;
 import com.example.bankcards.entity.Users;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.fraud.FraudRuleEngine;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.TokenEpochRegistry;
 import com.example.bankcards.util.CardMaskingUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,8 +21,10 @@ import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class AdminServiceTest {
@@ -35,12 +41,44 @@ class AdminServiceTest {
     @Mock
     private CardMaskingUtil cardMaskingUtil;
 
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private TokenEpochRegistry tokenEpochRegistry;
+
+    @Mock
+    private TransactionRetryExecutor transactionRetryExecutor;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private CardCommandPipeline cardCommandPipeline;
+
+    @Mock
+    private CardNumberResolver cardNumberResolver;
+
+    @Mock
+    private SpendingLimitService spendingLimitService;
+
+    @Mock
+    private FraudRuleEngine fraudRuleEngine;
+
+    @Mock
+    private UserCardsCache userCardsCache;
+
+    @Mock
+    private BalanceSummaryService balanceSummaryService;
+
     @InjectMocks
     private AdminService adminService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(transactionRetryExecutor.execute(anyString(), any())).thenAnswer(invocation ->
+                ((Supplier<?>) invocation.getArgument(1)).get());
     }
 
     // --- Тесты для карт ---
@@ -142,6 +180,8 @@ class AdminServiceTest {
         assertThat(result.getStatus()).isEqualTo("BLOCKED");
         verify(bankCardRepository, times(1)).findById(cardId);
         verify(bankCardRepository, times(1)).save(mockCard);
+        // Изменение выполняется в транзакции с повтором при конфликте версий
+        verify(transactionRetryExecutor, times(1)).execute(eq("card.block"), any());
     }
 
     @Test
@@ -177,25 +217,31 @@ class AdminServiceTest {
     @Test
     void testDeleteCard_Success() {
         Long cardId = 1L;
-        when(bankCardRepository.existsById(cardId)).thenReturn(true);
+        BankCards card = new BankCards();
+        card.setId(cardId);
+        card.setUserId(7L);
+        card.setBalance(new BigDecimal("40.00"));
+        when(bankCardRepository.findById(cardId)).thenReturn(Optional.of(card));
 
         adminService.deleteCard(cardId);
 
-        verify(bankCardRepository, times(1)).existsById(cardId);
-        verify(bankCardRepository, times(1)).deleteById(cardId);
+        verify(bankCardRepository, times(1)).delete(card);
+        // Баланс удаленной карты уходит из сводки пользователя
+        verify(balanceSummaryService, times(1)).apply(7L, new BigDecimal("-40.00"), BigDecimal.ZERO);
+        verify(userCardsCache, times(1)).invalidate(7L);
     }
 
     @Test
     void testDeleteCard_NotFound() {
         Long cardId = 999L;
-        when(bankCardRepository.existsById(cardId)).thenReturn(false);
+        when(bankCardRepository.findById(cardId)).thenReturn(Optional.empty());
 
         assertThatThrownBy(() -> adminService.deleteCard(cardId))
                 .isInstanceOf(CardNotFoundException.class)
                 .hasMessage("Card not found");
 
-        verify(bankCardRepository, times(1)).existsById(cardId);
-        verify(bankCardRepository, never()).deleteById(anyLong());
+        verify(bankCardRepository, never()).delete(any(BankCards.class));
+        verify(userCardsCache, never()).invalidate(anyLong());
     }
 
     @Test
@@ -214,6 +260,10 @@ class AdminServiceTest {
         assertThat(result.getBalance()).isEqualByComparingTo(newBalance);
         verify(bankCardRepository, times(1)).findById(cardId);
         verify(bankCardRepository, times(1)).save(mockCard);
+        // Корректировка записывается в журнал на разницу балансов
+        verify(ledgerService, times(1)).record(argThat(entries -> entries.size() == 1
+                && CardTransaction.ADJUSTMENT.equals(entries.get(0).getType())
+                && entries.get(0).getAmount().compareTo(newBalance) == 0));
     }
 
     @Test
@@ -296,9 +346,12 @@ class AdminServiceTest {
 
         assertThat(result.getUsername()).isEqualTo(newUsername);
         assertThat(result.getRole()).isEqualTo("ROLE_ADMIN"); // Проверяем префикс
+        assertThat(result.getTokenVersion()).isEqualTo(1); // Старые токены устарели
         verify(userRepository, times(1)).findById(userId);
         verify(userRepository, times(1)).existsByUsername(newUsername);
         verify(userRepository, times(1)).save(mockUser);
+        verify(principalCache, times(1)).invalidateUser(userId);
+        verify(tokenEpochRegistry, times(1)).advance(userId, 1);
     }
 
     @Test
@@ -348,6 +401,8 @@ class AdminServiceTest {
 
         verify(userRepository, times(1)).existsById(userId);
         verify(userRepository, times(1)).deleteById(userId);
+        verify(principalCache, times(1)).invalidateUser(userId);
+        verify(tokenEpochRegistry, times(1)).revokeAll(userId);
     }
 
     @Test
@@ -361,5 +416,6 @@ class AdminServiceTest {
 
         verify(userRepository, times(1)).existsById(userId);
         verify(userRepository, never()).deleteById(anyLong());
+        verify(principalCache, never()).invalidateUser(anyLong());
     }
 }
\ No newline at end of file
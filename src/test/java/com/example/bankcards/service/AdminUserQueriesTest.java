@@ -0,0 +1,136 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.UserSummaryDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.fraud.FraudRuleEngine;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.TokenEpochRegistry;
+import com.example.bankcards.util.CardMaskingUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Число SQL-запросов на выдачу пользователей администратору не зависит от числа пользователей на странице.
+ * Сервис собирается с настоящими репозиториями, остальные зависимости - заглушки.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AdminUserQueriesTest {
+
+    private static final int USERS = 5;
+    private static final int CARDS_PER_USER = 2;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private AdminService adminService;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        int number = 0;
+        for (int u = 0; u < USERS; u++) {
+            Users user = usersRepository.save(new Users("user" + u, "password", "USER"));
+            for (int c = 0; c < CARDS_PER_USER; c++) {
+                BankCards card = new BankCards();
+                card.setCardNumber(String.format("47000000000000%02d", number++));
+                card.setMasked_card_number("**** **** **** 00" + c);
+                card.setExpiryDate(LocalDate.now().plusYears(3));
+                card.setBalance(new BigDecimal("10.00"));
+                card.setStatus("ACTIVE");
+                card.setUser(user);
+                bankCardRepository.save(card);
+            }
+        }
+        adminService = new AdminService(bankCardRepository, usersRepository, mock(PasswordEncoder.class),
+                mock(CardMaskingUtil.class), mock(PrincipalCache.class), mock(TokenEpochRegistry.class),
+                mock(TransactionRetryExecutor.class), mock(LedgerService.class), mock(CardCommandPipeline.class),
+                mock(CardNumberResolver.class), mock(SpendingLimitService.class), mock(FraudRuleEngine.class),
+                mock(UserCardsCache.class), mock(BalanceSummaryService.class));
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    @Test
+    void testUsersPage_WithoutCardsSingleQuery() throws Exception {
+        CursorPage<UserSummaryDTO> page = adminService.getUsersPage(null, 50, false, false);
+        String json = objectMapper.writeValueAsString(page);
+
+        assertThat(page.getItems()).hasSize(USERS);
+        assertThat(json).doesNotContain("cards").doesNotContain("password");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testUsersPage_WithCardsOneBatchQuery() throws Exception {
+        CursorPage<UserSummaryDTO> page = adminService.getUsersPage(null, 50, true, true);
+        objectMapper.writeValueAsString(page);
+
+        assertThat(page.getItems()).allSatisfy(user -> assertThat(user.getCards()).hasSize(CARDS_PER_USER));
+        // Пользователи, COUNT и карты всей страницы - по одному запросу
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    void testUserSummary_WithCards() {
+        Long userId = usersRepository.findByUsername("user0").orElseThrow().getId();
+        statistics.clear();
+
+        UserSummaryDTO user = adminService.getUserSummary(userId, true).orElseThrow();
+
+        assertThat(user.getCards()).hasSize(CARDS_PER_USER)
+                .allSatisfy(card -> assertThat(card.getMaskedNumber()).startsWith("****"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testUserEntity_SerializedWithoutLoadingCards() throws Exception {
+        Users user = usersRepository.findByUsername("user0").orElseThrow();
+        statistics.clear();
+
+        // Вне сессии: обращение к ленивой коллекции карт дало бы LazyInitializationException
+        String json = objectMapper.writeValueAsString(user);
+
+        assertThat(json).doesNotContain("cards");
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferStatusDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.TransferRequest;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.TransferNotFoundException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.TransferRequestRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Очередь асинхронных переводов: обработчики запускаются вручную (workers=0).
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.transfers.async.workers=0",
+        "app.transfers.async.batch-size=20",
+        "app.transfers.async.max-attempts=3"
+})
+@Import(AsyncTransferService.class)
+class AsyncTransferServiceTest {
+
+    @Autowired
+    private AsyncTransferService asyncTransferService;
+
+    @Autowired
+    private TransferRequestRepository transferRequestRepository;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @SpyBean
+    private LedgerService ledgerService;
+
+    private Users user;
+    private Long sourceCardId;
+    private Long targetCardId;
+
+    @BeforeEach
+    void setUp() {
+        user = usersRepository.save(new Users("async-user", "password", "USER"));
+        sourceCardId = saveCard(user, "4200000000000001", new BigDecimal("1000.00"));
+        targetCardId = saveCard(user, "4200000000000002", BigDecimal.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        transferRequestRepository.deleteAll();
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Постановка в очередь ====================
+
+    @Test
+    void testSubmit_QueuesWithoutTouchingBalances() {
+        TransferRequest request = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+
+        assertThat(request.getStatus()).isEqualTo(TransferRequest.PENDING);
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void testSubmit_ForeignCardRejected() {
+        Users other = usersRepository.save(new Users("async-other", "password", "USER"));
+        Long foreignCardId = saveCard(other, "4200000000000003", BigDecimal.ZERO);
+
+        assertThatThrownBy(() -> asyncTransferService.submit(user.getId(), transfer(sourceCardId, foreignCardId, "1.00")))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Target card not found or access denied");
+        assertThat(transferRequestRepository.count()).isZero();
+    }
+
+    @Test
+    void testGetStatus_OtherUsersTransferHidden() {
+        TransferRequest request = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "1.00"));
+
+        assertThatThrownBy(() -> asyncTransferService.getStatus(user.getId() + 1, request.getId()))
+                .isInstanceOf(TransferNotFoundException.class);
+    }
+
+    // ==================== Обработка ====================
+
+    @Test
+    void testProcessPending_CompletesAndFails() {
+        TransferRequest ok = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "600.00"));
+        TransferRequest tooMuch = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "600.00"));
+
+        assertThat(asyncTransferService.processPending()).isEqualTo(2);
+
+        TransferStatusDTO completed = asyncTransferService.getStatus(user.getId(), ok.getId());
+        assertThat(completed.getStatus()).isEqualTo(TransferRequest.COMPLETED);
+        assertThat(completed.getProcessedAt()).isNotNull();
+        TransferStatusDTO failed = asyncTransferService.getStatus(user.getId(), tooMuch.getId());
+        assertThat(failed.getStatus()).isEqualTo(TransferRequest.FAILED);
+        assertThat(failed.getError()).isEqualTo("Insufficient funds on source card");
+
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("400.00");
+        assertThat(balance(targetCardId)).isEqualByComparingTo("600.00");
+        assertThat(asyncTransferService.processPending()).isZero();
+    }
+
+    @Test
+    void testProcessPending_ReclaimsStaleProcessing() {
+        TransferRequest request = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+        // Обработчик упал после захвата, не выполнив перевод
+        TransferRequest stored = transferRequestRepository.findById(request.getId()).orElseThrow();
+        stored.setStatus(TransferRequest.PROCESSING);
+        stored.setClaimedAt(Instant.now().minusSeconds(3600));
+        transferRequestRepository.save(stored);
+
+        assertThat(asyncTransferService.processPending()).isEqualTo(1);
+        assertThat(asyncTransferService.processPending()).isZero();
+
+        assertThat(asyncTransferService.getStatus(user.getId(), request.getId()).getStatus()).isEqualTo(TransferRequest.COMPLETED);
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("900.00");
+    }
+
+    @Test
+    void testProcessPending_FreshProcessingIsNotReclaimed() {
+        TransferRequest request = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+        TransferRequest stored = transferRequestRepository.findById(request.getId()).orElseThrow();
+        stored.setStatus(TransferRequest.PROCESSING);
+        stored.setClaimedAt(Instant.now());
+        transferRequestRepository.save(stored);
+
+        // Запрос выполняется другим обработчиком
+        assertThat(asyncTransferService.processPending()).isZero();
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void testProcessPending_PersistentDatabaseErrorFailsAfterMaxAttempts() {
+        doThrow(new DataIntegrityViolationException("constraint violated")).when(ledgerService).record(anyList());
+        TransferRequest request = asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+
+        // Первые попытки возвращают запрос в очередь, последняя помечает его FAILED
+        for (int attempt = 1; attempt < 3; attempt++) {
+            assertThat(asyncTransferService.processPending()).isEqualTo(1);
+            assertThat(transferRequestRepository.findById(request.getId()).orElseThrow().getStatus()).isEqualTo(TransferRequest.PENDING);
+        }
+        assertThat(asyncTransferService.processPending()).isEqualTo(1);
+        assertThat(asyncTransferService.processPending()).isZero();
+
+        TransferStatusDTO failed = asyncTransferService.getStatus(user.getId(), request.getId());
+        assertThat(failed.getStatus()).isEqualTo(TransferRequest.FAILED);
+        assertThat(failed.getError()).isEqualTo("Transfer could not be processed");
+        assertThat(transferRequestRepository.findById(request.getId()).orElseThrow().getAttempts()).isEqualTo(3);
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void testProcessPending_FailingRequestDoesNotStopBatch() {
+        doThrow(new DataIntegrityViolationException("constraint violated")).doCallRealMethod().when(ledgerService).record(anyList());
+        asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+        asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "100.00"));
+
+        assertThat(asyncTransferService.processPending()).isEqualTo(2);
+
+        // Один запрос выполнен в той же пачке, другой возвращен в очередь и выполнен следующей
+        assertThat(balance(targetCardId)).isEqualByComparingTo("100.00");
+        assertThat(asyncTransferService.processPending()).isEqualTo(1);
+        assertThat(transferRequestRepository.findAll()).allMatch(r -> TransferRequest.COMPLETED.equals(r.getStatus()));
+        assertThat(balance(targetCardId)).isEqualByComparingTo("200.00");
+    }
+
+    @Test
+    void testConcurrentWorkersApplyEachTransferOnce() {
+        for (int i = 0; i < 100; i++) {
+            asyncTransferService.submit(user.getId(), transfer(sourceCardId, targetCardId, "1.00"));
+        }
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            workers.add(CompletableFuture.runAsync(() -> {
+                while (asyncTransferService.processPending() > 0) {
+                    // Пока в очереди есть запросы
+                }
+            }));
+        }
+        workers.forEach(CompletableFuture::join);
+
+        assertThat(transferRequestRepository.findAll()).allMatch(r -> TransferRequest.COMPLETED.equals(r.getStatus()));
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("900.00");
+        assertThat(balance(targetCardId)).isEqualByComparingTo("100.00");
+        assertThat(cardTransactionRepository.findLatest(sourceCardId, Limit.unlimited())).hasSize(100);
+    }
+
+    private BigDecimal balance(Long cardId) {
+        return bankCardRepository.findById(cardId).orElseThrow().getBalance();
+    }
+
+    private Long saveCard(Users owner, String number, BigDecimal balance) {
+        BankCards card = new BankCards();
+        card.setCardNumber(number);
+        card.setMasked_card_number("**** **** **** " + number.substring(12));
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(balance);
+        card.setStatus("ACTIVE");
+        card.setUser(owner);
+        return bankCardRepository.save(card).getId();
+    }
+
+    private static TransferDTO transfer(Long source, Long target, String amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setSourceCardId(source);
+        dto.setTargetCardId(target);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
+}
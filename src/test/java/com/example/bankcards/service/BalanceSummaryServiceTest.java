@@ -0,0 +1,209 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AuthorizeHoldDTO;
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardHold;
+import com.example.bankcards.entity.UserBalanceSummary;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardHoldRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.UserBalanceSummaryRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Сводка балансов пользователя: после каждой операции совпадает с суммой по картам.
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.holds.expiry.enabled=false",
+        "app.fraud.enabled=false"
+})
+@Import(HoldService.class)
+class BalanceSummaryServiceTest {
+
+    @Autowired
+    private BalanceSummaryService balanceSummaryService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private CardNumberResolver cardNumberResolver;
+
+    @Autowired
+    private UserBalanceSummaryRepository userBalanceSummaryRepository;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private CardHoldRepository cardHoldRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    private Long aliceId;
+    private Long bobId;
+    private Long aliceCard;
+    private Long aliceSecondCard;
+    private Long bobCard;
+
+    @BeforeEach
+    void setUp() {
+        aliceId = usersRepository.save(new Users("alice", "password", "USER")).getId();
+        bobId = usersRepository.save(new Users("bob", "password", "USER")).getId();
+        aliceCard = createCard(aliceId, "4500000000000001", "1000.00");
+        aliceSecondCard = createCard(aliceId, "4500000000000002", "0.00");
+        bobCard = createCard(bobId, "4500000000000003", "1000.00");
+        for (String number : new String[]{"4500000000000001", "4500000000000002", "4500000000000003"}) {
+            cardNumberResolver.invalidate(number);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        userBalanceSummaryRepository.deleteAll();
+        cardHoldRepository.deleteAll();
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Изменения баланса ====================
+
+    @Test
+    void testTransferToOtherUser_UpdatesBothSummaries() {
+        userService.transferToCardNumber(aliceId, aliceCard, "4500000000000003", new BigDecimal("250.00"));
+
+        assertThat(summary(aliceId).getAvailable()).isEqualByComparingTo("750.00");
+        assertThat(summary(bobId).getAvailable()).isEqualByComparingTo("1250.00");
+        assertSummaryMatchesCards(aliceId);
+        assertSummaryMatchesCards(bobId);
+    }
+
+    @Test
+    void testOwnTransfer_LeavesSummaryUntouched() {
+        userService.transferBetweenOwnCards(aliceId, aliceCard, aliceSecondCard, new BigDecimal("100.00"));
+
+        assertThat(userBalanceSummaryRepository.findById(aliceId)).isEmpty();
+        assertThat(balanceSummaryService.getBalance(aliceId).getAvailable()).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void testHold_MovesAvailableToHeldAndBack() {
+        CardHold hold = holdService.authorize(holdRequest("300.00"));
+        assertThat(summary(aliceId).getAvailable()).isEqualByComparingTo("700.00");
+        assertThat(summary(aliceId).getHeld()).isEqualByComparingTo("300.00");
+
+        holdService.capture(hold.getId(), new BigDecimal("100.00"));
+
+        assertThat(summary(aliceId).getAvailable()).isEqualByComparingTo("900.00");
+        assertThat(summary(aliceId).getHeld()).isEqualByComparingTo("0.00");
+        assertSummaryMatchesCards(aliceId);
+    }
+
+    @Test
+    void testConcurrentTransfersBothWays_SummariesConsistent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        try {
+            for (int i = 0; i < 40; i++) {
+                boolean fromAlice = i % 2 == 0;
+                executor.submit(() -> {
+                    start.await();
+                    try {
+                        if (fromAlice) {
+                            userService.transferToCardNumber(aliceId, aliceCard, "4500000000000003", new BigDecimal("5.00"));
+                        } else {
+                            userService.transferToCardNumber(bobId, bobCard, "4500000000000002", new BigDecimal("3.00"));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        }
+
+        assertThat(failures).isEmpty();
+        assertSummaryMatchesCards(aliceId);
+        assertSummaryMatchesCards(bobId);
+    }
+
+    // ==================== Сверка ====================
+
+    @Test
+    void testReconcile_RepairsDriftAndCreatesMissingRows() {
+        userService.transferToCardNumber(aliceId, aliceCard, "4500000000000003", new BigDecimal("100.00"));
+        UserBalanceSummary corrupted = summary(aliceId);
+        corrupted.setAvailable(new BigDecimal("1.00"));
+        userBalanceSummaryRepository.save(corrupted);
+        userBalanceSummaryRepository.deleteById(bobId);
+
+        assertThat(balanceSummaryService.reconcile()).isEqualTo(2);
+
+        assertSummaryMatchesCards(aliceId);
+        assertSummaryMatchesCards(bobId);
+        assertThat(balanceSummaryService.reconcile()).isZero();
+    }
+
+    private UserBalanceSummary summary(Long userId) {
+        return userBalanceSummaryRepository.findById(userId).orElseThrow();
+    }
+
+    private void assertSummaryMatchesCards(Long userId) {
+        BalanceDTO actual = bankCardRepository.sumBalancesByUserId(userId);
+        UserBalanceSummary summary = summary(userId);
+        assertThat(summary.getAvailable()).isEqualByComparingTo(actual.getAvailable());
+        assertThat(summary.getHeld()).isEqualByComparingTo(actual.getHeld());
+    }
+
+    private AuthorizeHoldDTO holdRequest(String amount) {
+        AuthorizeHoldDTO request = new AuthorizeHoldDTO();
+        request.setCardNumber("4500000000000001");
+        request.setAmount(new BigDecimal(amount));
+        request.setMerchant("Hotel");
+        return request;
+    }
+
+    private Long createCard(Long userId, String number, String balance) {
+        BankCards card = new BankCards();
+        card.setCardNumber(number);
+        card.setMasked_card_number("**** **** **** " + number.substring(12));
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(new BigDecimal(balance));
+        card.setStatus("ACTIVE");
+        card.setUser(usersRepository.findById(userId).orElseThrow());
+        return bankCardRepository.save(card).getId();
+    }
+}
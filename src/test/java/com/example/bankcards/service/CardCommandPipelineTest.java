@@ -0,0 +1,226 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardTransaction;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.UsersRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Переводы через однопоточные шарды: групповой коммит не должен терять и дублировать изменения,
+ * а ошибка одной команды в пачке - откатывать соседние.
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.transfers.pipeline.enabled=true",
+        "app.transfers.pipeline.shards=4"
+})
+class CardCommandPipelineTest {
+
+    private static final int CARDS = 4;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Autowired
+    private CardCommandPipeline cardCommandPipeline;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Long userId;
+    private final List<Long> cardIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Users user = usersRepository.save(new Users("pipeline-user", "password", "USER"));
+        userId = user.getId();
+        for (int i = 0; i < CARDS; i++) {
+            BankCards card = new BankCards();
+            card.setCardNumber("410000000000000" + i);
+            card.setMasked_card_number("**** **** **** 000" + i);
+            card.setExpiryDate(LocalDate.now().plusYears(3));
+            card.setBalance(INITIAL_BALANCE);
+            card.setStatus("ACTIVE");
+            card.setUser(user);
+            cardIds.add(bankCardRepository.save(card).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Групповой коммит ====================
+
+    @Test
+    void testConcurrentTransfersConserveMoney() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 800; i++) {
+            int from = random.nextInt(CARDS);
+            int to = (from + 1 + random.nextInt(CARDS - 1)) % CARDS;
+            BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 30000), 2);
+            futures.add(userService.submitTransfer(userId, cardIds.get(from), cardIds.get(to), amount));
+        }
+
+        int completed = 0;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(2, TimeUnit.MINUTES);
+                completed++;
+            } catch (Exception e) {
+                // Допустима только нехватка средств
+                assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+            }
+        }
+
+        List<BankCards> cards = bankCardRepository.findAllById(cardIds);
+        BigDecimal total = cards.stream().map(BankCards::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertThat(total).isEqualByComparingTo(INITIAL_BALANCE.multiply(BigDecimal.valueOf(CARDS)));
+        assertThat(cards).allMatch(card -> card.getBalance().signum() >= 0);
+        // Две записи журнала на каждый выполненный перевод
+        long entries = cardIds.stream()
+                .mapToLong(id -> cardTransactionRepository.findLatest(id, Limit.unlimited()).size())
+                .sum();
+        assertThat(entries).isEqualTo(2L * completed);
+    }
+
+    @Test
+    void testFailedCommandDoesNotRollBackNeighbours() {
+        Long source = cardIds.get(0);
+        Long target = cardIds.get(1);
+
+        // Один шард (общая пара карт): вторая команда падает посреди пачки
+        CompletableFuture<Void> first = userService.submitTransfer(userId, source, target, new BigDecimal("600.00"));
+        CompletableFuture<Void> second = userService.submitTransfer(userId, source, target, new BigDecimal("600.00"));
+        CompletableFuture<Void> third = userService.submitTransfer(userId, source, target, new BigDecimal("400.00"));
+
+        assertThatCode(first::join).doesNotThrowAnyException();
+        assertThatThrownBy(second::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(InsufficientFundsException.class);
+        assertThatCode(third::join).doesNotThrowAnyException();
+
+        assertThat(bankCardRepository.findById(source).orElseThrow().getBalance()).isEqualByComparingTo("0.00");
+        assertThat(bankCardRepository.findById(target).orElseThrow().getBalance()).isEqualByComparingTo("2000.00");
+        assertThat(cardTransactionRepository.findLatest(source, Limit.unlimited()))
+                .extracting(CardTransaction::getAmount)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactlyInAnyOrder(new BigDecimal("-600.00"), new BigDecimal("-400.00"));
+    }
+
+    @Test
+    void testSynchronousTransferRethrowsCommandException() {
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, cardIds.get(0), cardIds.get(1), new BigDecimal("5000.00")))
+                .isInstanceOf(InsufficientFundsException.class)
+                .hasMessage("Insufficient funds on source card");
+    }
+
+    @Test
+    void testHotCardAcrossShardsWithoutGroupFailures() {
+        // Карта с наибольшим id: ее переводы уходят в шарды всех контрагентов
+        Long hot = cardIds.get(CARDS - 1);
+        double failedBefore = meterRegistry.get("cards.pipeline.group.failed").counter().count();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            Long other = cardIds.get(i % (CARDS - 1));
+            futures.add(i % 2 == 0
+                    ? userService.submitTransfer(userId, hot, other, new BigDecimal("1.00"))
+                    : userService.submitTransfer(userId, other, hot, new BigDecimal("1.00")));
+        }
+
+        futures.forEach(CompletableFuture::join);
+
+        // Карты группы блокируются заранее в порядке id - взаимных блокировок шардов нет
+        assertThat(meterRegistry.get("cards.pipeline.group.failed").counter().count()).isEqualTo(failedBefore);
+        assertThat(bankCardRepository.findById(hot).orElseThrow().getBalance()).isEqualByComparingTo(INITIAL_BALANCE);
+    }
+
+    @Test
+    void testConflictedCommandRerunBeforeFollowingCommands() {
+        Long source = cardIds.get(0);
+        Long target = cardIds.get(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // Занимаем шард, чтобы следующие команды попали в одну пачку
+        CompletableFuture<Void> blocker = cardCommandPipeline.submit(List.of(source, target), () -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        AtomicInteger attempts = new AtomicInteger();
+        CompletableFuture<Void> conflicted = cardCommandPipeline.submit(List.of(source, target), () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new OptimisticLockingFailureException("Card was modified concurrently");
+            }
+            userService.applyTransfer(userId, source, target, new BigDecimal("600.00"));
+            return null;
+        });
+        CompletableFuture<Void> next = userService.submitTransfer(userId, source, target, new BigDecimal("600.00"));
+        release.countDown();
+
+        // Повтор конфликтной команды выполняется раньше следующей: денег хватает только ей
+        assertThatCode(blocker::join).doesNotThrowAnyException();
+        assertThatCode(conflicted::join).doesNotThrowAnyException();
+        assertThatThrownBy(next::join).hasCauseInstanceOf(InsufficientFundsException.class);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(bankCardRepository.findById(source).orElseThrow().getBalance()).isEqualByComparingTo("400.00");
+    }
+
+    @Test
+    void testForeignCardRejectedBeforeQueueing() {
+        Users stranger = usersRepository.save(new Users("pipeline-stranger", "password", "USER"));
+        BankCards foreign = new BankCards();
+        foreign.setCardNumber("4199999999999999");
+        foreign.setMasked_card_number("**** **** **** 9999");
+        foreign.setExpiryDate(LocalDate.now().plusYears(3));
+        foreign.setBalance(INITIAL_BALANCE);
+        foreign.setStatus("ACTIVE");
+        foreign.setUser(stranger);
+        Long foreignId = bankCardRepository.save(foreign).getId();
+
+        assertThatThrownBy(userService.submitTransfer(userId, foreignId, cardIds.get(0), new BigDecimal("1.00"))::join)
+                .hasCauseInstanceOf(CardNotFoundException.class);
+        assertThat(bankCardRepository.findById(foreignId).orElseThrow().getBalance()).isEqualByComparingTo(INITIAL_BALANCE);
+    }
+}
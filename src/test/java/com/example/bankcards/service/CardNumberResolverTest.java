@@ -0,0 +1,79 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.BankCardRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CardNumberResolverTest {
+
+    @Mock
+    private BankCardRepository bankCardRepository;
+
+    private CardNumberResolver resolver;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        resolver = new CardNumberResolver(bankCardRepository, 100, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testResolve_KnownNumberCached() {
+        when(bankCardRepository.findIdByCardNumber("4000000000000001")).thenReturn(Optional.of(1L));
+
+        assertThat(resolver.resolve("4000000000000001")).contains(1L);
+        assertThat(resolver.resolve("4000000000000001")).contains(1L);
+
+        verify(bankCardRepository, times(1)).findIdByCardNumber("4000000000000001");
+    }
+
+    @Test
+    void testResolve_UnknownNumberCachedNegatively() {
+        when(bankCardRepository.findIdByCardNumber("4000000000000099")).thenReturn(Optional.empty());
+
+        assertThat(resolver.resolve("4000000000000099")).isEmpty();
+        assertThat(resolver.resolve("4000000000000099")).isEmpty();
+
+        verify(bankCardRepository, times(1)).findIdByCardNumber("4000000000000099");
+    }
+
+    @Test
+    void testInvalidate_CreatedCardBecomesVisible() {
+        when(bankCardRepository.findIdByCardNumber("4000000000000099")).thenReturn(Optional.empty());
+        resolver.resolve("4000000000000099");
+
+        // Карта создана администратором
+        when(bankCardRepository.findIdByCardNumber("4000000000000099")).thenReturn(Optional.of(99L));
+        resolver.invalidate("4000000000000099");
+
+        assertThat(resolver.resolve("4000000000000099")).contains(99L);
+    }
+
+    @Test
+    void testInvalidate_InsideTransactionAppliedAfterCompletion() {
+        when(bankCardRepository.findIdByCardNumber("4000000000000099")).thenReturn(Optional.empty());
+        resolver.resolve("4000000000000099");
+        when(bankCardRepository.findIdByCardNumber("4000000000000099")).thenReturn(Optional.of(99L));
+
+        TransactionSynchronizationManager.initSynchronization();
+        resolver.invalidate("4000000000000099");
+        // До коммита номер все еще считается несуществующим
+        assertThat(resolver.resolve("4000000000000099")).isEmpty();
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+        assertThat(resolver.resolve("4000000000000099")).contains(99L);
+    }
+}
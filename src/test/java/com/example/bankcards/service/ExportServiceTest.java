@@ -0,0 +1,140 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.UsersRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Выгрузка читается курсором с маленьким fetch size, чтобы пройти несколько порций строк.
+ */
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "app.export.fetch-size=2"
+})
+@Import(ExportService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ExportServiceTest {
+
+    private static final int CARDS = 5;
+
+    @Autowired
+    private ExportService exportService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        Users user = usersRepository.save(new Users("export,\"user\"", "secret-password", "USER"));
+        for (int i = 0; i < CARDS; i++) {
+            BankCards card = new BankCards();
+            card.setCardNumber("460000000000000" + i);
+            card.setMasked_card_number("**** **** **** 000" + i);
+            card.setExpiryDate(LocalDate.of(2030, 1, 31));
+            card.setBalance(new BigDecimal("100.50"));
+            card.setStatus("ACTIVE");
+            card.setUser(user);
+            bankCardRepository.save(card);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    @Test
+    void testExportCards_NdjsonOneObjectPerLineWithMaskedNumbers() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.exportCards(ExportService.Format.NDJSON, out);
+
+        String body = out.toString(StandardCharsets.UTF_8);
+        String[] lines = body.split("\n");
+        assertThat(rows).isEqualTo(CARDS);
+        assertThat(lines).hasSize(CARDS);
+        List<Long> ids = new ArrayList<>();
+        for (String line : lines) {
+            JsonNode card = objectMapper.readTree(line);
+            ids.add(card.get("id").asLong());
+            assertThat(card.get("maskedNumber").asText()).startsWith("**** **** ****");
+            assertThat(card.get("balance").decimalValue()).isEqualByComparingTo("100.50");
+            assertThat(card.get("expiryDate").asText()).isEqualTo("2030-01-31");
+        }
+        assertThat(ids).isSorted();
+        assertThat(body).doesNotContain("4600000000000000");
+    }
+
+    @Test
+    void testExportUsers_GzipCsvEscapedWithoutPasswords() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.exportUsers(ExportService.Format.CSV, out);
+
+        String csv;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            csv = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\r\n");
+        assertThat(rows).isEqualTo(1);
+        assertThat(lines[0]).isEqualTo("id,username,role");
+        assertThat(lines[1]).endsWith(",\"export,\"\"user\"\"\",USER");
+        assertThat(csv).doesNotContain("secret-password");
+    }
+
+    @Test
+    void testExportUsers_FormulaCellsNeutralized() throws Exception {
+        usersRepository.save(new Users("=HYPERLINK(\"http://evil\",\"x\")", "password", "USER"));
+        usersRepository.save(new Users("@SUM(1+1)", "password", "USER"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportUsers(ExportService.Format.CSV, out);
+
+        String csv;
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            csv = new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertThat(csv).contains(",\"'=HYPERLINK(\"\"http://evil\"\",\"\"x\"\")\",USER")
+                .contains(",'@SUM(1+1),USER")
+                .doesNotContain(",=").doesNotContain(",@");
+    }
+
+    @Test
+    void testFormat_UnknownRejected() {
+        assertThat(ExportService.Format.parse("csv")).isEqualTo(ExportService.Format.CSV);
+        assertThatThrownBy(() -> ExportService.Format.parse("xml"))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Unsupported export format: xml");
+    }
+}
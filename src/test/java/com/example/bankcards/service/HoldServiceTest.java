@@ -0,0 +1,214 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AuthorizeHoldDTO;
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.dto.CardHoldDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardHold;
+import com.example.bankcards.entity.CardTransaction;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardHoldRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Предавторизации: истечение запускается вручную с заданным временем (поток истечения выключен).
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.holds.ttl=1h",
+        "app.holds.expiry.enabled=false"
+})
+@Import(HoldService.class)
+class HoldServiceTest {
+
+    private static final String CARD_NUMBER = "4400000000000001";
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CardNumberResolver cardNumberResolver;
+
+    @Autowired
+    private CardHoldRepository cardHoldRepository;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    private Users user;
+    private Long cardId;
+
+    @BeforeEach
+    void setUp() {
+        holdService.reset();
+        user = usersRepository.save(new Users("hold-user", "password", "USER"));
+        BankCards card = new BankCards();
+        card.setCardNumber(CARD_NUMBER);
+        card.setMasked_card_number("**** **** **** 0001");
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(new BigDecimal("1000.00"));
+        card.setStatus("ACTIVE");
+        card.setUser(user);
+        cardId = bankCardRepository.save(card).getId();
+        // Карта пересоздается в каждом тесте с тем же номером
+        cardNumberResolver.invalidate(CARD_NUMBER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardHoldRepository.deleteAll();
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Авторизация ====================
+
+    @Test
+    void testAuthorize_MovesFundsFromAvailableToHeld() {
+        CardHold hold = holdService.authorize(request("300.00"));
+
+        assertThat(hold.getStatus()).isEqualTo(CardHold.AUTHORIZED);
+        assertThat(hold.getUserId()).isEqualTo(user.getId());
+        BalanceDTO balance = userService.getCardBalance(user.getId(), cardId);
+        assertThat(balance.getAvailable()).isEqualByComparingTo("700.00");
+        assertThat(balance.getHeld()).isEqualByComparingTo("300.00");
+        BalanceDTO total = userService.getTotalBalanceByUserId(user.getId());
+        assertThat(total.getAvailable()).isEqualByComparingTo("700.00");
+        assertThat(total.getHeld()).isEqualByComparingTo("300.00");
+    }
+
+    @Test
+    void testAuthorize_HeldFundsNotAvailableForTransfers() {
+        holdService.authorize(request("800.00"));
+
+        assertThatThrownBy(() -> holdService.authorize(request("300.00")))
+                .isInstanceOf(InsufficientFundsException.class);
+        assertThat(cardHoldRepository.count()).isEqualTo(1);
+    }
+
+    // ==================== Capture / void ====================
+
+    @Test
+    void testCapture_PartialReturnsRemainderAndRecordsLedger() {
+        CardHold hold = holdService.authorize(request("300.00"));
+
+        CardHoldDTO captured = holdService.capture(hold.getId(), new BigDecimal("120.00"));
+
+        assertThat(captured.getStatus()).isEqualTo(CardHold.CAPTURED);
+        BalanceDTO balance = userService.getCardBalance(user.getId(), cardId);
+        assertThat(balance.getAvailable()).isEqualByComparingTo("880.00");
+        assertThat(balance.getHeld()).isEqualByComparingTo("0.00");
+        assertThat(cardTransactionRepository.findLatest(cardId, Limit.unlimited()))
+                .singleElement()
+                .satisfies(entry -> {
+                    assertThat(entry.getType()).isEqualTo(CardTransaction.CAPTURE);
+                    assertThat(entry.getAmount()).isEqualByComparingTo("-120.00");
+                });
+        // Повторное закрытие холда невозможно
+        assertThatThrownBy(() -> holdService.voidHold(hold.getId()))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Hold is not authorized");
+    }
+
+    @Test
+    void testCapture_MoreThanHeldRejected() {
+        CardHold hold = holdService.authorize(request("300.00"));
+
+        assertThatThrownBy(() -> holdService.capture(hold.getId(), new BigDecimal("300.01")))
+                .isInstanceOf(ValidationException.class);
+        assertThat(userService.getCardBalance(user.getId(), cardId).getHeld()).isEqualByComparingTo("300.00");
+    }
+
+    @Test
+    void testVoid_ReleasesWholeHold() {
+        CardHold hold = holdService.authorize(request("300.00"));
+
+        holdService.voidHold(hold.getId());
+
+        BalanceDTO balance = userService.getCardBalance(user.getId(), cardId);
+        assertThat(balance.getAvailable()).isEqualByComparingTo("1000.00");
+        assertThat(balance.getHeld()).isEqualByComparingTo("0.00");
+        assertThat(cardHoldRepository.findById(hold.getId()).orElseThrow().getStatus()).isEqualTo(CardHold.VOIDED);
+    }
+
+    // ==================== Истечение ====================
+
+    @Test
+    void testTick_ReleasesExpiredHoldOnce() {
+        Instant now = Instant.now();
+        CardHold hold = holdService.authorize(request("300.00"));
+        holdService.tick(now);
+
+        assertThat(holdService.tick(now.plus(Duration.ofMinutes(30)))).isZero();
+        assertThat(holdService.tick(hold.getExpiresAt().plusSeconds(1))).isEqualTo(1);
+        assertThat(holdService.tick(hold.getExpiresAt().plusSeconds(2))).isZero();
+
+        BalanceDTO balance = userService.getCardBalance(user.getId(), cardId);
+        assertThat(balance.getAvailable()).isEqualByComparingTo("1000.00");
+        assertThat(balance.getHeld()).isEqualByComparingTo("0.00");
+        assertThat(cardHoldRepository.findById(hold.getId()).orElseThrow().getStatus()).isEqualTo(CardHold.EXPIRED);
+    }
+
+    @Test
+    void testTick_CapturedHoldNotReleased() {
+        Instant now = Instant.now();
+        CardHold hold = holdService.authorize(request("300.00"));
+        holdService.tick(now);
+        holdService.capture(hold.getId(), null);
+
+        assertThat(holdService.tick(hold.getExpiresAt().plusSeconds(1))).isZero();
+
+        assertThat(userService.getCardBalance(user.getId(), cardId).getAvailable()).isEqualByComparingTo("700.00");
+    }
+
+    @Test
+    void testTick_HoldOfDeletedCardSettledOnce() {
+        Instant now = Instant.now();
+        CardHold hold = holdService.authorize(request("300.00"));
+        holdService.tick(now);
+        bankCardRepository.deleteById(cardId);
+
+        holdService.tick(hold.getExpiresAt().plusSeconds(1));
+
+        // Холд закрыт и больше не выбирается из БД при чтении следующих окон
+        assertThat(cardHoldRepository.findById(hold.getId()).orElseThrow().getStatus()).isEqualTo(CardHold.EXPIRED);
+        assertThat(cardHoldRepository.findExpiring(hold.getExpiresAt().plus(Duration.ofDays(1)), Instant.EPOCH, "", Limit.unlimited()))
+                .isEmpty();
+    }
+
+    private AuthorizeHoldDTO request(String amount) {
+        AuthorizeHoldDTO request = new AuthorizeHoldDTO();
+        request.setCardNumber(CARD_NUMBER);
+        request.setAmount(new BigDecimal(amount));
+        request.setMerchant("Coffee Shop");
+        return request;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.entity.IdempotencyRecord;
+import com.example.bankcards.repository.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    // Операция по reference не найдена - перехваченный ключ выполняет ее заново
+    private static final Function<String, Optional<ResponseEntity<?>>> NOT_APPLIED = reference -> Optional.empty();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(idempotencyRecordRepository.findById(anyString())).thenReturn(Optional.empty());
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                1000, Duration.ofHours(24), Duration.ofSeconds(5), Duration.ofMinutes(1));
+    }
+
+    private TransferDTO transfer(String amount) {
+        TransferDTO transfer = new TransferDTO();
+        transfer.setSourceCardId(10L);
+        transfer.setTargetCardId(20L);
+        transfer.setAmount(new BigDecimal(amount));
+        return transfer;
+    }
+
+    // Хэш запроса, который сервис записывает при захвате ключа
+    private String requestHash(TransferDTO request) {
+        IdempotencyRecordRepository repository = mock(IdempotencyRecordRepository.class);
+        when(repository.findById(anyString())).thenReturn(Optional.empty());
+        new IdempotencyService(repository, objectMapper, 10, Duration.ofHours(24), Duration.ofSeconds(5), Duration.ofMinutes(1))
+                .execute(1L, "transfer", "hash", request, NOT_APPLIED, reference -> ResponseEntity.ok(Map.of()));
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        verify(repository).claim(anyString(), hash.capture(), any(), any());
+        return hash.getValue();
+    }
+
+    @Test
+    void testReplayDoesNotExecuteTwice() {
+        AtomicInteger executions = new AtomicInteger();
+        TransferDTO request = transfer("50.00");
+
+        ResponseEntity<?> first = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "Transfer completed successfully"));
+        });
+        ResponseEntity<?> second = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "again"));
+        });
+
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(((JsonNode) second.getBody()).get("message").asText()).isEqualTo("Transfer completed successfully");
+        verify(idempotencyRecordRepository, times(1)).claim(eq("1:transfer:key-1"), anyString(), any(Instant.class), anyString());
+        verify(idempotencyRecordRepository, times(1)).complete(eq("1:transfer:key-1"), eq(200), anyString());
+    }
+
+    @Test
+    void testConcurrentDuplicatesWaitForSingleExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TransferDTO request = transfer("50.00");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        Future<ResponseEntity<?>> first = executor.submit(() -> idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return ResponseEntity.ok(Map.of("message", "done"));
+        }));
+        started.await();
+        Future<ResponseEntity<?>> duplicate = executor.submit(() -> idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "duplicate"));
+        }));
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        ResponseEntity<?> replayed = duplicate.get(5, TimeUnit.SECONDS);
+        assertThat(((JsonNode) replayed.getBody()).get("message").asText()).isEqualTo("done");
+        assertThat(executions.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    void testReplayFromDatabaseAfterCacheMiss() throws Exception {
+        TransferDTO request = transfer("50.00");
+        // Ответ сохранен другим инстансом: сначала узнаем хэш запроса, записав его через первый сервис
+        idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "stored")));
+        ArgumentCaptor<String> hash = ArgumentCaptor.forClass(String.class);
+        verify(idempotencyRecordRepository).claim(eq("1:transfer:key-1"), hash.capture(), any(), any());
+
+        IdempotencyService otherInstance = new IdempotencyService(idempotencyRecordRepository, objectMapper,
+                1000, Duration.ofHours(24), Duration.ofSeconds(5), Duration.ofMinutes(1));
+        when(idempotencyRecordRepository.findById("1:transfer:key-1")).thenReturn(Optional.of(
+                new IdempotencyRecord("1:transfer:key-1", hash.getValue(), 200, "{\"message\":\"stored\"}", Instant.now())));
+
+        ResponseEntity<?> replayed = otherInstance.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            throw new AssertionError("Must not execute the transfer again");
+        });
+
+        assertThat(((JsonNode) replayed.getBody()).get("message").asText()).isEqualTo("stored");
+    }
+
+    @Test
+    void testSameKeyWithDifferentRequestRejected() {
+        idempotencyService.execute(1L, "transfer", "key-1", transfer("50.00"), NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "done")));
+
+        ResponseEntity<?> response = idempotencyService.execute(1L, "transfer", "key-1", transfer("99.00"),
+                NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "other")));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @Test
+    void testTransientFailureIsNotRemembered() {
+        AtomicInteger executions = new AtomicInteger();
+        TransferDTO request = transfer("50.00");
+
+        idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "retry"));
+        });
+        ResponseEntity<?> retried = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "done"));
+        });
+
+        assertThat(executions.get()).isEqualTo(2);
+        assertThat(retried.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(idempotencyRecordRepository, times(1)).release("1:transfer:key-1");
+    }
+
+    @Test
+    void testKeysAreScopedPerUser() {
+        AtomicInteger executions = new AtomicInteger();
+        TransferDTO request = transfer("50.00");
+
+        idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "user1"));
+        });
+        idempotencyService.execute(2L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "user2"));
+        });
+
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testKeysAreScopedPerOperation() {
+        TransferDTO request = transfer("50.00");
+
+        idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "sync")));
+        ResponseEntity<?> queued = idempotencyService.execute(1L, "transfer.async", "key-1", request,
+                NOT_APPLIED, reference -> ResponseEntity.accepted().body(Map.of("transferId", "t-1")));
+
+        // Тот же ключ и то же тело на другом эндпоинте не возвращают ответ синхронного перевода
+        assertThat(queued.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+        assertThat(queued.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isNull();
+        verify(idempotencyRecordRepository).claim(eq("1:transfer.async:key-1"), anyString(), any(Instant.class), anyString());
+    }
+
+    @Test
+    void testFailedClaimDoesNotBlockRetries() {
+        doThrow(new DataAccessResourceFailureException("connection reset"))
+                .doReturn(1)
+                .when(idempotencyRecordRepository).claim(anyString(), anyString(), any(Instant.class), anyString());
+        TransferDTO request = transfer("50.00");
+
+        assertThatThrownBy(() -> idempotencyService.execute(1L, "transfer", "key-1", request,
+                NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "done"))))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+        ResponseEntity<?> retried = idempotencyService.execute(1L, "transfer", "key-1", request,
+                NOT_APPLIED, reference -> ResponseEntity.ok(Map.of("message", "done")));
+
+        // Повтор выполняется сразу, а не ждет wait-timeout и не получает 409
+        assertThat(retried.getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+    @Test
+    void testUnpersistedResponseStillReplayedFromMemory() {
+        when(idempotencyRecordRepository.complete(anyString(), anyInt(), any())).thenThrow(new DataAccessResourceFailureException("down"));
+        AtomicInteger executions = new AtomicInteger();
+        TransferDTO request = transfer("50.00");
+
+        ResponseEntity<?> first = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "done"));
+        });
+        ResponseEntity<?> second = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executions.incrementAndGet();
+            return ResponseEntity.ok(Map.of("message", "again"));
+        });
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER)).isEqualTo("true");
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testAbandonedClaimTakenOver() {
+        TransferDTO request = transfer("50.00");
+        String hash = requestHash(request);
+        Instant claimedAt = Instant.now().minus(Duration.ofMinutes(5));
+        when(idempotencyRecordRepository.findById("1:transfer:key-1")).thenReturn(Optional.of(
+                new IdempotencyRecord("1:transfer:key-1", hash, null, null, claimedAt, "ref-1")));
+        when(idempotencyRecordRepository.takeOver(eq("1:transfer:key-1"), eq("ref-1"), any(Instant.class), any(Instant.class))).thenReturn(1);
+        AtomicReference<String> executedWith = new AtomicReference<>();
+
+        ResponseEntity<?> response = idempotencyService.execute(1L, "transfer", "key-1", request, NOT_APPLIED, reference -> {
+            executedWith.set(reference);
+            return ResponseEntity.ok(Map.of("message", "done"));
+        });
+
+        // Операция не была зафиксирована - выполняется заново с прежним reference
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(executedWith.get()).isEqualTo("ref-1");
+        verify(idempotencyRecordRepository, times(1)).complete(eq("1:transfer:key-1"), eq(200), anyString());
+    }
+
+    @Test
+    void testAbandonedClaimOfCommittedOperationNotExecutedAgain() {
+        TransferDTO request = transfer("50.00");
+        String hash = requestHash(request);
+        Instant claimedAt = Instant.now().minus(Duration.ofMinutes(5));
+        when(idempotencyRecordRepository.findById("1:transfer:key-1")).thenReturn(Optional.of(
+                new IdempotencyRecord("1:transfer:key-1", hash, null, null, claimedAt, "ref-1")));
+        when(idempotencyRecordRepository.takeOver(eq("1:transfer:key-1"), eq("ref-1"), any(Instant.class), any(Instant.class))).thenReturn(1);
+
+        // Прежний владелец зафиксировал перевод и упал до записи ответа
+        ResponseEntity<?> response = idempotencyService.execute(1L, "transfer", "key-1", request,
+                reference -> "ref-1".equals(reference) ? Optional.of(ResponseEntity.ok(Map.of("message", "recovered"))) : Optional.empty(),
+                reference -> {
+                    throw new AssertionError("Must not execute a committed transfer again");
+                });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(idempotencyRecordRepository, times(1)).complete("1:transfer:key-1", 200, "{\"message\":\"recovered\"}");
+    }
+
+    @Test
+    void testAbandonedClaimOfDifferentRequestNotTakenOver() {
+        Instant claimedAt = Instant.now().minus(Duration.ofMinutes(5));
+        when(idempotencyRecordRepository.findById("1:transfer:key-1")).thenReturn(Optional.of(
+                new IdempotencyRecord("1:transfer:key-1", "other-hash", null, null, claimedAt, "ref-1")));
+
+        ResponseEntity<?> response = idempotencyService.execute(1L, "transfer", "key-1", transfer("50.00"), NOT_APPLIED, reference -> {
+            throw new AssertionError("Must not execute another request's key");
+        });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        verify(idempotencyRecordRepository, never()).takeOver(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void testFreshClaimOfAnotherInstanceInProgress() {
+        when(idempotencyRecordRepository.findById("1:transfer:key-1")).thenReturn(Optional.of(
+                new IdempotencyRecord("1:transfer:key-1", "other-hash", null, null, Instant.now())));
+
+        ResponseEntity<?> response = idempotencyService.execute(1L, "transfer", "key-1", transfer("50.00"), NOT_APPLIED, reference -> {
+            throw new AssertionError("Must not execute while another instance holds the key");
+        });
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        verify(idempotencyRecordRepository, never()).takeOver(anyString(), anyString(), any(), any());
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CreateScheduledTransferDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.ScheduledTransfer;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.ScheduledTransferRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Движок регулярных переводов: тики вызываются вручную с заданным временем (engine выключен, workers=0).
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.transfers.scheduled.enabled=false",
+        "app.transfers.scheduled.workers=0",
+        "app.transfers.scheduled.window=1h"
+})
+@Import(ScheduledTransferService.class)
+class ScheduledTransferServiceTest {
+
+    @Autowired
+    private ScheduledTransferService scheduledTransferService;
+
+    @Autowired
+    private ScheduledTransferRepository scheduledTransferRepository;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    private Users user;
+    private Long sourceCardId;
+    private Long targetCardId;
+
+    @BeforeEach
+    void setUp() {
+        scheduledTransferService.reset();
+        user = usersRepository.save(new Users("scheduled-user", "password", "USER"));
+        sourceCardId = saveCard(user, "4300000000000001", new BigDecimal("1000.00"));
+        targetCardId = saveCard(user, "4300000000000002", BigDecimal.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduledTransferRepository.deleteAll();
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Создание ====================
+
+    @Test
+    void testCreate_InvalidPeriodRejected() {
+        assertThatThrownBy(() -> scheduledTransferService.create(user.getId(), request("100.00", "monthly", null)))
+                .isInstanceOf(ValidationException.class);
+        assertThatThrownBy(() -> scheduledTransferService.create(user.getId(), request("100.00", "P0D", null)))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Period must be positive");
+    }
+
+    // ==================== Выполнение ====================
+
+    @Test
+    void testTick_FiresOnceAndAdvancesToNextPeriod() {
+        Instant now = Instant.now();
+        Instant startAt = now.plusSeconds(5).truncatedTo(ChronoUnit.SECONDS);
+        ScheduledTransfer transfer = scheduledTransferService.create(user.getId(), request("100.00", "P1D", startAt));
+
+        assertThat(scheduledTransferService.tick(now)).isZero();
+        assertThat(scheduledTransferService.tick(startAt.plusSeconds(1))).isEqualTo(1);
+        // Повторный тик в то же время - запуск уже выполнен
+        assertThat(scheduledTransferService.tick(startAt.plusSeconds(2))).isZero();
+
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("900.00");
+        assertThat(balance(targetCardId)).isEqualByComparingTo("100.00");
+        ScheduledTransfer saved = scheduledTransferRepository.findById(transfer.getId()).orElseThrow();
+        assertThat(saved.getNextRunAt()).isEqualTo(startAt.plus(Duration.ofDays(1)));
+        assertThat(saved.getLastError()).isNull();
+    }
+
+    @Test
+    void testTick_InsufficientFundsRecordedAndSkippedToNextPeriod() {
+        Instant now = Instant.now();
+        Instant startAt = now.plusSeconds(5).truncatedTo(ChronoUnit.SECONDS);
+        ScheduledTransfer transfer = scheduledTransferService.create(user.getId(), request("5000.00", "P1W", startAt));
+
+        scheduledTransferService.tick(now);
+        scheduledTransferService.tick(startAt.plusSeconds(1));
+
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("1000.00");
+        ScheduledTransfer saved = scheduledTransferRepository.findById(transfer.getId()).orElseThrow();
+        assertThat(saved.getLastError()).isEqualTo("Insufficient funds on source card");
+        assertThat(saved.getNextRunAt()).isEqualTo(startAt.plus(Duration.ofDays(7)));
+        assertThat(saved.getStatus()).isEqualTo(ScheduledTransfer.ACTIVE);
+    }
+
+    @Test
+    void testTick_CancelledTransferNotFired() {
+        Instant now = Instant.now();
+        Instant startAt = now.plusSeconds(5).truncatedTo(ChronoUnit.SECONDS);
+        ScheduledTransfer transfer = scheduledTransferService.create(user.getId(), request("100.00", "P1D", startAt));
+        scheduledTransferService.tick(now);
+
+        // Запуск уже в колесе - пропускается по статусу
+        scheduledTransferService.cancel(user.getId(), transfer.getId());
+        scheduledTransferService.tick(startAt.plusSeconds(1));
+
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("1000.00");
+        assertThat(scheduledTransferRepository.findById(transfer.getId()).orElseThrow().getStatus())
+                .isEqualTo(ScheduledTransfer.CANCELLED);
+    }
+
+    @Test
+    void testTick_RunBeyondWindowLoadedLaterAndMissedRunsSkipped() {
+        Instant now = Instant.now();
+        Instant startAt = now.plus(Duration.ofHours(3)).truncatedTo(ChronoUnit.SECONDS);
+        scheduledTransferService.tick(now);
+        // Окно уже загружено; запуск за его пределами читается из БД вместе с одним из следующих окон
+        ScheduledTransfer transfer = scheduledTransferService.create(user.getId(), request("100.00", "P1D", startAt));
+        assertThat(scheduledTransferService.tick(now.plus(Duration.ofHours(2)))).isZero();
+
+        // Сервис "простаивал" трое суток: выполняется один перевод, следующий - по расписанию
+        Instant late = startAt.plus(Duration.ofDays(3)).plusSeconds(10);
+        assertThat(scheduledTransferService.tick(late)).isEqualTo(1);
+
+        assertThat(balance(sourceCardId)).isEqualByComparingTo("900.00");
+        assertThat(scheduledTransferRepository.findById(transfer.getId()).orElseThrow().getNextRunAt())
+                .isEqualTo(startAt.plus(Duration.ofDays(4)));
+    }
+
+    private CreateScheduledTransferDTO request(String amount, String period, Instant startAt) {
+        CreateScheduledTransferDTO request = new CreateScheduledTransferDTO();
+        request.setSourceCardId(sourceCardId);
+        request.setTargetCardId(targetCardId);
+        request.setAmount(new BigDecimal(amount));
+        request.setPeriod(period);
+        request.setStartAt(startAt);
+        return request;
+    }
+
+    private BigDecimal balance(Long cardId) {
+        return bankCardRepository.findById(cardId).orElseThrow().getBalance();
+    }
+
+    private Long saveCard(Users owner, String number, BigDecimal balance) {
+        BankCards card = new BankCards();
+        card.setCardNumber(number);
+        card.setMasked_card_number("**** **** **** " + number.substring(12));
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(balance);
+        card.setStatus("ACTIVE");
+        card.setUser(owner);
+        return bankCardRepository.save(card).getId();
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AuthorizeHoldDTO;
+import com.example.bankcards.dto.CardLimitsDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.CardHold;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.SpendingLimitExceededException;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardHoldRepository;
+import com.example.bankcards.repository.CardLimitRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.UsersRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Лимиты расходов: окна проверяются с заданным временем, переводы и холды - через сервисы.
+ * По умолчанию: 600 на операцию, 1000 за сутки, 2500 за 30 дней.
+ */
+@TransferJpaTest
+@TestPropertySource(properties = {
+        "app.holds.expiry.enabled=false",
+        "app.limits.per-transaction=600",
+        "app.limits.daily=1000",
+        "app.limits.monthly=2500"
+})
+@Import(HoldService.class)
+class SpendingLimitServiceTest {
+
+    private static final String CARD_NUMBER = "4400000000000011";
+
+    @Autowired
+    private SpendingLimitService spendingLimitService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private HoldService holdService;
+
+    @Autowired
+    private CardNumberResolver cardNumberResolver;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private CardLimitRepository cardLimitRepository;
+
+    @Autowired
+    private CardHoldRepository cardHoldRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    private Users user;
+    private Long sourceCardId;
+    private Long targetCardId;
+
+    @BeforeEach
+    void setUp() {
+        user = usersRepository.save(new Users("limit-user", "password", "USER"));
+        sourceCardId = createCard(CARD_NUMBER, "10000.00");
+        targetCardId = createCard("4400000000000012", "0.00");
+        cardNumberResolver.invalidate(CARD_NUMBER);
+        spendingLimitService.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardLimitRepository.deleteAll();
+        cardHoldRepository.deleteAll();
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    // ==================== Скользящие окна ====================
+
+    @Test
+    void testReserve_PerTransactionLimit() {
+        assertThatThrownBy(() -> spendingLimitService.reserve(sourceCardId, new BigDecimal("600.01")))
+                .isInstanceOf(SpendingLimitExceededException.class)
+                .hasMessage("Per-transaction limit exceeded");
+    }
+
+    @Test
+    void testReserve_DailyWindowSlides() {
+        Instant start = Instant.parse("2030-01-01T10:15:00Z");
+        spendingLimitService.reserve(sourceCardId, new BigDecimal("600.00"), start);
+        spendingLimitService.reserve(sourceCardId, new BigDecimal("400.00"), start.plus(Duration.ofHours(5)));
+
+        assertThatThrownBy(() -> spendingLimitService.reserve(sourceCardId, new BigDecimal("0.01"), start.plus(Duration.ofHours(23))))
+                .isInstanceOf(SpendingLimitExceededException.class)
+                .hasMessage("Daily spending limit exceeded");
+        // Через сутки первый расход выходит из окна
+        spendingLimitService.reserve(sourceCardId, new BigDecimal("600.00"), start.plus(Duration.ofHours(25)));
+    }
+
+    @Test
+    void testReserve_MonthlyLimitAcrossDays() {
+        Instant start = Instant.parse("2030-01-01T10:00:00Z");
+        for (int day = 0; day < 5; day++) {
+            spendingLimitService.reserve(sourceCardId, new BigDecimal("500.00"), start.plus(Duration.ofDays(day)));
+        }
+
+        assertThatThrownBy(() -> spendingLimitService.reserve(sourceCardId, new BigDecimal("100.00"), start.plus(Duration.ofDays(10))))
+                .isInstanceOf(SpendingLimitExceededException.class)
+                .hasMessage("Monthly spending limit exceeded");
+        spendingLimitService.reserve(sourceCardId, new BigDecimal("500.00"), start.plus(Duration.ofDays(30)));
+    }
+
+    @Test
+    void testReserve_ConcurrentReservationsNeverExceedLimit() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        AtomicInteger reserved = new AtomicInteger();
+        try {
+            for (int i = 0; i < 100; i++) {
+                executor.submit(() -> {
+                    startLatch.await();
+                    try {
+                        spendingLimitService.reserve(sourceCardId, new BigDecimal("30.00"));
+                        reserved.incrementAndGet();
+                    } catch (SpendingLimitExceededException ignored) {
+                        // Ожидаемо после исчерпания лимита
+                    }
+                    return null;
+                });
+            }
+            startLatch.countDown();
+        } finally {
+            executor.shutdown();
+            assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // 1000 / 30 = 33 операции
+        assertThat(reserved.get()).isEqualTo(33);
+        assertThat(spendingLimitService.getLimits(sourceCardId).getSpentDaily()).isEqualByComparingTo("990.00");
+    }
+
+    @Test
+    void testReserve_ReleasedOnRollback() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            spendingLimitService.reserve(sourceCardId, new BigDecimal("500.00"));
+            status.setRollbackOnly();
+        });
+
+        assertThat(spendingLimitService.getLimits(sourceCardId).getSpentDaily()).isEqualByComparingTo("0.00");
+    }
+
+    // ==================== Переводы и холды ====================
+
+    @Test
+    void testTransfer_RejectedOverDailyLimit() {
+        userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("600.00"));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("500.00")))
+                .isInstanceOf(SpendingLimitExceededException.class);
+        assertThat(bankCardRepository.findById(sourceCardId).orElseThrow().getBalance()).isEqualByComparingTo("9400.00");
+    }
+
+    @Test
+    void testTransfer_FailedTransferDoesNotConsumeLimit() {
+        BankCards target = bankCardRepository.findById(targetCardId).orElseThrow();
+        target.setStatus("BLOCKED");
+        bankCardRepository.save(target);
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("600.00")))
+                .hasMessage("Target card is not active");
+        assertThat(spendingLimitService.getLimits(sourceCardId).getSpentDaily()).isEqualByComparingTo("0.00");
+    }
+
+    @Test
+    void testHold_VoidReturnsLimit() {
+        CardHold hold = holdService.authorize(holdRequest("600.00"));
+        assertThat(spendingLimitService.getLimits(sourceCardId).getSpentDaily()).isEqualByComparingTo("600.00");
+
+        holdService.voidHold(hold.getId());
+
+        assertThat(spendingLimitService.getLimits(sourceCardId).getSpentDaily()).isEqualByComparingTo("0.00");
+    }
+
+    @Test
+    void testRebuild_RestoresSpendingFromLedgerAndHolds() {
+        userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("300.00"));
+        holdService.authorize(holdRequest("200.00"));
+
+        spendingLimitService.rebuild();
+
+        CardLimitsDTO limits = spendingLimitService.getLimits(sourceCardId);
+        assertThat(limits.getSpentDaily()).isEqualByComparingTo("500.00");
+        assertThat(limits.getSpentMonthly()).isEqualByComparingTo("500.00");
+    }
+
+    @Test
+    void testSetLimits_OverridesDefaults() {
+        CardLimitsDTO request = new CardLimitsDTO();
+        request.setDaily(new BigDecimal("100.00"));
+
+        CardLimitsDTO limits = spendingLimitService.setLimits(sourceCardId, request);
+
+        assertThat(limits.getDaily()).isEqualByComparingTo("100.00");
+        assertThat(limits.getPerTransaction()).isEqualByComparingTo("600.00");
+        assertThatThrownBy(() -> spendingLimitService.reserve(sourceCardId, new BigDecimal("100.01")))
+                .isInstanceOf(SpendingLimitExceededException.class);
+
+        // Все значения null - снова лимиты по умолчанию
+        spendingLimitService.setLimits(sourceCardId, new CardLimitsDTO());
+        assertThat(spendingLimitService.getLimits(sourceCardId).getDaily()).isEqualByComparingTo("1000.00");
+    }
+
+    @Test
+    void testSetLimits_ReenabledWindowCountsLedgerOnce() {
+        userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("300.00"));
+
+        // Окна сняты (0 - без ограничения), перевод проходит мимо окна
+        CardLimitsDTO unlimited = new CardLimitsDTO();
+        unlimited.setDaily(BigDecimal.ZERO);
+        unlimited.setMonthly(BigDecimal.ZERO);
+        spendingLimitService.setLimits(sourceCardId, unlimited);
+        userService.transferBetweenOwnCards(user.getId(), sourceCardId, targetCardId, new BigDecimal("200.00"));
+
+        // Окна снова включены - расходы восстановлены из журнала ровно один раз
+        CardLimitsDTO limits = spendingLimitService.setLimits(sourceCardId, new CardLimitsDTO());
+
+        assertThat(limits.getSpentDaily()).isEqualByComparingTo("500.00");
+        assertThat(limits.getSpentMonthly()).isEqualByComparingTo("500.00");
+        spendingLimitService.reserve(sourceCardId, new BigDecimal("500.00"));
+        assertThatThrownBy(() -> spendingLimitService.reserve(sourceCardId, new BigDecimal("0.01")))
+                .isInstanceOf(SpendingLimitExceededException.class)
+                .hasMessage("Daily spending limit exceeded");
+    }
+
+    private AuthorizeHoldDTO holdRequest(String amount) {
+        AuthorizeHoldDTO request = new AuthorizeHoldDTO();
+        request.setCardNumber(CARD_NUMBER);
+        request.setAmount(new BigDecimal(amount));
+        request.setMerchant("Hotel");
+        return request;
+    }
+
+    private Long createCard(String number, String balance) {
+        BankCards card = new BankCards();
+        card.setCardNumber(number);
+        card.setMasked_card_number("**** **** **** " + number.substring(12));
+        card.setExpiryDate(LocalDate.now().plusYears(3));
+        card.setBalance(new BigDecimal(balance));
+        card.setStatus("ACTIVE");
+        card.setUser(user);
+        return bankCardRepository.save(card).getId();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.bankcards.service;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.bankcards.dto.TokenPairDTO;
+import com.example.bankcards.exception.InvalidTokenException;
+import com.example.bankcards.security.JWTCore;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.RevokedTokenStore;
+import com.example.bankcards.security.TokenEpochRegistry;
+import com.example.bankcards.security.UsersDetailsImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TokenServiceTest {
+
+    @Mock
+    private RevokedTokenStore revokedTokenStore;
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private UserDetailsService userDetailsService;
+
+    @Mock
+    private TokenEpochRegistry tokenEpochRegistry;
+
+    private JWTCore jwtCore;
+    private TokenService tokenService;
+    private UsersDetailsImpl principal;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        jwtCore = new JWTCore();
+        ReflectionTestUtils.setField(jwtCore, "secret", "testSecretKeyForTestingPurposesOnly");
+        ReflectionTestUtils.setField(jwtCore, "lifeTime", 900000);
+        ReflectionTestUtils.setField(jwtCore, "refreshLifeTime", 1209600000L);
+        ReflectionTestUtils.setField(jwtCore, "keyId", "primary");
+        ReflectionTestUtils.setField(jwtCore, "previousKeys", "");
+        jwtCore.init();
+        tokenService = new TokenService(jwtCore, revokedTokenStore, principalCache, userDetailsService, tokenEpochRegistry);
+
+        principal = new UsersDetailsImpl(1L, "testuser", "password", "ROLE_USER", 0);
+        when(principalCache.get(eq("testuser"), any())).thenReturn(principal);
+    }
+
+    @Test
+    void testIssueTokens() {
+        TokenPairDTO tokens = tokenService.issueTokens(principal);
+
+        assertThat(jwtCore.isRefreshToken(jwtCore.validateToken(tokens.getAccessToken()))).isFalse();
+        assertThat(jwtCore.isRefreshToken(jwtCore.validateToken(tokens.getRefreshToken()))).isTrue();
+        assertThat(tokens.getExpiresIn()).isEqualTo(900L);
+    }
+
+    @Test
+    void testRefresh_Success_RotatesRefreshToken() {
+        String refreshToken = jwtCore.generateRefreshToken(principal);
+        DecodedJWT decoded = jwtCore.validateToken(refreshToken);
+        when(revokedTokenStore.revoke(eq(decoded.getId()), any(Instant.class))).thenReturn(true);
+
+        TokenPairDTO tokens = tokenService.refresh(refreshToken);
+
+        assertThat(tokens.getRefreshToken()).isNotEqualTo(refreshToken);
+        verify(revokedTokenStore, times(1)).revoke(decoded.getId(), decoded.getExpiresAtAsInstant());
+    }
+
+    @Test
+    void testRefresh_AccessTokenRejected() {
+        String accessToken = jwtCore.generateToken(principal);
+
+        assertThatThrownBy(() -> tokenService.refresh(accessToken))
+                .isInstanceOf(InvalidTokenException.class)
+                .hasMessage("Invalid refresh token");
+        verify(revokedTokenStore, never()).revoke(anyString(), any());
+    }
+
+    @Test
+    void testRefresh_RevokedToken() {
+        String refreshToken = jwtCore.generateRefreshToken(principal);
+        when(revokedTokenStore.isRevoked(anyString(), any(Instant.class))).thenReturn(true);
+
+        assertThatThrownBy(() -> tokenService.refresh(refreshToken))
+                .isInstanceOf(InvalidTokenException.class)
+                .hasMessage("Refresh token has been revoked");
+    }
+
+    @Test
+    void testRefresh_UserChangedAfterIssue() {
+        String refreshToken = jwtCore.generateRefreshToken(principal);
+        // Администратор изменил пользователя - версия выросла
+        UsersDetailsImpl updated = new UsersDetailsImpl(1L, "testuser", "password", "ROLE_ADMIN", 1);
+        when(principalCache.get(eq("testuser"), any())).thenReturn(updated);
+
+        assertThatThrownBy(() -> tokenService.refresh(refreshToken))
+                .isInstanceOf(InvalidTokenException.class)
+                .hasMessage("Refresh token is no longer valid");
+        verify(revokedTokenStore, never()).revoke(anyString(), any());
+    }
+
+    @Test
+    void testRefresh_AlreadyUsed() {
+        String refreshToken = jwtCore.generateRefreshToken(principal);
+        when(revokedTokenStore.revoke(anyString(), any(Instant.class))).thenReturn(false);
+
+        assertThatThrownBy(() -> tokenService.refresh(refreshToken))
+                .isInstanceOf(InvalidTokenException.class)
+                .hasMessage("Refresh token has already been used");
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class TransactionRetryExecutorTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private TransactionStatus transactionStatus;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransactionRetryExecutor transactionRetryExecutor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        meterRegistry = new SimpleMeterRegistry();
+        transactionRetryExecutor = new TransactionRetryExecutor(transactionManager, meterRegistry);
+        ReflectionTestUtils.setField(transactionRetryExecutor, "maxAttempts", 3);
+        ReflectionTestUtils.setField(transactionRetryExecutor, "backoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(transactionRetryExecutor, "maxBackoff", Duration.ofMillis(2));
+    }
+
+    @Test
+    void testRetriesOptimisticConflictUntilSuccess() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = transactionRetryExecutor.execute("card.block", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("BankCards", 10L);
+            }
+            return "ok";
+        });
+
+        assertThat(result).isEqualTo("ok");
+        assertThat(calls.get()).isEqualTo(3);
+        // Каждая попытка - своя транзакция
+        verify(transactionManager, times(3)).getTransaction(any());
+        assertThat(meterRegistry.counter("transactions.conflicts", "operation", "card.block", "type", "optimistic").count())
+                .isEqualTo(2.0);
+        assertThat(meterRegistry.counter("transactions.retries", "operation", "card.block", "type", "optimistic").count())
+                .isEqualTo(2.0);
+    }
+
+    @Test
+    void testGivesUpAfterMaxAttempts() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> transactionRetryExecutor.execute("transfer", () -> {
+            calls.incrementAndGet();
+            throw new CannotAcquireLockException("lock timeout");
+        })).isInstanceOf(CannotAcquireLockException.class);
+
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(meterRegistry.counter("transactions.retries.exhausted", "operation", "transfer", "type", "lock").count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void testBusinessErrorIsNotRetried() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThatThrownBy(() -> transactionRetryExecutor.execute("card.block", () -> {
+            calls.incrementAndGet();
+            throw new CardNotFoundException("Card not found");
+        })).isInstanceOf(CardNotFoundException.class);
+
+        assertThat(calls.get()).isEqualTo(1);
+        verify(transactionManager, times(1)).rollback(transactionStatus);
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.BatchTransferDTO;
+import com.example.bankcards.dto.BatchTransferResultDTO;
+import com.example.bankcards.dto.CardTransactionDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.exception.InsufficientFundsException;
+import com.example.bankcards.fraud.RoundTripRule;
+import com.example.bankcards.fraud.StatusChangeAmountRule;
+import com.example.bankcards.fraud.VelocityRule;
+import com.example.bankcards.repository.BankCardRepository;
+import com.example.bankcards.repository.CardTransactionRepository;
+import com.example.bankcards.repository.UsersRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Нагрузочный тест переводов: много потоков переводят деньги между несколькими картами
+ * в обе стороны. Сумма на картах должна сохраниться, баланс не может стать отрицательным.
+ * Антифрод - с правилами и настройками по умолчанию: частые переводы не должны отклоняться.
+ */
+@TransferJpaTest
+@Import({VelocityRule.class, RoundTripRule.class, StatusChangeAmountRule.class})
+class TransferConcurrencyTest {
+
+    private static final int CARDS = 4;
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 100;
+    private static final BigDecimal INITIAL_BALANCE = new BigDecimal("1000.00");
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private BankCardRepository bankCardRepository;
+
+    @Autowired
+    private UsersRepository usersRepository;
+
+    @Autowired
+    private CardTransactionRepository cardTransactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    private Long userId;
+    private final List<Long> cardIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Users user = usersRepository.save(new Users("stress-user", "password", "USER"));
+        userId = user.getId();
+        for (int i = 0; i < CARDS; i++) {
+            BankCards card = new BankCards();
+            card.setCardNumber("400000000000000" + i);
+            card.setMasked_card_number("**** **** **** 000" + i);
+            card.setExpiryDate(LocalDate.now().plusYears(3));
+            card.setBalance(INITIAL_BALANCE);
+            card.setStatus("ACTIVE");
+            card.setUser(user);
+            cardIds.add(bankCardRepository.save(card).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        cardTransactionRepository.deleteAll();
+        bankCardRepository.deleteAll();
+        usersRepository.deleteAll();
+    }
+
+    @Test
+    void testPessimisticLockingConservesMoney() throws Exception {
+        ReflectionTestUtils.setField(userService, "lockingMode", "pessimistic");
+
+        Queue<Throwable> unexpected = hammer();
+
+        // Блокировки берутся в порядке id - deadlock'ов и исчерпанных повторов быть не должно
+        assertThat(unexpected).isEmpty();
+        assertMoneyConserved();
+    }
+
+    @Test
+    void testLedgerMatchesBalances() throws Exception {
+        ReflectionTestUtils.setField(userService, "lockingMode", "pessimistic");
+
+        hammer();
+
+        // Сумма движений по карте в журнале равна изменению ее баланса
+        for (BankCards card : bankCardRepository.findAllById(cardIds)) {
+            BigDecimal movements = BigDecimal.ZERO;
+            int entries = 0;
+            String cursor = null;
+            do {
+                CursorPage<CardTransactionDTO> page = userService.getCardTransactions(userId, card.getId(), cursor, 37);
+                for (CardTransactionDTO transaction : page.getItems()) {
+                    movements = movements.add(transaction.getAmount());
+                    entries++;
+                }
+                cursor = page.getNextCursor();
+            } while (cursor != null);
+
+            assertThat(movements).isEqualByComparingTo(card.getBalance().subtract(INITIAL_BALANCE));
+            assertThat(entries).isEqualTo(cardTransactionRepository.findLatest(card.getId(), Limit.unlimited()).size());
+        }
+    }
+
+    @Test
+    void testConditionalLockingConservesMoney() throws Exception {
+        ReflectionTestUtils.setField(userService, "lockingMode", "conditional");
+
+        Queue<Throwable> unexpected = hammer();
+
+        // Встречные UPDATE могут упереться в deadlock - допускается только ошибка конкурентного доступа
+        assertThat(unexpected).allMatch(e -> e instanceof ConcurrencyFailureException);
+        assertMoneyConserved();
+    }
+
+    @Test
+    void testForeignCardIdsNotLocked() throws Exception {
+        Users stranger = usersRepository.save(new Users("stranger", "password", "USER"));
+        BankCards foreign = new BankCards();
+        foreign.setCardNumber("4999999999999999");
+        foreign.setMasked_card_number("**** **** **** 9999");
+        foreign.setExpiryDate(LocalDate.now().plusYears(3));
+        foreign.setBalance(INITIAL_BALANCE);
+        foreign.setStatus("ACTIVE");
+        foreign.setUser(stranger);
+        Long foreignId = bankCardRepository.save(foreign).getId();
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<BankCards>> holder = executor.submit(() -> new TransactionTemplate(transactionManager).execute(status -> {
+                List<BankCards> cards = bankCardRepository.lockOwnedInIdOrder(userId, List.of(cardIds.get(0), foreignId), Duration.ofSeconds(2));
+                locked.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return cards;
+            }));
+            assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // Пока транзакция с блокировками открыта, чужая карта свободна
+            List<BankCards> relocked = new TransactionTemplate(transactionManager).execute(status ->
+                    bankCardRepository.lockAllInIdOrder(List.of(foreignId), Duration.ofMillis(500)));
+            release.countDown();
+
+            assertThat(relocked).extracting(BankCards::getId).containsExactly(foreignId);
+            assertThat(holder.get(10, TimeUnit.SECONDS)).extracting(BankCards::getId).containsExactly(cardIds.get(0));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testBatchScreenedAsOneFraudEvent() {
+        List<TransferDTO> transfers = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            transfers.add(transfer(cardIds.get(0), cardIds.get(1 + i % (CARDS - 1)), "1.00"));
+        }
+        double flaggedBefore = meterRegistry.counter("fraud.decisions", "action", "FLAG").count();
+
+        BatchTransferResultDTO first = userService.transferBatch(userId, transfers, BatchTransferDTO.Mode.ALL_OR_NOTHING);
+        BatchTransferResultDTO second = userService.transferBatch(userId, transfers, BatchTransferDTO.Mode.ALL_OR_NOTHING);
+
+        // 15 ног больше лимита частоты на карту (10 в минуту), но пакет - одно событие
+        assertThat(first.isCommitted()).isTrue();
+        assertThat(second.isCommitted()).isTrue();
+        assertThat(second.getCompleted()).isEqualTo(15);
+        assertThat(meterRegistry.counter("fraud.decisions", "action", "FLAG").count()).isEqualTo(flaggedBefore);
+        assertMoneyConserved();
+    }
+
+    private static TransferDTO transfer(Long source, Long target, String amount) {
+        TransferDTO dto = new TransferDTO();
+        dto.setSourceCardId(source);
+        dto.setTargetCardId(target);
+        dto.setAmount(new BigDecimal(amount));
+        return dto;
+    }
+
+    private Queue<Throwable> hammer() throws Exception {
+        Queue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        AtomicInteger insufficientFunds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                    int from = random.nextInt(CARDS);
+                    int to = (from + 1 + random.nextInt(CARDS - 1)) % CARDS;
+                    BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 30000), 2);
+                    try {
+                        userService.transferBetweenOwnCards(userId, cardIds.get(from), cardIds.get(to), amount);
+                    } catch (InsufficientFundsException e) {
+                        insufficientFunds.incrementAndGet();
+                    } catch (Throwable e) {
+                        unexpected.add(e);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+        return unexpected;
+    }
+
+    private void assertMoneyConserved() {
+        List<BankCards> cards = bankCardRepository.findAllById(cardIds);
+        BigDecimal total = cards.stream().map(BankCards::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+
+        assertThat(total).isEqualByComparingTo(INITIAL_BALANCE.multiply(BigDecimal.valueOf(CARDS)));
+        assertThat(cards).allMatch(card -> card.getBalance().signum() >= 0);
+        // Каждое изменение баланса увеличивает версию карты
+        assertThat(cards).allMatch(card -> card.getVersion() > 0);
+    }
+}
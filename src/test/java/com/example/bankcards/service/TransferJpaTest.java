@@ -0,0 +1,31 @@
+package com.example.bankcards.service;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Срез для тестов пути перевода: схема из сущностей на H2 (без Liquibase), сервисы из
+ * TransferServicesTestConfig, без тестовой транзакции - сервисы коммитят сами, как в приложении.
+ * Тест импортирует только проверяемый сервис, свои настройки задает через @TestPropertySource.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@DataJpaTest(properties = {
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+        "app.transactions.retry.max-attempts=10"
+})
+@Import(TransferServicesTestConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public @interface TransferJpaTest {
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.fraud.FraudDecisionLogger;
+import com.example.bankcards.fraud.FraudRuleEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Сервисы пути перевода (UserService и его зависимости) для тестов на H2 и бенчмарков.
+ * Новая зависимость UserService добавляется только сюда.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+@Import({UserService.class, TransactionRetryExecutor.class, LedgerService.class, CardCommandPipeline.class, CardNumberResolver.class,
+        SpendingLimitService.class, FraudRuleEngine.class, FraudDecisionLogger.class, UserCardsCache.class, BalanceSummaryService.class,
+        SimpleMeterRegistry.class})
+public class TransferServicesTestConfig {
+}
@@ -0,0 +1,114 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.BankCards;
+import com.example.bankcards.repository.BankCardRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserCardsCacheTest {
+
+    @Mock
+    private BankCardRepository bankCardRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserCardsCache cache;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new UserCardsCache(bankCardRepository, 100, Duration.ofMinutes(1), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testGetCards_LoadedOnceAndCountedAsHit() {
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "ACTIVE")));
+
+        assertThat(cache.getCards(1L)).hasSize(1);
+        assertThat(cache.getCards(1L)).hasSize(1);
+
+        verify(bankCardRepository, times(1)).findByUserId(1L);
+        assertThat(meterRegistry.get("cards.list.cache.hit-ratio").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void testGetCards_ReturnsUnmodifiableList() {
+        when(bankCardRepository.findByUserId(1L)).thenReturn(new ArrayList<>(List.of(card(1L, "ACTIVE"))));
+
+        assertThatThrownBy(() -> cache.getCards(1L).clear())
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void testInvalidate_OutsideTransactionReloads() {
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "ACTIVE")));
+        cache.getCards(1L);
+
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "BLOCKED")));
+        cache.invalidate(1L);
+
+        assertThat(cache.getCards(1L).get(0).getStatus()).isEqualTo("BLOCKED");
+        verify(bankCardRepository, times(2)).findByUserId(1L);
+    }
+
+    @Test
+    void testInvalidate_InsideTransactionAppliedOnlyAfterCommit() {
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "ACTIVE")));
+        cache.getCards(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidate(1L);
+        // До коммита читается прежний список
+        assertThat(cache.getCards(1L).get(0).getStatus()).isEqualTo("ACTIVE");
+
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "BLOCKED")));
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        assertThat(cache.getCards(1L).get(0).getStatus()).isEqualTo("BLOCKED");
+    }
+
+    @Test
+    void testInvalidate_RollbackKeepsEntry() {
+        when(bankCardRepository.findByUserId(1L)).thenReturn(List.of(card(1L, "ACTIVE")));
+        cache.getCards(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidate(1L);
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        cache.getCards(1L);
+        verify(bankCardRepository, times(1)).findByUserId(1L);
+    }
+
+    private BankCards card(Long userId, String status) {
+        BankCards card = new BankCards();
+        card.setId(userId * 10);
+        card.setUserId(userId);
+        card.setStatus(status);
+        return card;
+    }
+}
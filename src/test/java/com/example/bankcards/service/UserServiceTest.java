@@ -1,15 +1,25 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.dto.BalanceDTO;
+import com.example.bankcards.dto.BatchTransferDTO;
+import com.example.bankcards.dto.BatchTransferResultDTO;
+import com.example.bankcards.dto.CursorPage;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferLegResultDTO;
 import com.example.bankcards.entity.BankCards;
 import com.example.bankcards.entity.Users;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.InsufficientFundsException;
 import com.example.bankcards.exception.UserNotFoundException;
+import com.example.bankcards.exception.ValidationException;
+import com.example.bankcards.fraud.FraudRuleEngine;
 import com.example.bankcards.repository.BankCardRepository;
 import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.UsersDetailsImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
@@ -17,13 +27,17 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 class UserServiceTest {
@@ -34,12 +48,55 @@ class UserServiceTest {
     @Mock
     private UsersRepository userRepository;
 
+    @Mock
+    private TransactionRetryExecutor transactionRetryExecutor;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private CardCommandPipeline cardCommandPipeline;
+
+    @Mock
+    private CardNumberResolver cardNumberResolver;
+
+    @Mock
+    private SpendingLimitService spendingLimitService;
+
+    @Mock
+    private FraudRuleEngine fraudRuleEngine;
+
+    @Mock
+    private UserCardsCache userCardsCache;
+
+    @Mock
+    private BalanceSummaryService balanceSummaryService;
+
     @InjectMocks
     private UserService userService;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(userService, "lockingMode", "pessimistic");
+        ReflectionTestUtils.setField(userService, "lockTimeout", Duration.ofSeconds(2));
+        // Повторы и транзакции проверяются отдельно - здесь операция выполняется один раз
+        when(transactionRetryExecutor.execute(anyString(), any())).thenAnswer(invocation ->
+                ((Supplier<?>) invocation.getArgument(1)).get());
+        when(spendingLimitService.reserve(any(), any())).thenReturn(SpendingLimitService.Reservation.NONE);
+    }
+
+    private void useConditionalLocking() {
+        ReflectionTestUtils.setField(userService, "lockingMode", "conditional");
+    }
+
+    private BankCards card(Long id, Long userId, String status, String balance) {
+        BankCards card = new BankCards();
+        card.setId(id);
+        card.setUserId(userId);
+        card.setStatus(status);
+        card.setBalance(new BigDecimal(balance));
+        return card;
     }
 
     // --- Тесты для получения ID пользователя из Authentication ---
@@ -82,6 +139,17 @@ class UserServiceTest {
         verify(userRepository, times(1)).findByUsername(username);
     }
 
+    @Test
+    void testGetCurrentUserId_FromTokenPrincipal() {
+        UsersDetailsImpl principal = new UsersDetailsImpl(7L, "testuser", "password", "ROLE_USER", 3);
+        Authentication authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+
+        Long resultUserId = userService.getCurrentUserId(authentication);
+
+        assertThat(resultUserId).isEqualTo(7L);
+        verifyNoInteractions(userRepository);
+    }
+
     @Test
     void testGetCurrentUserId_Unauthenticated() {
         assertThatThrownBy(() -> userService.getCurrentUserId(null))
@@ -102,13 +170,13 @@ class UserServiceTest {
         card2.setUserId(userId);
         List<BankCards> cards = List.of(card1, card2);
 
-        when(bankCardRepository.findByUserId(userId)).thenReturn(cards);
+        when(userCardsCache.getCards(userId)).thenReturn(cards);
 
         List<BankCards> result = userService.getAllUserCards(userId);
 
         assertThat(result).hasSize(2);
         assertThat(result).containsExactlyInAnyOrder(card1, card2);
-        verify(bankCardRepository, times(1)).findByUserId(userId);
+        verify(userCardsCache, times(1)).getCards(userId);
     }
 
     @Test
@@ -133,6 +201,41 @@ class UserServiceTest {
         verify(bankCardRepository, times(1)).findByUserId(userId, pageable);
     }
 
+    @Test
+    void testGetUserCardsPage_FirstPageWithCursor() {
+        Long userId = 1L;
+        BankCards card1 = new BankCards();
+        card1.setId(3L);
+        BankCards card2 = new BankCards();
+        card2.setId(5L);
+        BankCards card3 = new BankCards();
+        card3.setId(8L);
+        // Запрашивается на одну карту больше размера страницы
+        when(bankCardRepository.findByUserIdAfter(userId, 0L, Limit.of(3))).thenReturn(List.of(card1, card2, card3));
+
+        CursorPage<BankCards> page = userService.getUserCardsPage(userId, null, 2, false);
+
+        assertThat(page.getItems()).containsExactly(card1, card2);
+        assertThat(page.isHasMore()).isTrue();
+        assertThat(page.getTotal()).isNull();
+        verify(bankCardRepository, never()).countByUserId(anyLong());
+
+        // Следующая страница начинается после последней выданной карты
+        when(bankCardRepository.findByUserIdAfter(userId, 5L, Limit.of(3))).thenReturn(List.of(card3));
+        CursorPage<BankCards> next = userService.getUserCardsPage(userId, page.getNextCursor(), 2, true);
+
+        assertThat(next.getItems()).containsExactly(card3);
+        assertThat(next.getNextCursor()).isNull();
+        verify(bankCardRepository, times(1)).countByUserId(userId);
+    }
+
+    @Test
+    void testGetUserCardsPage_InvalidCursor() {
+        assertThatThrownBy(() -> userService.getUserCardsPage(1L, "not-a-cursor", 10, false))
+                .isInstanceOf(ValidationException.class)
+                .hasMessage("Invalid cursor");
+    }
+
     @Test
     void testGetActiveUserCards() {
         Long userId = 1L;
@@ -144,15 +247,15 @@ class UserServiceTest {
         blockedCard.setId(2L);
         blockedCard.setUserId(userId);
         blockedCard.setStatus("BLOCKED");
-        List<BankCards> activeCards = List.of(activeCard);
-
-        when(bankCardRepository.findByUserIdAndStatus(userId, "ACTIVE")).thenReturn(activeCards);
+        // Активные карты выбираются из закешированного полного списка
+        when(userCardsCache.getCards(userId)).thenReturn(List.of(activeCard, blockedCard));
 
         List<BankCards> result = userService.getActiveUserCards(userId);
 
         assertThat(result).hasSize(1);
         assertThat(result.get(0).getStatus()).isEqualTo("ACTIVE");
-        verify(bankCardRepository, times(1)).findByUserIdAndStatus(userId, "ACTIVE");
+        verify(userCardsCache, times(1)).getCards(userId);
+        verify(bankCardRepository, never()).findByUserIdAndStatus(anyLong(), anyString());
     }
 
     @Test
@@ -194,33 +297,119 @@ class UserServiceTest {
     @Test
     void testTransferBetweenOwnCards_Success() {
         Long userId = 1L;
-        Long sourceCardId = 10L;
-        Long targetCardId = 20L;
+        BankCards sourceCard = card(10L, userId, "ACTIVE", "100.00");
+        BankCards targetCard = card(20L, userId, "ACTIVE", "50.00");
         BigDecimal amount = new BigDecimal("50.00");
 
-        BankCards sourceCard = new BankCards();
-        sourceCard.setId(sourceCardId);
-        sourceCard.setUserId(userId);
-        sourceCard.setStatus("ACTIVE");
-        sourceCard.setBalance(new BigDecimal("100.00"));
+        when(bankCardRepository.lockOwnedInIdOrder(userId, List.of(10L, 20L), Duration.ofSeconds(2)))
+                .thenReturn(List.of(sourceCard, targetCard));
 
-        BankCards targetCard = new BankCards();
-        targetCard.setId(targetCardId);
-        targetCard.setUserId(userId);
-        targetCard.setStatus("ACTIVE");
-        targetCard.setBalance(new BigDecimal("50.00"));
+        userService.transferBetweenOwnCards(userId, 10L, 20L, amount);
 
-        when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.of(sourceCard));
-        when(bankCardRepository.findByUserIdAndId(userId, targetCardId)).thenReturn(Optional.of(targetCard));
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("50.00")); // 100 - 50
+        assertThat(targetCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00")); // 50 + 50
+        verify(transactionRetryExecutor, times(1)).execute(eq("transfer"), any());
+        verify(bankCardRepository, never()).debitIfActive(anyLong(), anyLong(), any());
+        // Списание и зачисление попадают в журнал одним пакетом
+        verify(ledgerService, times(1)).record(argThat(entries -> entries.size() == 2
+                && entries.get(0).getAmount().compareTo(new BigDecimal("-50.00")) == 0
+                && entries.get(0).getBalanceAfter().compareTo(new BigDecimal("50.00")) == 0
+                && entries.get(1).getBalanceAfter().compareTo(new BigDecimal("100.00")) == 0
+                && entries.get(0).getReference().equals(entries.get(1).getReference())));
+    }
+
+    @Test
+    void testTransferBetweenOwnCards_RecordsGivenReference() {
+        Long userId = 1L;
+        when(bankCardRepository.lockOwnedInIdOrder(userId, List.of(10L, 20L), Duration.ofSeconds(2)))
+                .thenReturn(List.of(card(10L, userId, "ACTIVE", "100.00"), card(20L, userId, "ACTIVE", "50.00")));
+
+        userService.transferBetweenOwnCards(userId, 10L, 20L, new BigDecimal("10.00"), "idempotency-ref");
+
+        // По этому reference IdempotencyService находит перевод после перехвата брошенного ключа
+        verify(ledgerService, times(1)).record(argThat(entries -> entries.stream()
+                .allMatch(entry -> "idempotency-ref".equals(entry.getReference()))));
+    }
+
+    @Test
+    void testTransferBetweenOwnCards_SourceCardOfAnotherUser() {
+        Long userId = 1L;
+        BankCards sourceCard = card(10L, 2L, "ACTIVE", "100.00"); // Чужая карта
+        BankCards targetCard = card(20L, userId, "ACTIVE", "50.00");
+
+        // Чужая карта отфильтрована запросом блокировки и не заблокирована
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any()))
+                .thenReturn(List.of(targetCard));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, 10L, 20L, new BigDecimal("10.00")))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Source card not found or access denied");
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00"));
+    }
+
+    @Test
+    void testTransferBetweenOwnCards_TargetCardNotFound() {
+        Long userId = 1L;
+        BankCards sourceCard = card(10L, userId, "ACTIVE", "100.00");
+
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any())).thenReturn(List.of(sourceCard));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, 10L, 999L, new BigDecimal("10.00")))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Target card not found or access denied");
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00"));
+    }
+
+    @Test
+    void testTransferBetweenOwnCards_TargetCardNotActive() {
+        Long userId = 1L;
+        BankCards sourceCard = card(10L, userId, "ACTIVE", "100.00");
+        BankCards targetCard = card(20L, userId, "BLOCKED", "50.00");
+
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any()))
+                .thenReturn(List.of(sourceCard, targetCard));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, 10L, 20L, new BigDecimal("10.00")))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Target card is not active");
+    }
+
+    @Test
+    void testTransferBetweenOwnCards_InsufficientFunds() {
+        Long userId = 1L;
+        BankCards sourceCard = card(10L, userId, "ACTIVE", "100.00");
+        BankCards targetCard = card(20L, userId, "ACTIVE", "50.00");
+
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any()))
+                .thenReturn(List.of(sourceCard, targetCard));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, 10L, 20L, new BigDecimal("150.00")))
+                .isInstanceOf(InsufficientFundsException.class)
+                .hasMessage("Insufficient funds on source card");
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00"));
+        assertThat(targetCard.getBalance()).isEqualByComparingTo(new BigDecimal("50.00"));
+    }
+
+    // Режим conditional: условные UPDATE
+
+    @Test
+    void testConditionalTransfer_Success() {
+        Long userId = 1L;
+        Long sourceCardId = 10L;
+        Long targetCardId = 20L;
+        BigDecimal amount = new BigDecimal("50.00");
+        useConditionalLocking();
+
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(1);
+        when(bankCardRepository.creditIfActive(targetCardId, userId, amount)).thenReturn(1);
 
         userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount);
 
-        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("50.00")); // 100 - 50
-        assertThat(targetCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00")); // 50 + 50
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, sourceCardId);
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, targetCardId);
-        verify(bankCardRepository, times(1)).save(sourceCard);
-        verify(bankCardRepository, times(1)).save(targetCard);
+        // Баланс меняется в БД условными UPDATE, карты не читаются и не сохраняются
+        verify(bankCardRepository, times(1)).debitIfActive(sourceCardId, userId, amount);
+        verify(bankCardRepository, times(1)).creditIfActive(targetCardId, userId, amount);
+        verify(bankCardRepository, never()).findByUserIdAndId(anyLong(), anyLong());
+        verify(bankCardRepository, never()).save(any(BankCards.class));
     }
 
     @Test
@@ -232,93 +421,101 @@ class UserServiceTest {
         assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, cardId, cardId, amount))
                 .isInstanceOf(RuntimeException.class)
                 .hasMessage("Cannot transfer to the same card");
+        verify(bankCardRepository, never()).debitIfActive(anyLong(), anyLong(), any());
     }
 
     @Test
-    void testTransferBetweenOwnCards_SourceCardNotFound() {
+    void testConditionalTransfer_SourceCardNotFound() {
         Long userId = 1L;
         Long sourceCardId = 999L; // ID, которого нет
         Long targetCardId = 20L;
         BigDecimal amount = new BigDecimal("50.00");
+        useConditionalLocking();
 
-        // Настраиваем мок так, чтобы первый вызов (для source) возвращал empty
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(0);
         when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.empty());
-        // Нет необходимости настраивать мок для targetCardId, так как он не должен быть вызван
 
         assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount))
                 .isInstanceOf(CardNotFoundException.class)
-                .hasMessage("Source card not found or access denied"); // Убедитесь, что сообщение совпадает
+                .hasMessage("Source card not found or access denied");
 
-        // Проверяем, что findByUserIdAndId был вызван ровно один раз - для sourceCardId
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, sourceCardId);
-        // Проверяем, что findByUserIdAndId НЕ был вызван для targetCardId
+        // Зачисление не выполняется, если списание не прошло
+        verify(bankCardRepository, never()).creditIfActive(anyLong(), anyLong(), any());
         verify(bankCardRepository, never()).findByUserIdAndId(userId, targetCardId);
-        // Альтернатива: проверить, что всего было 1 вызов findByUserIdAndId (с любыми аргументами)
-        // verify(bankCardRepository, times(1)).findByUserIdAndId(anyLong(), anyLong());
-        // Или проверить, что save не вызывался вообще
-        verify(bankCardRepository, never()).save(any(BankCards.class));
     }
 
     @Test
-    void testTransferBetweenOwnCards_TargetCardNotFound() {
+    void testConditionalTransfer_TargetCardNotFound() {
         Long userId = 1L;
         Long sourceCardId = 10L;
         Long targetCardId = 999L;
         BigDecimal amount = new BigDecimal("50.00");
+        useConditionalLocking();
 
-        BankCards sourceCard = new BankCards();
-        sourceCard.setId(sourceCardId);
-        sourceCard.setUserId(userId);
-        sourceCard.setStatus("ACTIVE");
-        sourceCard.setBalance(new BigDecimal("100.00"));
-
-        when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.of(sourceCard));
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(1);
+        when(bankCardRepository.creditIfActive(targetCardId, userId, amount)).thenReturn(0);
         when(bankCardRepository.findByUserIdAndId(userId, targetCardId)).thenReturn(Optional.empty());
 
+        // Исключение откатывает транзакцию вместе со списанием
         assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount))
                 .isInstanceOf(CardNotFoundException.class)
-                .hasMessage("Source card not found or access denied");
+                .hasMessage("Target card not found or access denied");
 
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, sourceCardId);
         verify(bankCardRepository, times(1)).findByUserIdAndId(userId, targetCardId);
-        verify(bankCardRepository, never()).save(any(BankCards.class));
     }
 
     @Test
-    void testTransferBetweenOwnCards_SourceCardNotActive() {
+    void testConditionalTransfer_SourceCardNotActive() {
         Long userId = 1L;
         Long sourceCardId = 10L;
         Long targetCardId = 20L;
         BigDecimal amount = new BigDecimal("50.00");
+        useConditionalLocking();
 
         BankCards sourceCard = new BankCards();
         sourceCard.setId(sourceCardId);
         sourceCard.setUserId(userId);
         sourceCard.setStatus("BLOCKED"); // Не активна
 
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(0);
+        when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.of(sourceCard));
+
+        assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Source card is not active");
+
+        verify(bankCardRepository, never()).creditIfActive(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testConditionalTransfer_TargetCardNotActive() {
+        Long userId = 1L;
+        Long sourceCardId = 10L;
+        Long targetCardId = 20L;
+        BigDecimal amount = new BigDecimal("50.00");
+        useConditionalLocking();
+
         BankCards targetCard = new BankCards();
         targetCard.setId(targetCardId);
         targetCard.setUserId(userId);
-        targetCard.setStatus("ACTIVE");
+        targetCard.setStatus("BLOCKED");
 
-        when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.of(sourceCard));
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(1);
+        when(bankCardRepository.creditIfActive(targetCardId, userId, amount)).thenReturn(0);
         when(bankCardRepository.findByUserIdAndId(userId, targetCardId)).thenReturn(Optional.of(targetCard));
 
         assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount))
                 .isInstanceOf(RuntimeException.class)
-                .hasMessage("Source card is not active");
-
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, sourceCardId);
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, targetCardId);
-        verify(bankCardRepository, never()).save(any(BankCards.class));
+                .hasMessage("Target card is not active");
     }
 
     @Test
-    void testTransferBetweenOwnCards_InsufficientFunds() {
+    void testConditionalTransfer_InsufficientFunds() {
         Long userId = 1L;
         Long sourceCardId = 10L;
         Long targetCardId = 20L;
         BigDecimal amount = new BigDecimal("150.00"); // Больше, чем на балансе
+        useConditionalLocking();
 
         BankCards sourceCard = new BankCards();
         sourceCard.setId(sourceCardId);
@@ -326,23 +523,164 @@ class UserServiceTest {
         sourceCard.setStatus("ACTIVE");
         sourceCard.setBalance(new BigDecimal("100.00")); // Меньше, чем amount
 
-        BankCards targetCard = new BankCards();
-        targetCard.setId(targetCardId);
-        targetCard.setUserId(userId);
-        targetCard.setStatus("ACTIVE");
-
+        // Карта найдена и активна, но UPDATE не прошел по условию balance >= amount
+        when(bankCardRepository.debitIfActive(sourceCardId, userId, amount)).thenReturn(0);
         when(bankCardRepository.findByUserIdAndId(userId, sourceCardId)).thenReturn(Optional.of(sourceCard));
-        when(bankCardRepository.findByUserIdAndId(userId, targetCardId)).thenReturn(Optional.of(targetCard));
 
         assertThatThrownBy(() -> userService.transferBetweenOwnCards(userId, sourceCardId, targetCardId, amount))
                 .isInstanceOf(InsufficientFundsException.class)
                 .hasMessage("Insufficient funds on source card");
 
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, sourceCardId);
-        verify(bankCardRepository, times(1)).findByUserIdAndId(userId, targetCardId);
+        verify(bankCardRepository, never()).creditIfActive(anyLong(), anyLong(), any());
         verify(bankCardRepository, never()).save(any(BankCards.class));
     }
 
+    // --- Тесты для пакетного перевода ---
+
+    // --- Тесты для перевода по номеру карты ---
+
+    @Test
+    void testTransferToCardNumber_Success() {
+        BankCards sourceCard = card(30L, 1L, "ACTIVE", "100.00");
+        BankCards recipientCard = card(20L, 2L, "ACTIVE", "0.00");
+        when(cardNumberResolver.resolve("4000000000000020")).thenReturn(Optional.of(20L));
+        when(bankCardRepository.lockSourceAndRecipientInIdOrder(1L, 30L, 20L, Duration.ofSeconds(2)))
+                .thenReturn(List.of(recipientCard, sourceCard));
+
+        userService.transferToCardNumber(1L, 30L, "4000000000000020", new BigDecimal("40.00"));
+
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("60.00"));
+        assertThat(recipientCard.getBalance()).isEqualByComparingTo(new BigDecimal("40.00"));
+        verify(transactionRetryExecutor, times(1)).execute(eq("transfer.p2p"), any());
+        // Записи журнала принадлежат владельцам карт
+        verify(ledgerService, times(1)).record(argThat(entries -> entries.size() == 2
+                && entries.get(0).getUserId().equals(1L) && entries.get(0).getCardId().equals(30L)
+                && entries.get(1).getUserId().equals(2L) && entries.get(1).getCardId().equals(20L)
+                && entries.get(0).getReference().equals(entries.get(1).getReference())));
+    }
+
+    @Test
+    void testTransferToCardNumber_UnknownNumber() {
+        when(cardNumberResolver.resolve("4000000000000099")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> userService.transferToCardNumber(1L, 30L, "4000000000000099", new BigDecimal("1.00")))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Recipient card not found");
+        verify(bankCardRepository, never()).lockSourceAndRecipientInIdOrder(anyLong(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testTransferToCardNumber_DeletedCardInvalidatesCache() {
+        BankCards sourceCard = card(30L, 1L, "ACTIVE", "100.00");
+        when(cardNumberResolver.resolve("4000000000000020")).thenReturn(Optional.of(20L));
+        when(bankCardRepository.lockSourceAndRecipientInIdOrder(eq(1L), eq(30L), eq(20L), any())).thenReturn(List.of(sourceCard));
+
+        assertThatThrownBy(() -> userService.transferToCardNumber(1L, 30L, "4000000000000020", new BigDecimal("1.00")))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Recipient card not found");
+        verify(cardNumberResolver, times(1)).invalidate("4000000000000020");
+        assertThat(sourceCard.getBalance()).isEqualByComparingTo(new BigDecimal("100.00"));
+    }
+
+    @Test
+    void testTransferToCardNumber_RecipientBlocked() {
+        BankCards sourceCard = card(30L, 1L, "ACTIVE", "100.00");
+        BankCards recipientCard = card(20L, 2L, "BLOCKED", "0.00");
+        when(cardNumberResolver.resolve("4000000000000020")).thenReturn(Optional.of(20L));
+        when(bankCardRepository.lockSourceAndRecipientInIdOrder(eq(1L), eq(30L), eq(20L), any())).thenReturn(List.of(recipientCard, sourceCard));
+
+        assertThatThrownBy(() -> userService.transferToCardNumber(1L, 30L, "4000000000000020", new BigDecimal("1.00")))
+                .isInstanceOf(RuntimeException.class)
+                .hasMessage("Recipient card is not active");
+        verify(ledgerService, never()).record(any());
+    }
+
+    private TransferDTO leg(Long sourceCardId, Long targetCardId, String amount) {
+        TransferDTO transfer = new TransferDTO();
+        transfer.setSourceCardId(sourceCardId);
+        transfer.setTargetCardId(targetCardId);
+        transfer.setAmount(new BigDecimal(amount));
+        return transfer;
+    }
+
+    @Test
+    void testTransferBatch_AllOrNothing_Success() {
+        Long userId = 1L;
+        BankCards card1 = card(10L, userId, "ACTIVE", "100.00");
+        BankCards card2 = card(20L, userId, "ACTIVE", "0.00");
+        BankCards card3 = card(30L, userId, "ACTIVE", "0.00");
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any())).thenReturn(List.of(card1, card2, card3));
+
+        // Второй перевод использует деньги, пришедшие первым
+        BatchTransferResultDTO result = userService.transferBatch(userId,
+                List.of(leg(10L, 20L, "80.00"), leg(20L, 30L, "50.00")), BatchTransferDTO.Mode.ALL_OR_NOTHING);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(result.getCompleted()).isEqualTo(2);
+        assertThat(card1.getBalance()).isEqualByComparingTo("20.00");
+        assertThat(card2.getBalance()).isEqualByComparingTo("30.00");
+        assertThat(card3.getBalance()).isEqualByComparingTo("50.00");
+        verify(ledgerService, times(1)).record(argThat(entries -> entries.size() == 4));
+        // Все карты пакета блокируются одним запросом с фильтром по владельцу
+        verify(bankCardRepository, times(1)).lockOwnedInIdOrder(eq(userId), argThat(ids -> ids.containsAll(List.of(10L, 20L, 30L))), any());
+        verify(transactionRetryExecutor, times(1)).execute(eq("transfer.batch"), any());
+    }
+
+    @Test
+    void testTransferBatch_AllOrNothing_FailureChangesNothing() {
+        Long userId = 1L;
+        BankCards card1 = card(10L, userId, "ACTIVE", "100.00");
+        BankCards card2 = card(20L, userId, "ACTIVE", "0.00");
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any())).thenReturn(List.of(card1, card2));
+
+        BatchTransferResultDTO result = userService.transferBatch(userId,
+                List.of(leg(10L, 20L, "60.00"), leg(10L, 20L, "60.00")), BatchTransferDTO.Mode.ALL_OR_NOTHING);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferLegResultDTO::getStatus)
+                .containsExactly(TransferLegResultDTO.NOT_APPLIED, TransferLegResultDTO.FAILED);
+        assertThat(result.getResults().get(1).getError()).isEqualTo("Insufficient funds on source card");
+        assertThat(card1.getBalance()).isEqualByComparingTo("100.00");
+        assertThat(card2.getBalance()).isEqualByComparingTo("0.00");
+        verify(ledgerService, never()).record(any());
+    }
+
+    @Test
+    void testTransferBatch_BestEffort_AppliesValidLegs() {
+        Long userId = 1L;
+        BankCards card1 = card(10L, userId, "ACTIVE", "100.00");
+        BankCards card2 = card(20L, userId, "BLOCKED", "0.00");
+        BankCards card3 = card(30L, userId, "ACTIVE", "0.00");
+        BankCards foreign = card(40L, 2L, "ACTIVE", "500.00"); // Карта другого пользователя
+        // Чужая карта отфильтрована запросом блокировки
+        when(bankCardRepository.lockOwnedInIdOrder(eq(userId), anyCollection(), any())).thenReturn(List.of(card1, card2, card3));
+
+        BatchTransferResultDTO result = userService.transferBatch(userId,
+                List.of(leg(10L, 20L, "10.00"), leg(40L, 30L, "10.00"), leg(10L, 30L, "25.00")),
+                BatchTransferDTO.Mode.BEST_EFFORT);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(result.getCompleted()).isEqualTo(1);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getResults()).extracting(TransferLegResultDTO::getError).containsExactly(
+                "Target card is not active", "Source card not found or access denied", null);
+        assertThat(card1.getBalance()).isEqualByComparingTo("75.00");
+        assertThat(card3.getBalance()).isEqualByComparingTo("25.00");
+        assertThat(foreign.getBalance()).isEqualByComparingTo("500.00");
+    }
+
+    // --- Тесты для журнала движений ---
+
+    @Test
+    void testGetCardTransactions_ForeignCardRejected() {
+        when(bankCardRepository.findByUserIdAndId(1L, 40L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> userService.getCardTransactions(1L, 40L, null, 50))
+                .isInstanceOf(CardNotFoundException.class)
+                .hasMessage("Card not found or access denied");
+        verify(ledgerService, never()).getCardTransactions(anyLong(), any(), anyInt());
+    }
+
     // --- Тесты для получения баланса ---
 
     @Test
@@ -358,9 +696,10 @@ class UserServiceTest {
 
         when(bankCardRepository.findByUserIdAndId(userId, cardId)).thenReturn(Optional.of(mockCard));
 
-        BigDecimal result = userService.getCardBalance(userId, cardId);
+        BalanceDTO result = userService.getCardBalance(userId, cardId);
 
-        assertThat(result).isEqualByComparingTo(balance);
+        assertThat(result.getAvailable()).isEqualByComparingTo(balance);
+        assertThat(result.getHeld()).isEqualByComparingTo(BigDecimal.ZERO);
         verify(bankCardRepository, times(1)).findByUserIdAndId(userId, cardId);
     }
 
@@ -415,23 +754,27 @@ class UserServiceTest {
         Long userId = 1L;
         BigDecimal totalBalance = new BigDecimal("300.00");
 
-        when(bankCardRepository.sumBalanceByUserId(userId)).thenReturn(totalBalance);
+        when(balanceSummaryService.getBalance(userId)).thenReturn(new BalanceDTO(totalBalance, new BigDecimal("50.00")));
 
-        BigDecimal result = userService.getTotalBalanceByUserId(userId);
+        BalanceDTO result = userService.getTotalBalanceByUserId(userId);
 
-        assertThat(result).isEqualByComparingTo(totalBalance);
-        verify(bankCardRepository, times(1)).sumBalanceByUserId(userId);
+        assertThat(result.getAvailable()).isEqualByComparingTo(totalBalance);
+        assertThat(result.getHeld()).isEqualByComparingTo("50.00");
+        verify(balanceSummaryService, times(1)).getBalance(userId);
+        verify(bankCardRepository, never()).sumBalancesByUserId(anyLong());
     }
 
     @Test
     void testGetTotalBalanceByUserId_NullResult() {
         Long userId = 1L;
 
-        when(bankCardRepository.sumBalanceByUserId(userId)).thenReturn(null);
+        // Сводки нет, пользователь без карт: SUM возвращает NULL
+        when(balanceSummaryService.getBalance(userId)).thenReturn(new BalanceDTO(null, null));
 
-        BigDecimal result = userService.getTotalBalanceByUserId(userId);
+        BalanceDTO result = userService.getTotalBalanceByUserId(userId);
 
-        assertThat(result).isEqualByComparingTo(BigDecimal.ZERO);
-        verify(bankCardRepository, times(1)).sumBalanceByUserId(userId);
+        assertThat(result.getAvailable()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(result.getHeld()).isEqualByComparingTo(BigDecimal.ZERO);
+        verify(balanceSummaryService, times(1)).getBalance(userId);
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Users;
+import com.example.bankcards.repository.UsersRepository;
+import com.example.bankcards.security.PrincipalCache;
+import com.example.bankcards.security.UsersDetailsImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.*;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UsersDetailsServiceTest {
+
+    @Mock
+    private UsersRepository usersRepository;
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    @InjectMocks
+    private UsersDetailsService usersDetailsService;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    void testLoadUserByUsername_Success() {
+        Users user = new Users("testuser", "hash", "ROLE_USER");
+        user.setId(1L);
+        when(usersRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+
+        UserDetails result = usersDetailsService.loadUserByUsername("testuser");
+
+        assertThat(result).isInstanceOf(UsersDetailsImpl.class);
+        assertThat(((UsersDetailsImpl) result).getId()).isEqualTo(1L);
+    }
+
+    @Test
+    void testLoadUserByUsername_NotFound() {
+        when(usersRepository.findByUsername("unknown")).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> usersDetailsService.loadUserByUsername("unknown"))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    // --- Пересчет хэша пароля при входе ---
+
+    @Test
+    void testUpdatePassword_StoresUpgradedHash() {
+        Users user = new Users("testuser", "$2a$04$oldhash", "ROLE_USER");
+        user.setId(1L);
+        when(usersRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        UserDetails current = UsersDetailsImpl.build(user);
+
+        UserDetails result = usersDetailsService.updatePassword(current, "$2a$12$newhash");
+
+        assertThat(result.getPassword()).isEqualTo("$2a$12$newhash");
+        assertThat(user.getPassword()).isEqualTo("$2a$12$newhash");
+        verify(usersRepository, times(1)).save(user);
+        verify(principalCache, times(1)).invalidate("testuser");
+    }
+}
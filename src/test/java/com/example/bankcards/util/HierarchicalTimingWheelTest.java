@@ -0,0 +1,80 @@
+package com.example.bankcards.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class HierarchicalTimingWheelTest {
+
+    // ==================== Добавление ====================
+
+    @Test
+    void testAdd_ExpiredItemRejected() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 8, 10_500);
+
+        assertThat(wheel.add("past", 9_000)).isFalse();
+        assertThat(wheel.add("current-tick", 10_900)).isFalse();
+        assertThat(wheel.add("next-tick", 11_000)).isTrue();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    // ==================== Срабатывание ====================
+
+    @Test
+    void testAdvance_FiresItemsOnTheirTick() {
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(1000, 8, 0);
+        wheel.add("3s", 3_000);
+        wheel.add("5s", 5_500);
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(2_999, fired::add);
+        assertThat(fired).isEmpty();
+
+        wheel.advance(3_000, fired::add);
+        assertThat(fired).containsExactly("3s");
+
+        wheel.advance(6_000, fired::add);
+        assertThat(fired).containsExactly("3s", "5s");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void testAdvance_OverflowLevelsDescendInOrder() {
+        // Нижний уровень - 8 секунд, второй - 64 секунды, третий - 512 секунд
+        HierarchicalTimingWheel<Long> wheel = new HierarchicalTimingWheel<>(1000, 8, 0);
+        long[] expirations = {300_000, 7_000, 65_000, 9_000, 120_500, 64_000, 1_000};
+        for (long expiration : expirations) {
+            assertThat(wheel.add(expiration, expiration)).isTrue();
+        }
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 400_000; now += 1000) {
+            long time = now;
+            wheel.advance(now, expiration -> {
+                // Элемент срабатывает на тике своего срока, а не при спуске с верхнего уровня
+                assertThat(time).isEqualTo(expiration - expiration % 1000);
+                fired.add(expiration);
+            });
+        }
+
+        assertThat(fired).containsExactly(1_000L, 7_000L, 9_000L, 64_000L, 65_000L, 120_500L, 300_000L);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void testAdvance_LargeJumpFiresEverythingDue() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(1000, 16, 0);
+        for (int i = 1; i <= 1000; i++) {
+            wheel.add(i, i * 1000L);
+        }
+
+        List<Integer> fired = new ArrayList<>();
+        wheel.advance(500_000, fired::add);
+
+        assertThat(fired).hasSize(500).startsWith(1, 2, 3).endsWith(500);
+        assertThat(wheel.size()).isEqualTo(500);
+    }
+}